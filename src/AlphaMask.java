@@ -0,0 +1,96 @@
+import java.awt.image.BufferedImage;
+
+/**
+* An 8-bit alpha cutout for a puzzle piece. A piece stored this way only needs a reference to the shared
+* puzzle image, where its cutout starts in that image, and one of these. Every piece cut with the same mask
+* file shares the same instance, so a whole board only ever has a couple dozen of them no matter how many
+* pieces it has.
+* @author Noah Brown
+*/
+public class AlphaMask {
+  /**
+   * The width of the mask in pixels.
+   */
+   private final int width;
+  /**
+   * The height of the mask in pixels.
+   */
+   private final int height;
+  /**
+   * One alpha value per pixel, row by row. 0 is fully transparent, 255 is fully opaque.
+   */
+   private final byte[] alpha;
+
+  /**
+   * Builds the alpha cutout from a mask that has already been converted to transparency by
+   * {@link ImageSplitter#transformGrayToTransparency}.
+   * @param mask the transparency mask to take the alpha values from
+   */
+   public AlphaMask(BufferedImage mask) {
+      this.width = mask.getWidth();
+      this.height = mask.getHeight();
+      this.alpha = new byte[width * height];
+      int[] row = new int[width];
+      for (int y = 0; y < height; y++) {
+         mask.getRGB(0, y, width, 1, row, 0, width);
+         for (int x = 0; x < width; x++) {
+            alpha[y * width + x] = (byte)(row[x] >>> 24);
+         }
+      }
+   }
+
+  /**
+   * Cuts this mask's shape out of the given image, producing the same sprite that
+   * {@link ImageSplitter#applyTransparency} would.
+   * @param source the puzzle image to take the colours from
+   * @param x the left edge of the cutout in the source image
+   * @param y the top edge of the cutout in the source image
+   * @return a new sprite the size of the mask
+   */
+   public BufferedImage composite(BufferedImage source, int x, int y) {
+      BufferedImage sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      int[] pixels = source.getRGB(x, y, width, height, null, 0, width);
+      for (int i = 0; i < pixels.length; i++) {
+         int sourceAlpha = pixels[i] >>> 24;
+         int maskAlpha = alpha[i] & 0xFF;
+         int combined = (sourceAlpha * maskAlpha + 127) / 255;
+         pixels[i] = (combined << 24) | (pixels[i] & 0x00FFFFFF);
+      }
+      sprite.setRGB(0, 0, width, height, pixels, 0, width);
+      return sprite;
+   }
+
+  /**
+   * Returns the alpha value at the given pixel.
+   * @param x the x-coordinate inside the mask
+   * @param y the y-coordinate inside the mask
+   * @return the alpha value, from 0 to 255
+   */
+   public int getAlpha(int x, int y) {
+      return alpha[y * width + x] & 0xFF;
+   }
+
+  /**
+   * Returns the width of the mask.
+   * @return {@link AlphaMask#width}
+   */
+   public int getWidth() {
+      return width;
+   }
+
+  /**
+   * Returns the height of the mask.
+   * @return {@link AlphaMask#height}
+   */
+   public int getHeight() {
+      return height;
+   }
+
+  /**
+   * Returns roughly how many bytes of heap this mask takes up.
+   * @return the size of the alpha array plus object headers
+   */
+   public long getByteSize() {
+      return alpha.length + 16 + 32;
+   }
+}
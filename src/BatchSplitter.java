@@ -0,0 +1,287 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+
+/**
+* Headless command line tool that cuts every image in a directory into masked puzzle pieces ahead of time.
+* Images are split concurrently, with a cap on how many are in memory at once, and the piece images are
+* encoded to png on a separate pool of threads. A throughput report is printed for each image and for the
+* whole run.
+* <p>
+* Usage: {@code java BatchSplitter <imageDir> <outputDir> <rows> <cols> [threads] [maxImagesInFlight]}
+* <p>
+* Rows and columns the masks can't tile are rounded with {@link PuzzleGeometry#nearestTileable}. An image
+* counts as failed if it can't be split or if any of its pieces can't be written.
+* <p>
+* Must be run from the folder containing Resources/ so the masks can be found, just like the game itself.
+* @author Noah Brown
+*/
+public class BatchSplitter {
+  /**
+   * File extensions that are treated as puzzle images.
+   */
+   private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+  /**
+   * Printed when the arguments can't be used.
+   */
+   private static final String USAGE = "Usage: java BatchSplitter <imageDir> <outputDir> <rows> <cols> [threads] [maxImagesInFlight]";
+
+  /**
+   * The folder each image's piece pack is written to. Every image gets its own subfolder.
+   */
+   private File outputDir;
+  /**
+   * The number of rows to cut every image into.
+   */
+   private int rows;
+  /**
+   * The number of columns to cut every image into.
+   */
+   private int cols;
+  /**
+   * Decodes, splits and masks images.
+   */
+   private ExecutorService splitPool;
+  /**
+   * Encodes and writes finished piece images.
+   */
+   private ExecutorService encodePool;
+  /**
+   * Limits how many images can be in memory at once. A permit is taken before an image is decoded and given
+   * back once its last piece has been written.
+   */
+   private Semaphore inFlight;
+  /**
+   * The total number of bytes written across every image.
+   */
+   private AtomicLong bytesWritten;
+  /**
+   * Counts down once per image, whether it succeeded or not.
+   */
+   private CountDownLatch remainingImages;
+  /**
+   * The number of images that couldn't be split, or had pieces that couldn't be written.
+   */
+   private AtomicInteger failures;
+
+  /**
+   * Sets up the thread pools for a run.
+   * @param output the folder to write piece packs to
+   * @param numRows the number of rows to cut every image into
+   * @param numCols the number of columns to cut every image into
+   * @param threads how many threads to use for splitting, and again for encoding
+   * @param maxInFlight the most images that may be in memory at once
+   */
+   public BatchSplitter(File output, int numRows, int numCols, int threads, int maxInFlight) {
+      this.outputDir = output;
+      this.rows = numRows;
+      this.cols = numCols;
+      this.splitPool = Executors.newFixedThreadPool(threads);
+      this.encodePool = Executors.newFixedThreadPool(threads);
+      this.inFlight = new Semaphore(maxInFlight);
+      this.bytesWritten = new AtomicLong();
+      this.failures = new AtomicInteger();
+   }
+
+   public static void main(String[] args) throws Exception {
+      System.setProperty("java.awt.headless", "true");
+      if (args.length < 4) {
+         System.err.println(USAGE);
+         System.exit(1);
+      }
+
+      File imageDir = new File(args[0]);
+      File output = new File(args[1]);
+      int numRows = PuzzleGeometry.nearestTileable(Integer.parseInt(args[2]));
+      int numCols = PuzzleGeometry.nearestTileable(Integer.parseInt(args[3]));
+      if (numRows != Integer.parseInt(args[2]) || numCols != Integer.parseInt(args[3])) {
+         System.err.println("The masks only tile 2 more than a multiple of 3 lines, so cutting " + numRows + " rows by "
+            + numCols + " columns instead");
+      }
+      int threads = Runtime.getRuntime().availableProcessors();
+      if (args.length > 4) {
+         threads = Integer.parseInt(args[4]);
+      }
+      int maxInFlight = threads;
+      if (args.length > 5) {
+         maxInFlight = Integer.parseInt(args[5]);
+      }
+      if (threads < 1 || maxInFlight < 1) {
+         System.err.println("threads and maxImagesInFlight must be at least 1");
+         System.err.println(USAGE);
+         System.exit(1);
+      }
+
+      File[] images = listImages(imageDir);
+      if (images.length == 0) {
+         System.err.println("No images found in " + imageDir);
+         System.exit(1);
+      }
+
+      BatchSplitter batch = new BatchSplitter(output, numRows, numCols, threads, maxInFlight);
+      batch.run(images);
+   }
+
+  /**
+   * Returns every image file directly inside the given folder, sorted by name so runs are repeatable.
+   * @param dir the folder to look in
+   * @return the image files in the folder
+   */
+   public static File[] listImages(File dir) {
+      File[] images = dir.listFiles(new FileFilter() {
+         public boolean accept(File file) {
+            if (file.isDirectory()) {
+               return false;
+            }
+            String name = file.getName().toLowerCase();
+            for (String extension : IMAGE_EXTENSIONS) {
+               if (name.endsWith(extension)) {
+                  return true;
+               }
+            }
+            return false;
+         }
+      });
+      if (images == null) {
+         return new File[0];
+      }
+      Arrays.sort(images);
+      return images;
+   }
+
+  /**
+   * Generates a piece pack for every given image, then prints the aggregate report.
+   * Blocks until every image is done.
+   * @param images the images to cut up
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+   public void run(File[] images) throws InterruptedException {
+      remainingImages = new CountDownLatch(images.length);
+      long start = System.nanoTime();
+
+      for (final File image : images) {
+         // Waiting here rather than inside the task keeps the queue from filling up with decoded images
+         inFlight.acquire();
+         splitPool.execute(new Runnable() {
+            public void run() {
+               splitImage(image);
+            }
+         });
+      }
+
+      remainingImages.await();
+      long elapsed = System.nanoTime() - start;
+      splitPool.shutdown();
+      encodePool.shutdown();
+
+      int pieceTotal = (images.length - failures.get()) * rows * cols;
+      double seconds = elapsed / 1e9;
+      System.out.println();
+      System.out.println("Images:     " + images.length + " (" + failures.get() + " failed)");
+      System.out.println("Pieces:     " + pieceTotal);
+      System.out.printf("Wall time:  %.2f s%n", seconds);
+      System.out.printf("Throughput: %.1f images/s, %.0f pieces/s, %.2f MB/s written%n",
+         images.length / seconds, pieceTotal / seconds, bytesWritten.get() / (1024.0 * 1024.0) / seconds);
+   }
+
+  /**
+   * Decodes, splits and masks one image, handing every piece to {@link BatchSplitter#encodePool}.
+   * Runs on {@link BatchSplitter#splitPool}. If splitting fails partway, the pieces never handed over count as
+   * not written and the image is finished by whichever of its pieces is written last.
+   * @param image the image to cut up
+   */
+   private void splitImage(final File image) {
+      final long start = System.nanoTime();
+      final AtomicInteger remainingPieces = new AtomicInteger(rows * cols);
+      final AtomicInteger failedPieces = new AtomicInteger();
+      final AtomicLong packBytes = new AtomicLong();
+      long decodeTime = 0;
+      int submitted = 0;
+      try {
+         BufferedImage decoded = ImageIO.read(image);
+         if (decoded == null) {
+            throw new IOException("Couldn't decode " + image);
+         }
+         decodeTime = System.nanoTime() - start;
+         final long imageDecodeTime = decodeTime;
+         ImageSplitter imageSplitter = new ImageSplitter(decoded, rows, cols);
+         final File packDir = new File(outputDir, stripExtension(image.getName()));
+         packDir.mkdirs();
+
+         for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+               final BufferedImage masked = imageSplitter.maskImage(imageSplitter.cutPiece(i, j), imageSplitter.getMaskPath(i, j));
+               final File outputImage = new File(packDir, "piece" + i + "-" + j + ".png");
+               encodePool.execute(new Runnable() {
+                  public void run() {
+                     try {
+                        ImageIO.write(masked, "png", outputImage);
+                        packBytes.addAndGet(outputImage.length());
+                     } catch (IOException e) {
+                        e.printStackTrace();
+                        failedPieces.incrementAndGet();
+                     }
+                     if (remainingPieces.decrementAndGet() == 0) {
+                        finishImage(image, start, imageDecodeTime, packBytes.get(), failedPieces.get());
+                     }
+                  }
+               });
+               submitted++;
+            }
+         }
+      } catch (Exception e) {
+         System.err.println("Failed to split " + image + ": " + e);
+         if (submitted == 0) {
+            failures.incrementAndGet();
+            inFlight.release();
+            remainingImages.countDown();
+            return;
+         }
+         // Pieces already handed to the encoders still hold the image, so its permit waits for the last of them
+         int unsubmitted = rows * cols - submitted;
+         failedPieces.addAndGet(unsubmitted);
+         if (remainingPieces.addAndGet(-unsubmitted) == 0) {
+            finishImage(image, start, decodeTime, packBytes.get(), failedPieces.get());
+         }
+      }
+   }
+
+  /**
+   * Prints the report for an image whose last piece has just been handled, and lets the next image in. An
+   * image with pieces that couldn't be written is counted as failed and flagged in its report line.
+   * @param image the image that was cut up
+   * @param start when work on the image started, from {@link System#nanoTime}
+   * @param decodeTime how long decoding the image took, in nanoseconds
+   * @param packBytes how many bytes were written for the image's pieces
+   * @param failedPieces how many of the image's pieces couldn't be written
+   */
+   private void finishImage(File image, long start, long decodeTime, long packBytes, int failedPieces) {
+      double seconds = (System.nanoTime() - start) / 1e9;
+      String report = String.format("%-40s %5d pieces  decode %6.1f ms  total %7.1f ms  %8.0f pieces/s  %7.1f KB",
+         image.getName(), rows * cols, decodeTime / 1e6, seconds * 1000, rows * cols / seconds, packBytes / 1024.0);
+      if (failedPieces > 0) {
+         report += String.format("  FAILED: %d pieces not written", failedPieces);
+         failures.incrementAndGet();
+      }
+      System.out.println(report);
+      bytesWritten.addAndGet(packBytes);
+      inFlight.release();
+      remainingImages.countDown();
+   }
+
+  /**
+   * Removes the extension from a file name.
+   * @param name the file name
+   * @return the file name without anything after the last dot
+   */
+   private static String stripExtension(String name) {
+      int dot = name.lastIndexOf('.');
+      if (dot > 0) {
+         return name.substring(0, dot);
+      }
+      return name;
+   }
+}
@@ -0,0 +1,220 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.util.*;
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Runs several independent boards in one process, e.g. one per kiosk screen. Every board has its own pieces,
+* history, sprite cache, effect sprites and minimap, sized by its own {@link PuzzleOptions}, but all of them
+* deal their pieces from one shared {@link PuzzleLibrary}. Piece sets are immutable once generated, so boards
+* playing the same image at the same size share one set, puzzle image and indexes included, and the library
+* keeps count of which boards hold which sets so none is evicted while in use. Masks are already shared by
+* every board through {@link ImageSplitter}'s bounded caches, and the pipeline never writes to Resources/, so
+* the boards can't get in each other's way there either.
+* <p>
+* With a display, each board gets a maximised window on the next screen, wrapping around, and a report is
+* printed every {@link BoardHost#REPORT_MS}. Headless, the boards are built, dealt and painted once and the
+* report is printed straight away, so the cost of many boards can be compared with the cost of one.
+* <p>
+* Usage: {@code java BoardHost [boards] [pieceCount] [images]}, run from the folder containing Resources/, where
+* images is how many different puzzle images the boards cycle through. Board options such as
+* {@code -Djigsaw.spriteCacheMB=4} apply to every board.
+* @author Noah Brown
+*/
+public class BoardHost {
+  /**
+   * The size of each board when running headless.
+   */
+   private static final Dimension HEADLESS_BOARD = new Dimension(1600, 900);
+  /**
+   * How often the report is printed while the boards are in windows, in milliseconds.
+   */
+   private static final int REPORT_MS = 60000;
+
+  /**
+   * The piece sets shared by every board.
+   */
+   private PuzzleLibrary library;
+  /**
+   * The boards being run, in the order they were added.
+   */
+   private ArrayList<JigsawPuzzle> boards;
+
+  /**
+   * Creates a host with no boards.
+   * @param imageFolder the folder holding the puzzle images
+   * @param libraryBudget the most bytes the shared library may spend on piece sets no board holds
+   */
+   public BoardHost(File imageFolder, long libraryBudget) {
+      this.library = new PuzzleLibrary(imageFolder, libraryBudget);
+      this.boards = new ArrayList<JigsawPuzzle>();
+   }
+
+   public static void main(String[] args) throws Exception {
+      final int boardCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+      final int pieceCount = args.length > 1 ? Integer.parseInt(args[1]) : 220;
+      int imageCount = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+      final PuzzleOptions options = PuzzleOptions.fromSystemProperties();
+      final BoardHost host = new BoardHost(new File(System.getProperty("user.dir") + "/Resources/puzzleImages"),
+                                           options.getLibraryCacheBytes());
+      // The boards cycle through the first few images, starting from the one a single board would play
+      ArrayList<File> cycle = new ArrayList<File>();
+      File image = host.library.findImage(JigsawPuzzle.DEFAULT_IMAGE);
+      while (image != null && cycle.size() < imageCount && !cycle.contains(image)) {
+         cycle.add(image);
+         image = host.library.nextImage(image);
+      }
+      final File[] playing = new File[boardCount];
+      for (int i = 0; i < boardCount; i++) {
+         playing[i] = cycle.isEmpty() ? null : cycle.get(i % cycle.size());
+      }
+
+      if (GraphicsEnvironment.isHeadless()) {
+         long start = System.nanoTime();
+         SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+               for (int i = 0; i < boardCount; i++) {
+                  host.addBoard(HEADLESS_BOARD, pieceCount, options, playing[i]);
+               }
+            }
+         });
+         for (JigsawPuzzle board : host.getBoards()) {
+            host.library.get(board.getPuzzleImage(), board.getGeometry(), options.getPieceStorage(), null);
+         }
+         final BufferedImage frame = new BufferedImage(HEADLESS_BOARD.width, HEADLESS_BOARD.height, BufferedImage.TYPE_INT_ARGB);
+         SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+               for (JigsawPuzzle board : host.getBoards()) {
+                  board.startLoading();
+                  Graphics2D g = frame.createGraphics();
+                  board.paint(g);
+                  g.dispose();
+               }
+            }
+         });
+         System.out.printf("Started %d boards in %.0f ms%n", boardCount, (System.nanoTime() - start) / 1e6);
+         host.printReport(System.out);
+         System.exit(0);
+      }
+
+      SwingUtilities.invokeLater(new Runnable() {
+         public void run() {
+            GraphicsDevice[] screens = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+            for (int i = 0; i < boardCount; i++) {
+               Rectangle screen = screens[i % screens.length].getDefaultConfiguration().getBounds();
+               JigsawPuzzle board = host.addBoard(screen.getSize(), pieceCount, options, playing[i]);
+               host.showBoard(board, "Jigsaw Puzzle " + (i + 1), screen);
+            }
+            new javax.swing.Timer(REPORT_MS, new ActionListener() {
+               public void actionPerformed(ActionEvent e) {
+                  host.printReport(System.out);
+               }
+            }).start();
+         }
+      });
+   }
+
+  /**
+   * Creates a board that deals its pieces from the shared library. Its pieces stay hidden until
+   * {@link JigsawPuzzle#startLoading} is called. Must be called on the event thread.
+   * @param boardSize the width and height of the board
+   * @param pieceCount roughly how many pieces the puzzle should have
+   * @param options how the board's pieces are generated and drawn, including its own cache budgets
+   * @param image the image to play, or null for {@link JigsawPuzzle#DEFAULT_IMAGE}
+   * @return the new board
+   */
+   public JigsawPuzzle addBoard(Dimension boardSize, int pieceCount, PuzzleOptions options, File image) {
+      JigsawPuzzle board = new JigsawPuzzle(boardSize, pieceCount, options, library, image);
+      boards.add(board);
+      return board;
+   }
+
+  /**
+   * Shows a board in its own maximised window and starts dealing its pieces. Closing the window removes the
+   * board from the host. Must be called on the event thread.
+   * @param board a board made by {@link BoardHost#addBoard}
+   * @param title the window's title
+   * @param screen the bounds of the screen to show it on
+   * @return the window
+   */
+   public JFrame showBoard(final JigsawPuzzle board, String title, Rectangle screen) {
+      JFrame frame = new JFrame(title);
+      frame.setLayout(null);
+      frame.add(board);
+      frame.setBounds(screen);
+      frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+      frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+      frame.addWindowListener(new WindowAdapter() {
+         public void windowClosed(WindowEvent e) {
+            removeBoard(board);
+         }
+      });
+      frame.setVisible(true);
+      board.startLoading();
+      return frame;
+   }
+
+  /**
+   * Shuts a board down and hands its piece sets back to the library. Must be called on the event thread.
+   * @param board the board to remove
+   */
+   public void removeBoard(JigsawPuzzle board) {
+      if (boards.remove(board)) {
+         board.dispose();
+      }
+   }
+
+  /**
+   * Prints every board's memory and cache metrics, then the totals for the whole process. A board's own bytes
+   * are checked against its own sprite cache budget; the piece set it was dealt is listed with how many boards
+   * share it, and only counted once in the totals, along with the masks every board shares. Must be called on
+   * the event thread.
+   * @param out where to print the report
+   */
+   public void printReport(PrintStream out) {
+      out.println();
+      out.printf("%-6s %-24s %7s %10s %10s %8s %10s %7s%n", "board", "image", "pieces", "own KB", "budget KB", "hits %",
+                 "set MB", "shared");
+      long ownTotal = 0;
+      for (int i = 0; i < boards.size(); i++) {
+         JigsawPuzzle board = boards.get(i);
+         SpriteCache sprites = board.getSpriteCache();
+         long lookups = sprites.getHits() + sprites.getMisses();
+         PieceSet dealt = board.getDealtPieces();
+         long own = board.getOwnBytes();
+         ownTotal += own;
+         out.printf("%-6d %-24s %7d %10.1f %10.1f %8s %10s %7s%n", i + 1, board.getPuzzleImage().getName(),
+                    board.getGeometry().getPieceCount(), own / 1024.0, board.getOptions().getSpriteCacheBytes() / 1024.0,
+                    lookups == 0 ? "-" : String.format("%.1f", 100.0 * sprites.getHits() / lookups),
+                    dealt == null ? "-" : String.format("%.2f", dealt.getByteSize() / 1048576.0),
+                    dealt == null ? "-" : "x" + library.getUserCount(dealt));
+      }
+      out.println();
+      out.printf("Boards:     %d, %.1f MB of their own caches%n", boards.size(), ownTotal / 1048576.0);
+      out.printf("Library:    %d piece sets, %.1f MB shared%n", library.size(), library.getCurrentBytes() / 1048576.0);
+      out.printf("Masks:      %.1f MB cached%n", ImageSplitter.getMaskCacheBytes() / 1048576.0);
+      Runtime runtime = Runtime.getRuntime();
+      System.gc();
+      long live = runtime.totalMemory() - runtime.freeMemory();
+      out.printf("Heap live:  %.1f MB after a full GC, %.1f MB per board%n", live / 1048576.0,
+                 live / 1048576.0 / Math.max(1, boards.size()));
+   }
+
+  /**
+   * Returns the boards being run.
+   * @return a copy of {@link BoardHost#boards}
+   */
+   public java.util.List<JigsawPuzzle> getBoards() {
+      return new ArrayList<JigsawPuzzle>(boards);
+   }
+
+  /**
+   * Returns the piece sets shared by every board.
+   * @return {@link BoardHost#library}
+   */
+   public PuzzleLibrary getLibrary() {
+      return library;
+   }
+}
@@ -0,0 +1,294 @@
+import java.awt.*;
+import java.util.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Describes every piece by its colours, so pieces can be filtered or sorted by colour without reading any pixels
+* when the question is asked. Each piece gets a 64-bin colour histogram of its opaque pixels (4 levels each of
+* red, green and blue) stored as one byte per bin, the average colour of its fullest bin as its dominant
+* colour, a sort key from that colour's hue, and which of its sides lie on the border of the puzzle. Everything
+* is kept in flat primitive arrays indexed by piece ID, so a query over 10,000 pieces is one pass over about
+* 640 KB.
+* Pieces are added while the pipeline masks them, on whatever thread generates the {@link PieceSet}, and the
+* index is only read once it has been handed over.
+* @author Noah Brown
+*/
+public class ColourIndex {
+  /**
+   * How many levels each of red, green and blue is split into.
+   */
+   private static final int LEVELS = 4;
+  /**
+   * How many bins each histogram has.
+   */
+   public static final int BINS = LEVELS * LEVELS * LEVELS;
+  /**
+   * How opaque a pixel has to be, out of 255, to count as part of the piece.
+   */
+   private static final int OPAQUE = 128;
+  /**
+   * How far apart, in RGB, a bin's colour and the colour being looked for can be and still count at all.
+   * Closer bins count for more.
+   */
+   private static final float COLOUR_RADIUS = 112;
+  /**
+   * How saturated a dominant colour has to be to be sorted by its hue. Duller colours are sorted after all
+   * of the others, from dark to light.
+   */
+   private static final float GREY_SATURATION = 0.2f;
+  /**
+   * How bright a dominant colour has to be to be sorted by its hue, for the same reason.
+   */
+   private static final float GREY_BRIGHTNESS = 0.15f;
+
+  /**
+   * Every piece's histogram, {@link ColourIndex#BINS} bytes per piece. Each bin is the share of the piece's
+   * opaque pixels that fall in it, from 0 to 255.
+   */
+   private byte[] histograms;
+  /**
+   * Every piece's dominant colour, as RGB.
+   */
+   private int[] dominant;
+  /**
+   * Every piece's place when sorted by colour, from its dominant colour.
+   */
+   private int[] sortKeys;
+  /**
+   * Which sides of each piece are on the border of the puzzle, bit i set for side i clockwise from the top.
+   */
+   private byte[] borderSides;
+  /**
+   * Pixels read while adding a piece, reused from one piece to the next.
+   */
+   private int[] scratch;
+
+  /**
+   * Creates an index with room for every piece of the given puzzle and works out which pieces are on its
+   * border. Colours are filled in by {@link ColourIndex#addPiece}.
+   * @param geometry the shape of the puzzle
+   */
+   public ColourIndex(PuzzleGeometry geometry) {
+      int pieceCount = geometry.getPieceCount();
+      histograms = new byte[pieceCount * BINS];
+      dominant = new int[pieceCount];
+      sortKeys = new int[pieceCount];
+      borderSides = new byte[pieceCount];
+      for (int piece = 0; piece < pieceCount; piece++) {
+         for (int side = 0; side < 4; side++) {
+            if (geometry.neighbour(piece, side) < 0) {
+               borderSides[piece] |= 1 << side;
+            }
+         }
+      }
+      scratch = new int[0];
+   }
+
+  /**
+   * Works out one piece's histogram and dominant colour from the pixels the piece is cut from. Only pixels
+   * the mask leaves at least half opaque are counted.
+   * @param piece the piece's ID
+   * @param source the puzzle image
+   * @param cutout the area of the puzzle image the piece is cut from
+   * @param mask the piece's mask
+   */
+   public void addPiece(int piece, BufferedImage source, Rectangle cutout, AlphaMask mask) {
+      int pixelCount = cutout.width * cutout.height;
+      if (scratch.length < pixelCount) {
+         scratch = new int[pixelCount];
+      }
+      source.getRGB(cutout.x, cutout.y, cutout.width, cutout.height, scratch, 0, cutout.width);
+      int[] counts = new int[BINS];
+      long[] sums = new long[BINS * 3];
+      int opaque = 0;
+      for (int y = 0; y < cutout.height; y++) {
+         for (int x = 0; x < cutout.width; x++) {
+            if (mask.getAlpha(x, y) < OPAQUE) {
+               continue;
+            }
+            int rgb = scratch[y * cutout.width + x];
+            int bin = bin(rgb);
+            counts[bin]++;
+            sums[bin * 3] += (rgb >> 16) & 0xFF;
+            sums[bin * 3 + 1] += (rgb >> 8) & 0xFF;
+            sums[bin * 3 + 2] += rgb & 0xFF;
+            opaque++;
+         }
+      }
+
+      int fullest = 0;
+      for (int bin = 0; bin < BINS; bin++) {
+         if (opaque > 0) {
+            histograms[piece * BINS + bin] = (byte)Math.round(255f * counts[bin] / opaque);
+         }
+         if (counts[bin] > counts[fullest]) {
+            fullest = bin;
+         }
+      }
+      int count = Math.max(1, counts[fullest]);
+      dominant[piece] = (int)(sums[fullest * 3] / count) << 16 | (int)(sums[fullest * 3 + 1] / count) << 8
+         | (int)(sums[fullest * 3 + 2] / count);
+      sortKeys[piece] = sortKey(dominant[piece]);
+   }
+
+  /**
+   * Returns the histogram bin a colour falls in.
+   * @param rgb the colour
+   * @return the bin, from 0 to {@link ColourIndex#BINS} - 1
+   */
+   private static int bin(int rgb) {
+      int shift = 8 - Integer.numberOfTrailingZeros(LEVELS);
+      return (((rgb >> 16) & 0xFF) >> shift) * LEVELS * LEVELS + (((rgb >> 8) & 0xFF) >> shift) * LEVELS
+         + ((rgb & 0xFF) >> shift);
+   }
+
+  /**
+   * Works out where a piece goes when pieces are sorted by colour: by hue around the colour wheel starting
+   * from red, then greys, blacks and whites from dark to light.
+   * @param rgb the piece's dominant colour
+   * @return the sort key, smallest first
+   */
+   private static int sortKey(int rgb) {
+      float[] hsb = Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, null);
+      if (hsb[1] < GREY_SATURATION || hsb[2] < GREY_BRIGHTNESS) {
+         return 1000 + Math.round(hsb[2] * 1000);
+      }
+      return Math.round(hsb[0] * 1000) % 1000;
+   }
+
+  /**
+   * Finds the pieces with the most of a colour in them. A piece scores the share of its pixels in each bin,
+   * weighted by how close the bin's colour is to the one being looked for.
+   * @param rgb the colour to look for
+   * @param minShare how much of a piece has to be close to the colour, from 0 to 1
+   * @param limit the most pieces to return
+   * @param filter decides which pieces may be returned, or null for any piece
+   * @return the IDs of the matching pieces, best first
+   */
+   public int[] findByColour(int rgb, float minShare, int limit, VantagePointTree.Filter filter) {
+      float[] weights = new float[BINS];
+      int step = 256 / LEVELS;
+      for (int bin = 0; bin < BINS; bin++) {
+         float dr = (bin / (LEVELS * LEVELS)) * step + step / 2 - ((rgb >> 16) & 0xFF);
+         float dg = (bin / LEVELS % LEVELS) * step + step / 2 - ((rgb >> 8) & 0xFF);
+         float db = (bin % LEVELS) * step + step / 2 - (rgb & 0xFF);
+         weights[bin] = Math.max(0, 1 - (float)Math.sqrt(dr * dr + dg * dg + db * db) / COLOUR_RADIUS) / 255;
+      }
+      int pieceCount = dominant.length;
+      float[] scores = new float[pieceCount];
+      for (int piece = 0; piece < pieceCount; piece++) {
+         float score = 0;
+         int offset = piece * BINS;
+         for (int bin = 0; bin < BINS; bin++) {
+            score += (histograms[offset + bin] & 0xFF) * weights[bin];
+         }
+         scores[piece] = score;
+      }
+      return best(scores, minShare, limit, filter);
+   }
+
+  /**
+   * Finds the pieces whose colours are most like a given piece's, by how much their histograms overlap.
+   * @param piece the ID of the piece to compare against, which is never returned itself
+   * @param minOverlap how much the histograms have to overlap, from 0 to 1
+   * @param limit the most pieces to return
+   * @param filter decides which pieces may be returned, or null for any piece
+   * @return the IDs of the matching pieces, best first
+   */
+   public int[] findSimilar(int piece, float minOverlap, int limit, VantagePointTree.Filter filter) {
+      int pieceCount = dominant.length;
+      float[] scores = new float[pieceCount];
+      int target = piece * BINS;
+      for (int other = 0; other < pieceCount; other++) {
+         int overlap = 0;
+         int offset = other * BINS;
+         for (int bin = 0; bin < BINS; bin++) {
+            overlap += Math.min(histograms[target + bin] & 0xFF, histograms[offset + bin] & 0xFF);
+         }
+         scores[other] = overlap / 255f;
+      }
+      scores[piece] = -1;
+      return best(scores, minOverlap, limit, filter);
+   }
+
+  /**
+   * Picks the best scoring pieces. Matching pieces are packed into longs, score above ID, and sorted as
+   * primitives.
+   * @param scores every piece's score, from 0 to 1
+   * @param minScore the lowest score that counts
+   * @param limit the most pieces to return
+   * @param filter decides which pieces may be returned, or null for any piece
+   * @return the IDs of the best pieces, best first
+   */
+   private static int[] best(float[] scores, float minScore, int limit, VantagePointTree.Filter filter) {
+      long[] matches = new long[scores.length];
+      int count = 0;
+      for (int piece = 0; piece < scores.length; piece++) {
+         if (scores[piece] >= minScore && (filter == null || filter.accept(piece))) {
+            long rank = Integer.MAX_VALUE - Math.round(scores[piece] * 1000000);
+            matches[count++] = rank << 32 | piece;
+         }
+      }
+      Arrays.sort(matches, 0, count);
+      int[] ids = new int[Math.min(count, limit)];
+      for (int i = 0; i < ids.length; i++) {
+         ids[i] = (int)matches[i];
+      }
+      return ids;
+   }
+
+  /**
+   * Sorts pieces by colour, as for laying them out in a tray: by the hue of their dominant colour, with dull
+   * pieces last. Pieces with the same colour stay in the order they were given. Each piece is packed into a
+   * long, sort key above position above ID, so at most about a million pieces can be sorted at once.
+   * @param ids the IDs of the pieces to sort
+   * @return the same IDs, sorted
+   */
+   public int[] sortByColour(int[] ids) {
+      long[] keyed = new long[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+         keyed[i] = (long)sortKeys[ids[i]] << 40 | (long)i << 20 | ids[i];
+      }
+      Arrays.sort(keyed);
+      int[] sorted = new int[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+         sorted[i] = (int)(keyed[i] & 0xFFFFF);
+      }
+      return sorted;
+   }
+
+  /**
+   * Returns whether a piece is on the border of the puzzle, corners included.
+   * @param piece the piece's ID
+   * @return true if at least one side is on the border
+   */
+   public boolean isEdge(int piece) {
+      return borderSides[piece] != 0;
+   }
+
+  /**
+   * Returns whether a piece is a corner of the puzzle.
+   * @param piece the piece's ID
+   * @return true if two sides are on the border
+   */
+   public boolean isCorner(int piece) {
+      return Integer.bitCount(borderSides[piece]) >= 2;
+   }
+
+  /**
+   * Returns a piece's dominant colour.
+   * @param piece the piece's ID
+   * @return the average colour of the fullest bin of its histogram, as RGB
+   */
+   public int getDominantColour(int piece) {
+      return dominant[piece];
+   }
+
+  /**
+   * Returns roughly how many bytes the index takes up.
+   * @return the size of the arrays it keeps
+   */
+   public long getByteSize() {
+      return histograms.length + 4L * dominant.length + 4L * sortKeys.length + borderSides.length + 4L * scratch.length;
+   }
+}
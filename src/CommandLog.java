@@ -0,0 +1,268 @@
+/**
+* A bounded undo/redo history of moves, turns and fuses. Commands are kept as a handful of ints in parallel arrays
+* used as a ring buffer, so the history never allocates after it has been created, and once it is full the
+* oldest gesture is forgotten to make room. Every command belongs to a group; one drag and drop, including
+* the snaps and fuses it causes, is one group and is undone or redone as a unit. A gesture too big for the
+* whole ring is never half remembered: it is forgotten along with everything before it.
+* @author Noah Brown
+*/
+public class CommandLog {
+  /**
+   * A whole cluster was moved by (dx, dy).
+   */
+   public static final int MOVE = 0;
+  /**
+   * Two clusters were fused.
+   */
+   public static final int BIND = 1;
+  /**
+   * A whole cluster was turned clockwise by some quarter turns.
+   */
+   public static final int ROTATE = 2;
+
+  /**
+   * What each command does: {@link CommandLog#MOVE}, {@link CommandLog#BIND} or {@link CommandLog#ROTATE}.
+   */
+   private int[] kind;
+  /**
+   * The gesture each command belongs to.
+   */
+   private int[] group;
+  /**
+   * The piece that was moved or turned around, or the first piece given to the fuse.
+   */
+   private int[] pieceA;
+  /**
+   * The x-distance moved, the number of quarter turns, or the second piece given to the fuse.
+   */
+   private int[] valueB;
+  /**
+   * The y-distance moved, or the cluster root that was hung under the other by the fuse.
+   */
+   private int[] valueC;
+  /**
+   * The slot of the oldest command in the ring.
+   */
+   private int start;
+  /**
+   * How many commands have been done and can be undone.
+   */
+   private int done;
+  /**
+   * How many commands are stored, counting the undone ones that can still be redone.
+   */
+   private int stored;
+  /**
+   * The group the next commands will be recorded in.
+   */
+   private int currentGroup;
+  /**
+   * The group that outgrew the ring and is no longer being recorded, or -1 if none has.
+   */
+   private int droppedGroup;
+
+  /**
+   * Receives the commands being undone or redone and applies them to the board.
+   */
+   public interface Target {
+     /**
+      * Moves the cluster containing the given piece.
+      * @param piece the ID of any piece in the cluster
+      * @param dx how far to move it left or right
+      * @param dy how far to move it up or down
+      */
+      void moveCluster(int piece, int dx, int dy);
+
+     /**
+      * Turns the cluster containing the given piece around that piece's square.
+      * @param piece the ID of the piece the cluster turns around
+      * @param quarterTurns how many quarter turns clockwise; negative turns anticlockwise
+      */
+      void rotateCluster(int piece, int quarterTurns);
+
+     /**
+      * Fuses the clusters of two pieces again.
+      * @param a the first piece given to the original fuse
+      * @param b the second piece given to the original fuse
+      */
+      void bind(int a, int b);
+
+     /**
+      * Undoes a fuse.
+      * @param a the first piece given to the fuse
+      * @param b the second piece given to the fuse
+      * @param child the cluster root that the fuse hung under the other
+      */
+      void unbind(int a, int b, int child);
+   }
+
+  /**
+   * Creates an empty history.
+   * @param capacity the most commands to remember, or 0 to remember nothing
+   */
+   public CommandLog(int capacity) {
+      capacity = Math.max(0, capacity);
+      droppedGroup = -1;
+      kind = new int[capacity];
+      group = new int[capacity];
+      pieceA = new int[capacity];
+      valueB = new int[capacity];
+      valueC = new int[capacity];
+   }
+
+  /**
+   * Starts a new gesture. Every command recorded until the next call is undone and redone together.
+   */
+   public void beginGroup() {
+      currentGroup++;
+   }
+
+  /**
+   * Records that a whole cluster was moved.
+   * @param piece the ID of any piece in the cluster
+   * @param dx how far it moved left or right
+   * @param dy how far it moved up or down
+   */
+   public void recordMove(int piece, int dx, int dy) {
+      if (dx != 0 || dy != 0) {
+         record(MOVE, piece, dx, dy);
+      }
+   }
+
+  /**
+   * Records that a whole cluster was turned.
+   * @param piece the ID of the piece the cluster turned around
+   * @param quarterTurns how many quarter turns clockwise
+   */
+   public void recordRotate(int piece, int quarterTurns) {
+      if (quarterTurns % 4 != 0) {
+         record(ROTATE, piece, quarterTurns, 0);
+      }
+   }
+
+  /**
+   * Records that two clusters were fused.
+   * @param a the first piece given to {@link PieceClusters#union}
+   * @param b the second piece given to {@link PieceClusters#union}
+   * @param child the value returned by {@link PieceClusters#union}
+   */
+   public void recordBind(int a, int b, int child) {
+      record(BIND, a, b, child);
+   }
+
+  /**
+   * Adds a command on top of the history, throwing away anything that could have been redone and, if the
+   * ring is full, the oldest gesture. If the ring is full of the current gesture alone, the whole gesture is
+   * forgotten and the rest of it isn't recorded, so undo never stops halfway through a gesture.
+   * @param commandKind what the command does
+   * @param a the first value of the command
+   * @param b the second value of the command
+   * @param c the third value of the command
+   */
+   private void record(int commandKind, int a, int b, int c) {
+      stored = done;
+      if (currentGroup == droppedGroup) {
+         return;
+      }
+      if (stored == kind.length) {
+         if (stored == 0 || group[start] == currentGroup) {
+            // Groups are contiguous, so the current gesture fills the ring; nothing older is left to drop
+            start = 0;
+            stored = 0;
+            done = 0;
+            droppedGroup = currentGroup;
+            return;
+         }
+         dropOldestGroup();
+      }
+      int slot = slot(stored);
+      kind[slot] = commandKind;
+      group[slot] = currentGroup;
+      pieceA[slot] = a;
+      valueB[slot] = b;
+      valueC[slot] = c;
+      stored++;
+      done++;
+   }
+
+  /**
+   * Forgets the oldest gesture in the history so there is room for a new command.
+   */
+   private void dropOldestGroup() {
+      int oldest = group[start];
+      while (stored > 0 && group[start] == oldest) {
+         start = (start + 1) % kind.length;
+         stored--;
+         done--;
+      }
+   }
+
+  /**
+   * Converts a position in the history into a slot of the ring.
+   * @param index how many commands after the oldest one
+   * @return the slot in the arrays
+   */
+   private int slot(int index) {
+      return (start + index) % kind.length;
+   }
+
+  /**
+   * Returns whether there is anything to undo.
+   * @return true if at least one command has been done
+   */
+   public boolean canUndo() {
+      return done > 0;
+   }
+
+  /**
+   * Returns whether there is anything to redo.
+   * @return true if at least one command has been undone since the last new command
+   */
+   public boolean canRedo() {
+      return done < stored;
+   }
+
+  /**
+   * Undoes the most recent gesture, newest command first.
+   * @param target the board to apply the inverse commands to
+   */
+   public void undo(Target target) {
+      if (!canUndo()) {
+         return;
+      }
+      int undoGroup = group[slot(done - 1)];
+      while (done > 0 && group[slot(done - 1)] == undoGroup) {
+         done--;
+         int slot = slot(done);
+         if (kind[slot] == MOVE) {
+            target.moveCluster(pieceA[slot], -valueB[slot], -valueC[slot]);
+         } else if (kind[slot] == ROTATE) {
+            target.rotateCluster(pieceA[slot], -valueB[slot]);
+         } else {
+            target.unbind(pieceA[slot], valueB[slot], valueC[slot]);
+         }
+      }
+   }
+
+  /**
+   * Redoes the most recently undone gesture, oldest command first.
+   * @param target the board to apply the commands to
+   */
+   public void redo(Target target) {
+      if (!canRedo()) {
+         return;
+      }
+      int redoGroup = group[slot(done)];
+      while (done < stored && group[slot(done)] == redoGroup) {
+         int slot = slot(done);
+         if (kind[slot] == MOVE) {
+            target.moveCluster(pieceA[slot], valueB[slot], valueC[slot]);
+         } else if (kind[slot] == ROTATE) {
+            target.rotateCluster(pieceA[slot], valueB[slot]);
+         } else {
+            target.bind(pieceA[slot], valueB[slot]);
+         }
+         done++;
+      }
+   }
+}
@@ -0,0 +1,242 @@
+import java.awt.*;
+import java.io.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Describes every edge of every piece and indexes them so the pieces most likely to fit an open edge can be
+* found without comparing it against every other edge on the board. An edge's descriptor is its shape (flat,
+* tab or blank, read from its mask) and a colour profile sampled along the cut. Edges are split into one
+* {@link VantagePointTree} per side and shape, so a query only searches edges that could physically fit:
+* the opposite side, with the opposite shape.
+* Edge IDs are {@code pieceID * 4 + side}, with sides numbered clockwise from the top like
+* {@link PuzzleGeometry#neighbour}.
+* @author Noah Brown
+*/
+public class EdgeIndex {
+  /**
+   * A side on the border of the puzzle, which nothing fits.
+   */
+   public static final int FLAT = 0;
+  /**
+   * A side whose tab sticks out past the piece's square.
+   */
+   public static final int TAB = 1;
+  /**
+   * A side with a notch cut into the piece's square.
+   */
+   public static final int BLANK = 2;
+  /**
+   * How many places along an edge its colour is sampled.
+   */
+   private static final int SAMPLES = 8;
+  /**
+   * How many pixels in from the cut the colour samples reach, at most. Small pieces use less.
+   */
+   private static final int DEPTH = 3;
+  /**
+   * The length of an edge's colour profile: red, green and blue for every sample.
+   */
+   private static final int DIMENSIONS = SAMPLES * 3;
+
+  /**
+   * The shape of every edge, indexed by edge ID.
+   */
+   private byte[] shapes;
+  /**
+   * The colour profile of every edge, {@link EdgeIndex#DIMENSIONS} floats per edge ID.
+   */
+   private float[] profiles;
+  /**
+   * One tree per side and shape, indexed by {@code side * 3 + shape}. Flat edges aren't indexed.
+   */
+   private VantagePointTree[] trees;
+
+  /**
+   * Describes and indexes every edge of every piece the splitter cuts. Safe to call off the event thread.
+   * @param imageSplitter the splitter the pieces were cut with
+   * @throws java.io.IOException if one of the masks can't be read
+   */
+   public EdgeIndex(ImageSplitter imageSplitter) throws IOException {
+      PuzzleGeometry geometry = imageSplitter.getGeometry();
+      int edgeCount = geometry.getPieceCount() * 4;
+      shapes = new byte[edgeCount];
+      profiles = new float[edgeCount * DIMENSIONS];
+      BufferedImage source = imageSplitter.getPuzzleImage();
+      int[] bucketSizes = new int[12];
+
+      for (int index = 0; index < geometry.getPieceCount(); index++) {
+         int row = geometry.row(index);
+         int col = geometry.col(index);
+         AlphaMask mask = imageSplitter.getPieceMask(row, col);
+         int[] space = geometry.getBufferSpace(row, col);
+         Rectangle cell = geometry.getCellBounds(row, col);
+         for (int side = 0; side < 4; side++) {
+            int edge = index * 4 + side;
+            shapes[edge] = (byte)readShape(mask, space, cell.width, side);
+            sampleColours(source, cell, side, profiles, edge * DIMENSIONS);
+            bucketSizes[side * 3 + shapes[edge]]++;
+         }
+      }
+
+      trees = new VantagePointTree[12];
+      for (int side = 0; side < 4; side++) {
+         for (int shape = TAB; shape <= BLANK; shape++) {
+            int bucket = side * 3 + shape;
+            int[] edgeIDs = new int[bucketSizes[bucket]];
+            float[] vectors = new float[edgeIDs.length * DIMENSIONS];
+            int count = 0;
+            for (int edge = side; edge < edgeCount; edge += 4) {
+               if (shapes[edge] == shape) {
+                  System.arraycopy(profiles, edge * DIMENSIONS, vectors, count * DIMENSIONS, DIMENSIONS);
+                  edgeIDs[count++] = edge;
+               }
+            }
+            trees[bucket] = new VantagePointTree(vectors, DIMENSIONS, edgeIDs);
+         }
+      }
+   }
+
+  /**
+   * Works out whether one side of a piece is flat, a tab or a blank from the piece's mask.
+   * A side with no buffer space is on the border. Otherwise it's a tab if enough of the buffer strip
+   * beyond the piece's square is opaque.
+   * @param mask the piece's mask
+   * @param space the piece's buffer space, clockwise from the top
+   * @param cellSize the size of the piece's square
+   * @param side the side to check
+   * @return {@link EdgeIndex#FLAT}, {@link EdgeIndex#TAB} or {@link EdgeIndex#BLANK}
+   */
+   private static int readShape(AlphaMask mask, int[] space, int cellSize, int side) {
+      if (space[side] == 0) {
+         return FLAT;
+      }
+      int left = space[3];
+      int top = space[0];
+      Rectangle strip;
+      if (side == 0) {
+         strip = new Rectangle(left, 0, cellSize, top);
+      } else if (side == 1) {
+         strip = new Rectangle(left + cellSize, top, space[1], cellSize);
+      } else if (side == 2) {
+         strip = new Rectangle(left, top + cellSize, cellSize, space[2]);
+      } else {
+         strip = new Rectangle(0, top, left, cellSize);
+      }
+      int opaque = 0;
+      for (int y = strip.y; y < strip.y + strip.height; y++) {
+         for (int x = strip.x; x < strip.x + strip.width; x++) {
+            if (mask.getAlpha(x, y) > 127) {
+               opaque++;
+            }
+         }
+      }
+      return opaque * 10 > strip.width * strip.height ? TAB : BLANK;
+   }
+
+  /**
+   * Averages the colour of the puzzle image in {@link EdgeIndex#SAMPLES} patches along one side of a piece's
+   * square, just inside the cut. Horizontal sides are sampled left to right and vertical sides top to bottom,
+   * so the two sides of a cut line up sample for sample.
+   * @param source the puzzle image
+   * @param cell the piece's square in the puzzle image
+   * @param side the side to sample
+   * @param out where to write the profile
+   * @param offset where the profile starts in out
+   */
+   private static void sampleColours(BufferedImage source, Rectangle cell, int side, float[] out, int offset) {
+      boolean horizontal = side == 0 || side == 2;
+      int length = horizontal ? cell.width : cell.height;
+      for (int s = 0; s < SAMPLES; s++) {
+         int from = s * length / SAMPLES;
+         int to = Math.max(from + 1, (s + 1) * length / SAMPLES);
+         long red = 0;
+         long green = 0;
+         long blue = 0;
+         int count = 0;
+         int maxDepth = Math.min(DEPTH, Math.max(1, length / SAMPLES));
+         for (int along = from; along < to; along++) {
+            for (int depth = 0; depth < maxDepth; depth++) {
+               int x;
+               int y;
+               if (side == 0) {
+                  x = cell.x + along;
+                  y = cell.y + depth;
+               } else if (side == 1) {
+                  x = cell.x + cell.width - 1 - depth;
+                  y = cell.y + along;
+               } else if (side == 2) {
+                  x = cell.x + along;
+                  y = cell.y + cell.height - 1 - depth;
+               } else {
+                  x = cell.x + depth;
+                  y = cell.y + along;
+               }
+               int rgb = source.getRGB(x, y);
+               red += (rgb >> 16) & 0xFF;
+               green += (rgb >> 8) & 0xFF;
+               blue += rgb & 0xFF;
+               count++;
+            }
+         }
+         out[offset + s * 3] = red / (255f * count);
+         out[offset + s * 3 + 1] = green / (255f * count);
+         out[offset + s * 3 + 2] = blue / (255f * count);
+      }
+   }
+
+  /**
+   * Finds the pieces whose edges most likely fit the given side of a piece: the opposite side, with the
+   * opposite shape, with the most similar colours along the cut.
+   * @param pieceID the ID of the piece being fitted
+   * @param side the side of the piece being fitted
+   * @param k the most pieces to return
+   * @param filter decides which candidate edges may be returned, by edge ID, or null to allow every edge
+   * @return the IDs of up to k pieces, best fit first. Empty if the side is flat.
+   */
+   public int[] findFits(int pieceID, int side, int k, VantagePointTree.Filter filter) {
+      int edge = pieceID * 4 + side;
+      int shape = shapes[edge];
+      if (shape == FLAT) {
+         return new int[0];
+      }
+      int wanted = shape == TAB ? BLANK : TAB;
+      int[] edges = trees[opposite(side) * 3 + wanted].nearest(profiles, edge * DIMENSIONS, k, filter);
+      for (int i = 0; i < edges.length; i++) {
+         edges[i] /= 4;
+      }
+      return edges;
+   }
+
+  /**
+   * Returns the shape of an edge.
+   * @param pieceID the ID of the piece
+   * @param side the side of the piece
+   * @return {@link EdgeIndex#FLAT}, {@link EdgeIndex#TAB} or {@link EdgeIndex#BLANK}
+   */
+   public int getShape(int pieceID, int side) {
+      return shapes[pieceID * 4 + side];
+   }
+
+  /**
+   * Returns roughly how many bytes the index takes up: the descriptors of every edge and the trees over them.
+   * @return the size of the index in bytes
+   */
+   public long getByteSize() {
+      long bytes = shapes.length + 4L * profiles.length;
+      for (VantagePointTree tree : trees) {
+         if (tree != null) {
+            bytes += tree.getByteSize();
+         }
+      }
+      return bytes;
+   }
+
+  /**
+   * Returns the side that faces the given side across a cut.
+   * @param side a side, clockwise from the top
+   * @return the opposite side
+   */
+   public static int opposite(int side) {
+      return (side + 2) % 4;
+   }
+}
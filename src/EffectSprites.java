@@ -0,0 +1,310 @@
+import java.awt.*;
+import java.util.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Drop shadow and outline sprites for pieces, built once from each piece's {@link AlphaMask} and shared by every
+* piece cut with the same mask. A sprite is the mask's shape blurred with a separable box blur (three passes,
+* which is close to a Gaussian) and offset down and to the right as a shadow, optionally with a coloured
+* outline around the shape for selected, hinted or snap-previewed pieces. Sprites are {@link EffectSprites#MARGIN}
+* pixels bigger than the piece on every side, and one is drawn under each piece, so effects cost one drawImage
+* per piece instead of a blur per paint.
+* Sprites are built for each orientation from the turned mask, so the light always comes from the top left, and
+* for each display scale from the mask cut at that scale, with the offset, blur and outline scaled to match, so
+* they are drawn pixel for pixel on HiDPI screens. Only used from the event thread.
+* @author Noah Brown
+*/
+public class EffectSprites {
+  /**
+   * Just the drop shadow.
+   */
+   public static final int SHADOW = 0;
+  /**
+   * The drop shadow with an outline for the selected cluster.
+   */
+   public static final int SELECTED = 1;
+  /**
+   * The drop shadow with an outline for a piece suggested by a hint.
+   */
+   public static final int HINTED = 2;
+  /**
+   * The drop shadow with an outline for the piece a dragged cluster would snap to.
+   */
+   public static final int SNAP_PREVIEW = 3;
+  /**
+   * How far down and right the shadow falls, in pixels.
+   */
+   private static final int SHADOW_OFFSET = 3;
+  /**
+   * The radius of each box blur pass over the shadow.
+   */
+   private static final int BLUR_RADIUS = 2;
+  /**
+   * How many box blur passes are made in each direction.
+   */
+   private static final int BLUR_PASSES = 3;
+  /**
+   * How dark the shadow is under a fully opaque part of the piece, out of 255.
+   */
+   private static final int SHADOW_ALPHA = 110;
+  /**
+   * How far the outline reaches past the piece's edge, in pixels.
+   */
+   private static final int OUTLINE_WIDTH = 2;
+  /**
+   * The colour of each outline variant, indexed by variant. The shadow variant has none.
+   */
+   private static final Color[] OUTLINE_COLOURS = {null, Color.WHITE, Color.YELLOW, Color.GREEN};
+  /**
+   * How far a sprite reaches past its piece on every side: enough for the shadow's offset and blur,
+   * and for the outline.
+   */
+   public static final int MARGIN = Math.max(SHADOW_OFFSET + BLUR_RADIUS * BLUR_PASSES, OUTLINE_WIDTH);
+
+  /**
+   * The sprites built so far, per display scale and mask, indexed by {@code orientation * 4 + variant}.
+   */
+   private HashMap<Double, HashMap<AlphaMask, BufferedImage[]>> sprites;
+  /**
+   * How many bytes the built sprites take up.
+   */
+   private long currentBytes;
+
+  /**
+   * Creates an empty set of effect sprites.
+   */
+   public EffectSprites() {
+      this.sprites = new HashMap<Double, HashMap<AlphaMask, BufferedImage[]>>();
+   }
+
+  /**
+   * Returns the effect sprite for a mask, building it the first time it is asked for.
+   * @param mask the piece's mask
+   * @param orientation how many quarter turns clockwise the piece is turned
+   * @param variant {@link EffectSprites#SHADOW}, {@link EffectSprites#SELECTED}, {@link EffectSprites#HINTED}
+   * or {@link EffectSprites#SNAP_PREVIEW}
+   * @return the sprite, to be drawn at the piece's top-left corner minus {@link EffectSprites#MARGIN}
+   */
+   public BufferedImage get(AlphaMask mask, int orientation, int variant) {
+      return get(mask, orientation, variant, 1);
+   }
+
+  /**
+   * Returns the effect sprite for a mask cut at a display scale, building it the first time it is asked for.
+   * @param mask the piece's mask, cut at the display's scale
+   * @param orientation how many quarter turns clockwise the piece is turned
+   * @param variant {@link EffectSprites#SHADOW}, {@link EffectSprites#SELECTED}, {@link EffectSprites#HINTED}
+   * or {@link EffectSprites#SNAP_PREVIEW}
+   * @param scale how many device pixels there are to each pixel of the puzzle's shape
+   * @return the sprite, to be drawn at the piece image's top-left corner minus {@link EffectSprites#getMargin}
+   * device pixels
+   */
+   public BufferedImage get(AlphaMask mask, int orientation, int variant, double scale) {
+      HashMap<AlphaMask, BufferedImage[]> forScale = sprites.get(scale);
+      if (forScale == null) {
+         forScale = new HashMap<AlphaMask, BufferedImage[]>();
+         sprites.put(scale, forScale);
+      }
+      BufferedImage[] forMask = forScale.get(mask);
+      if (forMask == null) {
+         forMask = new BufferedImage[16];
+         forScale.put(mask, forMask);
+      }
+      int slot = orientation * 4 + variant;
+      if (forMask[slot] == null) {
+         forMask[slot] = build(mask, orientation, OUTLINE_COLOURS[variant], scale);
+         currentBytes += SpriteCache.spriteBytes(forMask[slot]);
+      }
+      return forMask[slot];
+   }
+
+  /**
+   * Returns how far a sprite reaches past its piece on every side at a display scale.
+   * @param scale how many device pixels there are to each pixel of the puzzle's shape
+   * @return the margin in device pixels, which is {@link EffectSprites#MARGIN} at a scale of 1
+   */
+   public static int getMargin(double scale) {
+      return Math.max(scaled(SHADOW_OFFSET, scale) + scaled(BLUR_RADIUS, scale) * BLUR_PASSES, scaled(OUTLINE_WIDTH, scale));
+   }
+
+  /**
+   * Scales a distance to a display scale, rounding to a whole number of device pixels but never below one.
+   * @param distance the distance at a scale of 1
+   * @param scale how many device pixels there are to each pixel of the puzzle's shape
+   * @return the scaled distance
+   */
+   private static int scaled(int distance, double scale) {
+      return Math.max(1, (int)Math.round(distance * scale));
+   }
+
+  /**
+   * Builds one effect sprite.
+   * @param mask the piece's mask
+   * @param orientation how many quarter turns clockwise the piece is turned
+   * @param outline the colour of the outline, or null for just the shadow
+   * @param scale how many device pixels there are to each pixel of the puzzle's shape
+   * @return the sprite
+   */
+   private static BufferedImage build(AlphaMask mask, int orientation, Color outline, double scale) {
+      int margin = getMargin(scale);
+      int offset = scaled(SHADOW_OFFSET, scale);
+      int radius = scaled(BLUR_RADIUS, scale);
+      int outlineWidth = scaled(OUTLINE_WIDTH, scale);
+      boolean turned = orientation % 2 == 1;
+      int shapeWidth = turned ? mask.getHeight() : mask.getWidth();
+      int shapeHeight = turned ? mask.getWidth() : mask.getHeight();
+      int width = shapeWidth + 2 * margin;
+      int height = shapeHeight + 2 * margin;
+      float[] shape = turnedShape(mask, orientation, width, height, margin);
+
+      float[] shadow = new float[width * height];
+      for (int y = 0; y + offset < height; y++) {
+         System.arraycopy(shape, y * width, shadow, (y + offset) * width + offset, width - offset);
+      }
+      float[] scratch = new float[width * height];
+      for (int pass = 0; pass < BLUR_PASSES; pass++) {
+         boxBlur(shadow, scratch, height, width, 1, width, radius);
+         boxBlur(scratch, shadow, width, height, width, 1, radius);
+      }
+
+      float[] ring = null;
+      if (outline != null) {
+         ring = new float[width * height];
+         maxFilter(shape, scratch, height, width, 1, width, outlineWidth);
+         maxFilter(scratch, ring, width, height, width, 1, outlineWidth);
+      }
+
+      int[] pixels = new int[width * height];
+      for (int i = 0; i < pixels.length; i++) {
+         int alpha = Math.round(shadow[i] * SHADOW_ALPHA);
+         int rgb = 0;
+         if (ring != null && ring[i] > 0) {
+            // The outline goes over the shadow; the piece itself is drawn over both
+            float cover = ring[i];
+            alpha = Math.round(255 * cover + alpha * (1 - cover));
+            rgb = outline.getRGB() & 0x00FFFFFF;
+         }
+         pixels[i] = (Math.min(255, alpha) << 24) | rgb;
+      }
+      BufferedImage sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      sprite.setRGB(0, 0, width, height, pixels, 0, width);
+      return sprite;
+   }
+
+  /**
+   * Copies a mask's alpha into a float array with room for the margin, turned to the given orientation.
+   * @param mask the piece's mask
+   * @param orientation how many quarter turns clockwise the piece is turned
+   * @param width the width of the sprite, including the margin
+   * @param height the height of the sprite, including the margin
+   * @param margin how far the sprite reaches past the piece on every side
+   * @return the shape, 0 to 1 per pixel
+   */
+   private static float[] turnedShape(AlphaMask mask, int orientation, int width, int height, int margin) {
+      float[] shape = new float[width * height];
+      int maskWidth = mask.getWidth();
+      int maskHeight = mask.getHeight();
+      for (int y = 0; y < maskHeight; y++) {
+         for (int x = 0; x < maskWidth; x++) {
+            int turnedX;
+            int turnedY;
+            if (orientation == 0) {
+               turnedX = x;
+               turnedY = y;
+            } else if (orientation == 1) {
+               turnedX = maskHeight - 1 - y;
+               turnedY = x;
+            } else if (orientation == 2) {
+               turnedX = maskWidth - 1 - x;
+               turnedY = maskHeight - 1 - y;
+            } else {
+               turnedX = y;
+               turnedY = maskWidth - 1 - x;
+            }
+            shape[(turnedY + margin) * width + turnedX + margin] = mask.getAlpha(x, y) / 255f;
+         }
+      }
+      return shape;
+   }
+
+  /**
+   * One pass of a box blur along one direction, with a running sum so each pixel costs the same however big
+   * the radius is. Pixels past the edges count as empty.
+   * @param in the values to blur
+   * @param out where to write the blurred values
+   * @param lines how many lines to blur
+   * @param length how many pixels are in each line
+   * @param step the distance in the arrays between neighbouring pixels of a line
+   * @param lineStep the distance in the arrays between the starts of neighbouring lines
+   * @param radius how many pixels on each side are averaged in
+   */
+   private static void boxBlur(float[] in, float[] out, int lines, int length, int step, int lineStep, int radius) {
+      float scale = 1f / (2 * radius + 1);
+      for (int line = 0; line < lines; line++) {
+         int start = line * lineStep;
+         float sum = 0;
+         for (int i = 0; i < radius && i < length; i++) {
+            sum += in[start + i * step];
+         }
+         for (int i = 0; i < length; i++) {
+            if (i + radius < length) {
+               sum += in[start + (i + radius) * step];
+            }
+            if (i - radius - 1 >= 0) {
+               sum -= in[start + (i - radius - 1) * step];
+            }
+            out[start + i * step] = sum * scale;
+         }
+      }
+   }
+
+  /**
+   * One pass of a max filter along one direction, which grows a shape by the given radius. Run in both
+   * directions it grows the shape into a square; that is close enough for a 2 pixel outline.
+   * @param in the values to filter
+   * @param out where to write the filtered values
+   * @param lines how many lines to filter
+   * @param length how many pixels are in each line
+   * @param step the distance in the arrays between neighbouring pixels of a line
+   * @param lineStep the distance in the arrays between the starts of neighbouring lines
+   * @param radius how many pixels on each side are looked at
+   */
+   private static void maxFilter(float[] in, float[] out, int lines, int length, int step, int lineStep, int radius) {
+      for (int line = 0; line < lines; line++) {
+         int start = line * lineStep;
+         for (int i = 0; i < length; i++) {
+            float max = 0;
+            for (int j = Math.max(0, i - radius); j <= Math.min(length - 1, i + radius); j++) {
+               max = Math.max(max, in[start + j * step]);
+            }
+            out[start + i * step] = max;
+         }
+      }
+   }
+
+  /**
+   * Returns how many sprites have been built.
+   * @return the number of sprites
+   */
+   public int size() {
+      int count = 0;
+      for (HashMap<AlphaMask, BufferedImage[]> forScale : sprites.values()) {
+         for (BufferedImage[] forMask : forScale.values()) {
+            for (BufferedImage sprite : forMask) {
+               if (sprite != null) {
+                  count++;
+               }
+            }
+         }
+      }
+      return count;
+   }
+
+  /**
+   * Returns how many bytes the built sprites take up.
+   * @return {@link EffectSprites#currentBytes}
+   */
+   public long getCurrentBytes() {
+      return currentBytes;
+   }
+}
@@ -1,326 +1,638 @@
-import java.awt.*;
-import java.io.*;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.awt.Image;
-import java.awt.image.*;
-import java.awt.event.*;
-
-/**
-* This class is exclusively used for splitting an image into appropriately sized and masked puzzle pieces.
-* @author Noah Brown
-*/
-public class ImageSplitter {
-  /**
-   * The unmodified image to use for the puzzle.
-   */
-   private BufferedImage puzzleImage;
-  /**
-   * The number of rows the puzzle will have.
-   */
-   private int rows;
-  /**
-   * The number of columns the puzzle will have.
-   */
-   private int cols;
-  /**
-   * The width, in pixels, of {@link ImageSplitter#puzzleImage}.
-   */
-   private int imageWidth;
-  /**
-   * The height, in pixels, of {@link ImageSplitter#puzzleImage}.
-   */
-   private int imageHeight;
-  /**
-   * A 2D array of tesselating filepaths to be used for masking.
-   */ 
-   private String[][] filePaths;
-   
-  /**
-   * Constructor method that reads a given image and, if necessary, converts it to an
-   * appropriately sized png file.
-   * @param image The image that the puzzle is going to use.
-   * @param numRows The number of rows the puzzle will have.
-   * @param numCols The number of columns the puzzle will have.
-   */
-   public ImageSplitter(File image, int numRows, int numCols) {
-      try {
-         this.puzzleImage = ImageIO.read(image);
-      } catch (IOException e) {
-         e.printStackTrace();
-      }
-      this.rows = numRows;
-      this.cols = numCols;
-      this.imageWidth = puzzleImage.getWidth();
-      this.imageHeight = puzzleImage.getHeight();
-      this.filePaths = initializePathArray();
-      
-      if (imageWidth != 700 && imageHeight != 385) {
-         try {
-            formatImage(700, 385, "png");
-         } catch (IOException e) {
-            e.printStackTrace();
-         }
-      }
-   }
-   
-  /**
-   * Splits the image held in the {@link ImageSplitter#puzzleImage} field into 220 rectangular images.
-   * Images are not adjusted for the masking process and this WILL cause IOExceptions if used in the
-   * final product without adjusting other code.
-   * Left in for debugging purposes.
-   */
-   public void splitImageRect() {
-      purgePieceImages(new File(System.getProperty("user.dir") + "/src/Resources/"));
-      int xpos = 0;
-      int ypos = 0;
-      
-      for (int i = 0; i < rows; i++) {
-         xpos = 0;
-         for (int j = 0; j < cols; j++) {
-            splitImage(xpos, ypos, i, j, 0, 0, 0, 0);
-            xpos += 35;
-         }
-         ypos += 35;
-      }
-   }
-   
-  /**
-   * Splits the image held in the {@link ImageSplitter#puzzleImage} field into 220 rectangular images,
-   * each with appropriate buffer space for the eventual mask step.
-   * The file names of the generated subimages reflect what piece they will eventually be assigned to.
-   */
-   public void splitImageBuffer() {
-      purgePieceImages(new File(System.getProperty("user.dir") + "/Resources/"));
-      int xpos = 0;
-      int ypos = 0;
-      int upSpace;
-      int rightSpace;
-      int downSpace;
-      int leftSpace;
-      
-      for (int i = 0; i < rows; i++) {
-         xpos = 0;
-         for (int j = 0; j < cols; j++) {
-            upSpace = 5;
-            rightSpace = 5;
-            downSpace = 5;
-            leftSpace = 5;
-            
-            if (i == 0) {
-               upSpace = 0;
-            } 
-            if (i == rows - 1) {
-               downSpace = 0;
-            } 
-            if (j == cols - 1) {
-               rightSpace = 0;
-            } 
-            if (j == 0) {
-               leftSpace = 0;
-            }
-            
-            splitImage(xpos, ypos, i, j, upSpace, rightSpace, downSpace, leftSpace);                  
-            xpos += 35; 
-         }
-         
-         ypos += 35;
-      }
-   }
-   
-  /**
-   * Takes a subimage of the main puzzle image and adds buffer space to prepare it for masking.
-   * Very prone to IOExceptions. Good luck!
-   * @param xpos The base x position to take the subimage from.
-   * @param ypos The base y position to take the subimage from.
-   * @param row The row to be used in the output filename.
-   * @param col The column to be used in the output filename.
-   * @param upSpace The amount (in pixels, which is true for all params of this type) of buffer space to be generated upwards of
-   * the ypos parameter.
-   * @param rightSpace The amount of buffer space to be generated rightwards of the piece's width plus the xpos parameter.
-   * @param downSpace The amount of buffer space to be generated downwards of the piece's height plus the ypos parameter.
-   * @param leftSpace The amount of buffer space to be generated leftwards of the xpos parameter.
-   */
-   public void splitImage(int xpos, int ypos, int row, int col, int upSpace, int rightSpace, int downSpace, int leftSpace) {
-      try {
-         BufferedImage pieceImage = puzzleImage.getSubimage(xpos - leftSpace, ypos - upSpace, 35 + leftSpace + rightSpace, 35 + upSpace + downSpace);
-         File outputImage = new File(System.getProperty("user.dir") + "/Resources/piece" + row + "-" + col + ".png");
-         ImageIO.write(pieceImage, "png", outputImage);
-      } catch (IOException e) {
-         e.printStackTrace();
-      }
-   }
-   
-  /**
-   * Resizes a given image to the given dimensions.
-   * This is necessary because my puzzle algorithm is bad and restrictive.
-   * @param newWidth The width, in pixels, to resize the image to.
-   * @param newHeight The height, in pixels, to resize the image to.
-   * @param filetype The file type to convert the image to. Currently unused, may be implemented later.
-   * @throws java.io.IOException Throws an IOException if the image doesn't exist.
-   */
-   public void formatImage(int newWidth, int newHeight, String filetype) throws IOException {
-      if (imageWidth != 700 || imageHeight != 385) {
-         Image resizedImage = puzzleImage.getScaledInstance(newWidth, newHeight, Image.SCALE_DEFAULT);
-         puzzleImage.getGraphics().drawImage(resizedImage, 0, 0, null);
-      }
-   }
-   
-  /**
-   * Removes all files in a given directory.
-   * Used to purge the Resources folder of generated piece images, in case the image being used for the
-   * puzzle changes between runs. Thank you StackOverflow for this code.
-   * @param dir The directory to purge.
-   */
-   public void purgePieceImages(File dir) {
-      for (File file: dir.listFiles()) {
-         if (!file.isDirectory()) {
-            file.delete();
-         }
-      }
-   }
-   
-  /**
-   * Initializes and fills out {@link ImageSplitter#filePaths}. 
-   * The edges and center form a 3x1 or 3x3 tesselation (respectively) that can be used for masking. 
-   * @return The value of {@link ImageSplitter#puzzleImage}.
-   */ 
-   public String[][] initializePathArray() {
-      String dir = System.getProperty("user.dir") + "/Resources/Masks/";
-      String[][] paths = new String[5][5];
-      paths[0][0] = "Corners/corner0-0.png";
-      paths[0][4] = "Corners/corner0-1.png";
-      paths[4][0] = "Corners/corner1-0.png";
-      paths[4][4] = "Corners/corner1-1.png";
-      
-      for (int i = 1; i < 4; i++) {
-         paths[i][0] = "Edges/Vert/edge" + (i - 1) + "-0.png";
-         paths[i][4] = "Edges/Vert/edge" + (i - 1) + "-1.png";
-         paths[0][i] = "Edges/Horz/edge0-" + (i - 1) + ".png";
-         paths[4][i] = "Edges/Horz/edge1-" + (i - 1) + ".png";
-      }
-      
-      for (int i = 1; i < paths.length - 1; i++) {
-         for (int j = 1; j < paths[0].length - 1; j++)
-            paths[i][j] = "Center/center" + (i - 1) + "-" + (j - 1) + ".png";
-      }
-      
-      for (int i = 0; i < paths.length; i++) {
-         for (int j = 0; j < paths[0].length; j++) {
-            paths[i][j] = dir + paths[i][j];
-         }
-      }
-      
-      return paths;
-   }
-   
-  /**
-   * Determines what mask to apply to all 220 puzzle pieces, and calls the appropriate methods
-   * to apply that mask. 
-   * Which mask is "appropriate" is determined using the piece's position in the global array and the 
-   * 5x5 filepath array constructed in {@link ImageSplitter#initializePathArray}. Corner pieces are set manually, 
-   * then the tesselation begins. Edge pieces are given the mask filepath at the correct row/column relative to 
-   * their edge status, and then 1 (to account for corners in the filepath array) + the current value of the column 
-   * / row iterative variable modulo 3. This makes sure that the tesselation loops properly. Center pieces are the 
-   * same, but both the column and row variables are iteratives, and they work with the center values of the filepath 
-   * array. Once the correct file path has been determined, this calls {@link ImageSplitter#maskPiece} to do the 
-   * actual masking. Basically, this is spaghetti code. Have fun!
-   * @param pieces The global piece array.
-   * @throws java.io.IOException Throws an IOException if the mask or image to apply the mask to doesn't exist.
-   */ 
-   public void massMaskPieces(Piece[][] pieces) throws IOException {
-      purgePieceImages(new File(System.getProperty("user.dir") + "/Resources/Masked/"));
-      // Corners
-      pieces[0][0].setImage(maskPiece(filePaths[0][0], 0, 0));
-      pieces[0][19].setImage(maskPiece(filePaths[0][4], 0, 19));
-      pieces[10][0].setImage(maskPiece(filePaths[4][0], 10, 0));
-      pieces[10][19].setImage(maskPiece(filePaths[4][4], 10, 19));
-      // Top and bottom row
-      for (int i = 0; i < 2; i++) {
-         for (int cols = 0; cols < pieces[0].length - 2; cols++) {
-            pieces[10*i][cols + 1].setImage(maskPiece(filePaths[4 * i][1 + (cols % 3)], 10 * i, cols + 1));
-         }
-      }
-      // Side columns
-      for (int i = 0; i < 2; i++) {
-         for (int rows = 0; rows < pieces.length - 2; rows++) {
-            pieces[rows + 1][19*i].setImage(maskPiece(filePaths[1 + (rows % 3)][4 * i], rows + 1, 19 * i));
-         }
-      }
-      // Center
-      for (int rows = 0; rows < pieces.length - 2; rows++) {
-         for (int cols = 0; cols < pieces[0].length - 2; cols++) {
-            pieces[rows + 1][cols + 1].setImage(maskPiece(filePaths[1 + (rows % 3)][1 + (cols % 3)], rows + 1, cols + 1));
-         }
-      }
-   }
-   
-  /**
-   * Applies a given grayscale mask to an image of the same dimensions.
-   * The original author of this method is Michael Myers on StackOverflow.
-   * @param maskFilePath The file path of the mask to apply to the image.
-   * @param row The row to be used in the output filepath.
-   * @param col The column to be used in the output filepath.
-   * @return The image with the grayscale mask applied.
-   * @throws java.io.IOException Throws an IOException if the mask or image to apply the mask to doesn't exist.
-   */ 
-   public BufferedImage maskPiece(String maskFilePath, int row, int col) throws IOException {
-      BufferedImage[] m_images = new BufferedImage[3];
-      m_images[0] = ImageIO.read(new File(System.getProperty("user.dir") + "/Resources/piece" + row + "-" + col + ".png"));
-      m_images[1] = ImageIO.read(new File(maskFilePath));
-      Image transpImg = transformGrayToTransparency(m_images[1]);
-      m_images[2] = applyTransparency(m_images[0], transpImg);
-      
-      File outputImage = new File(System.getProperty("user.dir") + "/Resources/Masked/piece" + row + "-" + col + ".png");
-      ImageIO.write(m_images[2], "png", outputImage);
-      return m_images[2];
-   }
-   
-  /**
-   * Takes the grayscale mask and converts black (or gray) pixels in it into appropriate alpha values.
-   * These values will then be applied to the image to be masked (specified in {@link ImageSplitter#maskPiece})
-   * later.
-   * The original author of this method is Michael Myers on StackOverflow.
-   * @param image The mask image to apply this alpha conversion to.
-   * @return The mask image with this conversion applied.
-   */
-   public BufferedImage transformGrayToTransparency(BufferedImage image) {
-      ImageFilter filter = new RGBImageFilter()
-      {
-          public final int filterRGB(int x, int y, int rgb)
-          {
-              return (rgb << 8) & 0xFF000000;
-          }
-      };
-   
-      ImageProducer ip = new FilteredImageSource(image.getSource(), filter);
-      Image maskedAlmostDone = Toolkit.getDefaultToolkit().createImage(ip);
-      
-      BufferedImage maskedStep1 = new BufferedImage(maskedAlmostDone.getWidth(null), maskedAlmostDone.getHeight(null), BufferedImage.TYPE_INT_ARGB);
-      Graphics2D g2D = maskedStep1.createGraphics();
-      g2D.drawImage(maskedAlmostDone, 0, 0, null);
-      g2D.dispose();
-      
-      return maskedStep1;
-   }
-   
-  /**
-   * Applies an alpha mask to a given image of the same dimensions.
-   * This works by drawing the alpha mask over the image. Thanks Graphics2D!
-   * The original author of this method is Michael Myers on StackOverflow.
-   * @param image The image to apply the mask to.
-   * @param mask The mask to be applied to the image.
-   * @return The image with the mask applied.
-   */
-   public BufferedImage applyTransparency(BufferedImage image, Image mask) {
-      BufferedImage maskedFINAL = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-      Graphics2D g2D = maskedFINAL.createGraphics();
-      g2D.drawImage(image, 0, 0, null);
-      AlphaComposite ac = AlphaComposite.getInstance(AlphaComposite.DST_IN, 1.0F);
-      g2D.setComposite(ac);
-      g2D.drawImage(mask, 0, 0, null);
-      g2D.dispose();
-      return maskedFINAL;
-   }
-
+import java.awt.*;
+import java.io.*;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.Image;
+import java.awt.image.*;
+import java.awt.event.*;
+import java.util.*;
+
+/**
+* This class is exclusively used for splitting an image into appropriately sized and masked puzzle pieces.
+* @author Noah Brown
+*/
+public class ImageSplitter {
+  /**
+   * The unmodified image to use for the puzzle.
+   */
+   private BufferedImage puzzleImage;
+  /**
+   * The number of rows the puzzle will have.
+   */
+   private int rows;
+  /**
+   * The number of columns the puzzle will have.
+   */
+   private int cols;
+  /**
+   * The shape of the puzzle: its rows and columns, the size of each piece, and how far tabs stick out.
+   */
+   private PuzzleGeometry geometry;
+  /**
+   * How many of {@link ImageSplitter#puzzleImage}'s pixels there are to each pixel of the puzzle's shape,
+   * for cutting pieces at a display's scale. 1 unless the splitter was made for a scaled display.
+   */
+   private double scale;
+  /**
+   * The width, in pixels, of {@link ImageSplitter#puzzleImage}.
+   */
+   private int imageWidth;
+  /**
+   * The height, in pixels, of {@link ImageSplitter#puzzleImage}.
+   */
+   private int imageHeight;
+  /**
+   * A 2D array of tesselating filepaths to be used for masking.
+   */ 
+   private String[][] filePaths;
+  /**
+   * The most bytes {@link ImageSplitter#maskCache} and {@link ImageSplitter#alphaMaskCache} may take up between
+   * them, set with {@code -Djigsaw.maskCacheMB}.
+   */
+   private static final long MASK_CACHE_BYTES = Long.getLong("jigsaw.maskCacheMB", 16) * 1024 * 1024;
+  /**
+   * Masks that have already been read, converted to transparency and resized, keyed by file path and size, least
+   * recently used first. Shared by every splitter since the mask files never change. Guarded by the class lock.
+   */
+   private static final LinkedHashMap<String, BufferedImage> maskCache = new LinkedHashMap<String, BufferedImage>(64, 0.75f, true);
+  /**
+   * Compact versions of the masks in {@link ImageSplitter#maskCache}, keyed by file path and size, least
+   * recently used first. Guarded by the class lock.
+   */
+   private static final LinkedHashMap<String, AlphaMask> alphaMaskCache = new LinkedHashMap<String, AlphaMask>(64, 0.75f, true);
+  /**
+   * How many bytes the masks in both caches take up.
+   */
+   private static long maskCacheBytes;
+   
+  /**
+   * Constructor method that reads a given image and, if necessary, converts it to an
+   * appropriately sized png file.
+   * @param image The image that the puzzle is going to use.
+   * @param numRows The number of rows the puzzle will have.
+   * @param numCols The number of columns the puzzle will have.
+   */
+   public ImageSplitter(File image, int numRows, int numCols) {
+      this(readImage(image), numRows, numCols);
+   }
+   
+  /**
+   * Constructor method for an image that has already been decoded. Resizes the image so that every
+   * piece gets a square of it the same size as the squares in the mask images.
+   * @param image The image that the puzzle is going to use.
+   * @param numRows The number of rows the puzzle will have.
+   * @param numCols The number of columns the puzzle will have.
+   */
+   public ImageSplitter(BufferedImage image, int numRows, int numCols) {
+      this(image, new PuzzleGeometry(numRows, numCols, PuzzleGeometry.MASK_CELL_SIZE));
+   }
+   
+  /**
+   * Constructor method that reads a given image and resizes it to fit the given puzzle shape.
+   * @param image The image that the puzzle is going to use.
+   * @param puzzleGeometry The shape of the puzzle.
+   */
+   public ImageSplitter(File image, PuzzleGeometry puzzleGeometry) {
+      this(readImage(image), puzzleGeometry, 1);
+   }
+   
+  /**
+   * Constructor method that reads a given image and resizes it to fit the given puzzle shape drawn at a
+   * display scale, so pieces cut from it can be drawn pixel for pixel on that display.
+   * @param image The image that the puzzle is going to use.
+   * @param puzzleGeometry The shape of the puzzle.
+   * @param displayScale How many device pixels there are to each pixel of the puzzle's shape.
+   */
+   public ImageSplitter(File image, PuzzleGeometry puzzleGeometry, double displayScale) {
+      this(readImage(image), puzzleGeometry, displayScale);
+   }
+   
+  /**
+   * Constructor method for an image that has already been decoded. Resizes the image so that every
+   * piece gets a square of it as big as the puzzle shape's cell size.
+   * @param image The image that the puzzle is going to use.
+   * @param puzzleGeometry The shape of the puzzle.
+   */
+   public ImageSplitter(BufferedImage image, PuzzleGeometry puzzleGeometry) {
+      this(image, puzzleGeometry, 1);
+   }
+   
+  /**
+   * Constructor method for an image that has already been decoded. Resizes the image to fit the given
+   * puzzle shape drawn at a display scale.
+   * @param image The image that the puzzle is going to use.
+   * @param puzzleGeometry The shape of the puzzle.
+   * @param displayScale How many device pixels there are to each pixel of the puzzle's shape.
+   */
+   public ImageSplitter(BufferedImage image, PuzzleGeometry puzzleGeometry, double displayScale) {
+      this.puzzleImage = image;
+      this.geometry = puzzleGeometry;
+      this.scale = displayScale;
+      this.rows = geometry.getRows();
+      this.cols = geometry.getCols();
+      this.imageWidth = puzzleImage.getWidth();
+      this.imageHeight = puzzleImage.getHeight();
+      this.filePaths = initializePathArray();
+      
+      try {
+         formatImage((int)Math.round(geometry.getPuzzleWidth() * scale), (int)Math.round(geometry.getPuzzleHeight() * scale), "png");
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+   
+  /**
+   * Reads an image file, printing the stack trace and returning null if it can't be read.
+   * @param image The image file to read.
+   * @return The decoded image.
+   */
+   private static BufferedImage readImage(File image) {
+      try {
+         return ImageIO.read(image);
+      } catch (IOException e) {
+         e.printStackTrace();
+         return null;
+      }
+   }
+   
+  /**
+   * Splits the image held in the {@link ImageSplitter#puzzleImage} field into one rectangular image per piece.
+   * Images are not adjusted for the masking process and this WILL cause IOExceptions if used in the
+   * final product without adjusting other code.
+   * Left in for debugging purposes.
+   */
+   public void splitImageRect() {
+      purgePieceImages(new File(System.getProperty("user.dir") + "/src/Resources/"));
+      int xpos = 0;
+      int ypos = 0;
+      
+      for (int i = 0; i < rows; i++) {
+         xpos = 0;
+         for (int j = 0; j < cols; j++) {
+            splitImage(xpos, ypos, i, j, 0, 0, 0, 0);
+            xpos += geometry.getCellSize();
+         }
+         ypos += geometry.getCellSize();
+      }
+   }
+   
+  /**
+   * Splits the image held in the {@link ImageSplitter#puzzleImage} field into one rectangular image per piece,
+   * each with appropriate buffer space for the eventual mask step.
+   * The file names of the generated subimages reflect what piece they will eventually be assigned to.
+   */
+   public void splitImageBuffer() {
+      purgePieceImages(new File(System.getProperty("user.dir") + "/Resources/"));
+      for (int i = 0; i < rows; i++) {
+         for (int j = 0; j < cols; j++) {
+            int[] space = getBufferSpace(i, j);
+            Rectangle cell = getCellBounds(i, j);
+            splitImage(cell.x, cell.y, i, j, space[0], space[1], space[2], space[3]);
+         }
+      }
+   }
+   
+  /**
+   * Cuts the piece at the given row and column out of the puzzle image, with the same buffer space as
+   * {@link ImageSplitter#splitImageBuffer}, without writing anything to disk.
+   * The returned image shares its pixels with {@link ImageSplitter#puzzleImage}.
+   * @param row The row of the piece.
+   * @param col The column of the piece.
+   * @return The unmasked piece image.
+   */
+   public BufferedImage cutPiece(int row, int col) {
+      Rectangle cutout = getPieceBounds(row, col);
+      return puzzleImage.getSubimage(cutout.x, cutout.y, cutout.width, cutout.height);
+   }
+   
+  /**
+   * Returns the area of {@link ImageSplitter#puzzleImage} that the piece at the given row and column is cut
+   * from, including its buffer space. See {@link PuzzleGeometry#getPieceBounds}. For a scaled splitter the
+   * edges are scaled and rounded one at a time, so neighbouring cutouts still line up.
+   * @param row The row of the piece.
+   * @param col The column of the piece.
+   * @return The cutout area, in puzzle image pixels.
+   */
+   public Rectangle getPieceBounds(int row, int col) {
+      Rectangle bounds = geometry.getPieceBounds(row, col);
+      if (scale == 1) {
+         return bounds;
+      }
+      int left = (int)Math.round(bounds.x * scale);
+      int top = (int)Math.round(bounds.y * scale);
+      int right = (int)Math.round((bounds.x + bounds.width) * scale);
+      int bottom = (int)Math.round((bounds.y + bounds.height) * scale);
+      return new Rectangle(left, top, right - left, bottom - top);
+   }
+   
+  /**
+   * Returns the square of {@link ImageSplitter#puzzleImage} that the piece at the given row and column covers
+   * once the puzzle is finished, without any buffer space. See {@link PuzzleGeometry#getCellBounds}.
+   * @param row The row of the piece.
+   * @param col The column of the piece.
+   * @return The piece's square, in the puzzle shape's pixels, which are only puzzle image pixels if the
+   * splitter isn't scaled.
+   */
+   public Rectangle getCellBounds(int row, int col) {
+      return geometry.getCellBounds(row, col);
+   }
+   
+  /**
+   * Returns how much buffer space the piece at the given row and column needs on each side for its tabs.
+   * See {@link PuzzleGeometry#getBufferSpace}.
+   * @param row The row of the piece.
+   * @param col The column of the piece.
+   * @return The buffer space going clockwise from the top: up, right, down, left.
+   */
+   public int[] getBufferSpace(int row, int col) {
+      return geometry.getBufferSpace(row, col);
+   }
+   
+  /**
+   * Takes a subimage of the main puzzle image and adds buffer space to prepare it for masking.
+   * Very prone to IOExceptions. Good luck!
+   * @param xpos The base x position to take the subimage from.
+   * @param ypos The base y position to take the subimage from.
+   * @param row The row to be used in the output filename.
+   * @param col The column to be used in the output filename.
+   * @param upSpace The amount (in pixels, which is true for all params of this type) of buffer space to be generated upwards of
+   * the ypos parameter.
+   * @param rightSpace The amount of buffer space to be generated rightwards of the piece's width plus the xpos parameter.
+   * @param downSpace The amount of buffer space to be generated downwards of the piece's height plus the ypos parameter.
+   * @param leftSpace The amount of buffer space to be generated leftwards of the xpos parameter.
+   */
+   public void splitImage(int xpos, int ypos, int row, int col, int upSpace, int rightSpace, int downSpace, int leftSpace) {
+      try {
+         int cellSize = geometry.getCellSize();
+         BufferedImage pieceImage = puzzleImage.getSubimage(xpos - leftSpace, ypos - upSpace, cellSize + leftSpace + rightSpace, cellSize + upSpace + downSpace);
+         File outputImage = new File(System.getProperty("user.dir") + "/Resources/piece" + row + "-" + col + ".png");
+         ImageIO.write(pieceImage, "png", outputImage);
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+   
+  /**
+   * Resizes a given image to the given dimensions.
+   * This is necessary because my puzzle algorithm is bad and restrictive.
+   * @param newWidth The width, in pixels, to resize the image to.
+   * @param newHeight The height, in pixels, to resize the image to.
+   * @param filetype The file type to convert the image to. Currently unused, may be implemented later.
+   * @throws java.io.IOException Throws an IOException if the image doesn't exist.
+   */
+   public void formatImage(int newWidth, int newHeight, String filetype) throws IOException {
+      if (imageWidth != newWidth || imageHeight != newHeight) {
+         BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
+         Graphics2D g2D = resizedImage.createGraphics();
+         g2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+         g2D.drawImage(puzzleImage, 0, 0, newWidth, newHeight, null);
+         g2D.dispose();
+         puzzleImage = resizedImage;
+         imageWidth = newWidth;
+         imageHeight = newHeight;
+      }
+   }
+   
+  /**
+   * Removes all files in a given directory.
+   * Used to purge the Resources folder of generated piece images, in case the image being used for the
+   * puzzle changes between runs. Thank you StackOverflow for this code.
+   * @param dir The directory to purge.
+   */
+   public void purgePieceImages(File dir) {
+      for (File file: dir.listFiles()) {
+         if (!file.isDirectory()) {
+            file.delete();
+         }
+      }
+   }
+   
+  /**
+   * Initializes and fills out {@link ImageSplitter#filePaths}. 
+   * The edges and center form a 3x1 or 3x3 tesselation (respectively) that can be used for masking. 
+   * @return The value of {@link ImageSplitter#puzzleImage}.
+   */ 
+   public String[][] initializePathArray() {
+      String dir = System.getProperty("user.dir") + "/Resources/Masks/";
+      String[][] paths = new String[5][5];
+      paths[0][0] = "Corners/corner0-0.png";
+      paths[0][4] = "Corners/corner0-1.png";
+      paths[4][0] = "Corners/corner1-0.png";
+      paths[4][4] = "Corners/corner1-1.png";
+      
+      for (int i = 1; i < 4; i++) {
+         paths[i][0] = "Edges/Vert/edge" + (i - 1) + "-0.png";
+         paths[i][4] = "Edges/Vert/edge" + (i - 1) + "-1.png";
+         paths[0][i] = "Edges/Horz/edge0-" + (i - 1) + ".png";
+         paths[4][i] = "Edges/Horz/edge1-" + (i - 1) + ".png";
+      }
+      
+      for (int i = 1; i < paths.length - 1; i++) {
+         for (int j = 1; j < paths[0].length - 1; j++)
+            paths[i][j] = "Center/center" + (i - 1) + "-" + (j - 1) + ".png";
+      }
+      
+      for (int i = 0; i < paths.length; i++) {
+         for (int j = 0; j < paths[0].length; j++) {
+            paths[i][j] = dir + paths[i][j];
+         }
+      }
+      
+      return paths;
+   }
+   
+  /**
+   * Determines what mask to apply to every puzzle piece, and calls the appropriate methods
+   * to apply that mask. 
+   * Which mask is "appropriate" is determined by {@link ImageSplitter#getMaskPath} from the piece's position in
+   * the global array. Once the correct file path has been determined, this calls {@link ImageSplitter#maskPiece}
+   * to do the actual masking.
+   * @param pieces The global piece array, indexed by {@link PuzzleGeometry#index}.
+   * @throws java.io.IOException Throws an IOException if the mask or image to apply the mask to doesn't exist.
+   */ 
+   public void massMaskPieces(Piece[] pieces) throws IOException {
+      purgePieceImages(new File(System.getProperty("user.dir") + "/Resources/Masked/"));
+      for (int i = 0; i < pieces.length; i++) {
+         int row = geometry.row(i);
+         int col = geometry.col(i);
+         pieces[i].setImage(maskPiece(getMaskPath(row, col), row, col));
+      }
+   }
+   
+  /**
+   * Returns the file path of the mask for the piece at the given row and column.
+   * Corners use the corners of {@link ImageSplitter#filePaths}, border pieces use the matching edge entry and
+   * center pieces use the 3x3 center. The row and column (minus 1 for the corner) are taken modulo 3 so the
+   * tesselation loops properly.
+   * @param row The row of the piece in the global array.
+   * @param col The column of the piece in the global array.
+   * @return The file path of the mask to apply to that piece.
+   */
+   public String getMaskPath(int row, int col) {
+      return filePaths[tesselationIndex(row, rows)][tesselationIndex(col, cols)];
+   }
+   
+  /**
+   * Maps a row or column of the puzzle onto a row or column of {@link ImageSplitter#filePaths}.
+   * @param position The row or column of the piece.
+   * @param length The number of rows or columns in the puzzle.
+   * @return 0 for the first row/column, 4 for the last, and 1 to 3 for everything in between.
+   */
+   private int tesselationIndex(int position, int length) {
+      if (position == 0) {
+         return 0;
+      } else if (position == length - 1) {
+         return 4;
+      }
+      return 1 + ((position - 1) % 3);
+   }
+   
+  /**
+   * Applies a given grayscale mask to an image of the same dimensions.
+   * The original author of this method is Michael Myers on StackOverflow.
+   * @param maskFilePath The file path of the mask to apply to the image.
+   * @param row The row to be used in the output filepath.
+   * @param col The column to be used in the output filepath.
+   * @return The image with the grayscale mask applied.
+   * @throws java.io.IOException Throws an IOException if the mask or image to apply the mask to doesn't exist.
+   */ 
+   public BufferedImage maskPiece(String maskFilePath, int row, int col) throws IOException {
+      BufferedImage pieceImage = ImageIO.read(new File(System.getProperty("user.dir") + "/Resources/piece" + row + "-" + col + ".png"));
+      BufferedImage masked = maskImage(pieceImage, maskFilePath);
+      
+      File outputImage = new File(System.getProperty("user.dir") + "/Resources/Masked/piece" + row + "-" + col + ".png");
+      ImageIO.write(masked, "png", outputImage);
+      return masked;
+   }
+   
+  /**
+   * Applies the mask at the given file path to an image that is already in memory.
+   * Nothing is read from or written to the Resources folder except the mask itself, and each mask is only
+   * read once, so this is safe to call from several threads at a time.
+   * @param pieceImage The unmasked piece image, as returned by {@link ImageSplitter#cutPiece}.
+   * @param maskFilePath The file path of the mask to apply to the image.
+   * @return The image with the grayscale mask applied.
+   * @throws java.io.IOException Throws an IOException if the mask doesn't exist.
+   */
+   public BufferedImage maskImage(BufferedImage pieceImage, String maskFilePath) throws IOException {
+      return applyTransparency(pieceImage, loadMask(maskFilePath, pieceImage.getWidth(), pieceImage.getHeight()));
+   }
+   
+  /**
+   * Returns the mask at the given file path, already converted to transparency and resized to the given size.
+   * Masks are read from disk the first time they are asked for at a size and shared for as long as they stay
+   * in the cache.
+   * @param maskFilePath The file path of the mask.
+   * @param width The width to resize the mask to.
+   * @param height The height to resize the mask to.
+   * @return The mask, with its gray values turned into alpha values.
+   * @throws java.io.IOException Throws an IOException if the mask doesn't exist.
+   */
+   public BufferedImage loadMask(String maskFilePath, int width, int height) throws IOException {
+      String key = maskFilePath + "@" + width + "x" + height;
+      BufferedImage mask;
+      synchronized (ImageSplitter.class) {
+         mask = maskCache.get(key);
+      }
+      if (mask == null) {
+         BufferedImage grayMask = ImageIO.read(new File(maskFilePath));
+         if (grayMask == null) {
+            throw new IOException("Couldn't read mask " + maskFilePath);
+         }
+         mask = transformGrayToTransparency(grayMask);
+         if (mask.getWidth() != width || mask.getHeight() != height) {
+            BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2D = resized.createGraphics();
+            g2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2D.drawImage(mask, 0, 0, width, height, null);
+            g2D.dispose();
+            mask = resized;
+         }
+         mask = cacheMask(key, mask);
+      }
+      return mask;
+   }
+   
+  /**
+   * Returns the mask at the given file path as a compact {@link AlphaMask} of the given size. Like
+   * {@link ImageSplitter#loadMask}, each mask is built once per size and then shared by every piece that uses it
+   * for as long as it stays in the cache.
+   * @param maskFilePath The file path of the mask.
+   * @param width The width of the mask.
+   * @param height The height of the mask.
+   * @return The shared alpha mask.
+   * @throws java.io.IOException Throws an IOException if the mask doesn't exist.
+   */
+   public AlphaMask loadAlphaMask(String maskFilePath, int width, int height) throws IOException {
+      String key = maskFilePath + "@" + width + "x" + height;
+      AlphaMask mask;
+      synchronized (ImageSplitter.class) {
+         mask = alphaMaskCache.get(key);
+      }
+      if (mask == null) {
+         mask = cacheAlphaMask(key, new AlphaMask(loadMask(maskFilePath, width, height)));
+      }
+      return mask;
+   }
+   
+  /**
+   * Adds a mask to {@link ImageSplitter#maskCache}, unless another thread got there first.
+   * @param key The mask's file path and size.
+   * @param mask The mask just made.
+   * @return The mask to use, which is the one already cached if there was one.
+   */
+   private static synchronized BufferedImage cacheMask(String key, BufferedImage mask) {
+      BufferedImage existing = maskCache.get(key);
+      if (existing != null) {
+         return existing;
+      }
+      maskCache.put(key, mask);
+      maskCacheBytes += SpriteCache.spriteBytes(mask);
+      evictMasks();
+      return mask;
+   }
+   
+  /**
+   * Adds a compact mask to {@link ImageSplitter#alphaMaskCache}, unless another thread got there first.
+   * @param key The mask's file path and size.
+   * @param mask The compact mask just made.
+   * @return The compact mask to use, which is the one already cached if there was one.
+   */
+   private static synchronized AlphaMask cacheAlphaMask(String key, AlphaMask mask) {
+      AlphaMask existing = alphaMaskCache.get(key);
+      if (existing != null) {
+         return existing;
+      }
+      alphaMaskCache.put(key, mask);
+      maskCacheBytes += mask.getByteSize();
+      evictMasks();
+      return mask;
+   }
+   
+  /**
+   * Drops the least recently used masks until both caches fit in {@link ImageSplitter#MASK_CACHE_BYTES}.
+   * Full-size masks go first, since they are only needed while compact masks are built, and the newest entry of
+   * each cache is always kept so the mask being asked for isn't dropped straight away. Pieces keep the masks they
+   * were given, so dropping one only means it is built again the next time a puzzle of that size needs it.
+   */
+   private static void evictMasks() {
+      Iterator<BufferedImage> masks = maskCache.values().iterator();
+      while (maskCacheBytes > MASK_CACHE_BYTES && maskCache.size() > 1) {
+         maskCacheBytes -= SpriteCache.spriteBytes(masks.next());
+         masks.remove();
+      }
+      Iterator<AlphaMask> alphaMasks = alphaMaskCache.values().iterator();
+      while (maskCacheBytes > MASK_CACHE_BYTES && alphaMaskCache.size() > 1) {
+         maskCacheBytes -= alphaMasks.next().getByteSize();
+         alphaMasks.remove();
+      }
+   }
+   
+  /**
+   * Returns how many bytes the cached masks take up, shared by every splitter in the process.
+   * @return {@link ImageSplitter#maskCacheBytes}
+   */
+   public static synchronized long getMaskCacheBytes() {
+      return maskCacheBytes;
+   }
+   
+  /**
+   * Returns the compact mask for the piece at the given row and column, sized to fit its cutout.
+   * @param row The row of the piece.
+   * @param col The column of the piece.
+   * @return The shared alpha mask for the piece.
+   * @throws java.io.IOException Throws an IOException if the mask doesn't exist.
+   */
+   public AlphaMask getPieceMask(int row, int col) throws IOException {
+      Rectangle cutout = getPieceBounds(row, col);
+      return loadAlphaMask(getMaskPath(row, col), cutout.width, cutout.height);
+   }
+   
+  /**
+   * Returns the resized puzzle image that every piece is cut from.
+   * @return {@link ImageSplitter#puzzleImage}
+   */
+   public BufferedImage getPuzzleImage() {
+      return puzzleImage;
+   }
+   
+  /**
+   * Returns the number of rows the puzzle will have.
+   * @return {@link ImageSplitter#rows}
+   */
+   public int getRows() {
+      return rows;
+   }
+   
+  /**
+   * Returns the number of columns the puzzle will have.
+   * @return {@link ImageSplitter#cols}
+   */
+   public int getCols() {
+      return cols;
+   }
+   
+  /**
+   * Returns the shape of the puzzle.
+   * @return {@link ImageSplitter#geometry}
+   */
+   public PuzzleGeometry getGeometry() {
+      return geometry;
+   }
+   
+  /**
+   * Returns how many of the puzzle image's pixels there are to each pixel of the puzzle's shape.
+   * @return {@link ImageSplitter#scale}
+   */
+   public double getScale() {
+      return scale;
+   }
+   
+  /**
+   * Takes the grayscale mask and converts black (or gray) pixels in it into appropriate alpha values.
+   * These values will then be applied to the image to be masked (specified in {@link ImageSplitter#maskPiece})
+   * later.
+   * The original author of this method is Michael Myers on StackOverflow.
+   * @param image The mask image to apply this alpha conversion to.
+   * @return The mask image with this conversion applied.
+   */
+   public BufferedImage transformGrayToTransparency(BufferedImage image) {
+      ImageFilter filter = new RGBImageFilter()
+      {
+          public final int filterRGB(int x, int y, int rgb)
+          {
+              return (rgb << 8) & 0xFF000000;
+          }
+      };
+   
+      ImageProducer ip = new FilteredImageSource(image.getSource(), filter);
+      Image maskedAlmostDone = Toolkit.getDefaultToolkit().createImage(ip);
+      
+      BufferedImage maskedStep1 = new BufferedImage(maskedAlmostDone.getWidth(null), maskedAlmostDone.getHeight(null), BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2D = maskedStep1.createGraphics();
+      g2D.drawImage(maskedAlmostDone, 0, 0, null);
+      g2D.dispose();
+      
+      return maskedStep1;
+   }
+   
+  /**
+   * Applies an alpha mask to a given image of the same dimensions.
+   * This works by drawing the alpha mask over the image. Thanks Graphics2D!
+   * The original author of this method is Michael Myers on StackOverflow.
+   * @param image The image to apply the mask to.
+   * @param mask The mask to be applied to the image.
+   * @return The image with the mask applied.
+   */
+   public BufferedImage applyTransparency(BufferedImage image, Image mask) {
+      BufferedImage maskedFINAL = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2D = maskedFINAL.createGraphics();
+      g2D.drawImage(image, 0, 0, null);
+      AlphaComposite ac = AlphaComposite.getInstance(AlphaComposite.DST_IN, 1.0F);
+      g2D.setComposite(ac);
+      g2D.drawImage(mask, 0, 0, null);
+      g2D.dispose();
+      return maskedFINAL;
+   }
+
 }
\ No newline at end of file
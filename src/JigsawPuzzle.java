@@ -1,258 +1,1125 @@
-import java.awt.*;
-import java.awt.event.*;
-import javax.swing.*;
-import javax.swing.border.*;
-import java.util.*;
-import java.io.*;
-import java.awt.Image;
-import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
-import java.awt.image.*;
-
-/**
-* This class manages the puzzle board and the generation of all the puzzle pieces.
-* It also checks for completion of the puzzle every time a piece is fused to another.
-* @author Noah Brown
-*/
-public class JigsawPuzzle extends JPanel {
-  /**
-   * The global piece array.
-   */
-   private Piece[][] pieces;
-  /**
-   * The current row the piece generator is on.
-   */
-   private int genRow;
-  /**
-   * The current column the piece generator is on.
-   */
-   private int genCol;
-
-  /**
-   * Constructs the puzzle itself. Adds all the pieces to the board and generally manages everything.
-   * @param frame the JFrame object initialized in the client class
-   * @param pieceCount how many pieces the puzzle should have. Currently set at 220.
-   */
-   public JigsawPuzzle(JFrame frame, int pieceCount) {
-      GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-      Rectangle bounds = environment.getMaximumWindowBounds(); 
-      frame.getContentPane().setSize((int)bounds.getWidth(), (int)bounds.getHeight());
-      frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
-      genRow = 0;
-      genCol = 0;
-      
-      pieces = new Piece[11][20];
-      File puzzleImage = new File(System.getProperty("user.dir") + "/Resources/puzzleImages/TheWhitePeople.png");
-      ImageSplitter imageSplitter = new ImageSplitter(puzzleImage, 11, 20);
-      imageSplitter.purgePieceImages(new File(System.getProperty("user.dir") + "/Resources/"));
-      imageSplitter.splitImageBuffer();
-      generatePieces(frame, pieceCount);
-      setPieceImages();
-     
-      try {
-         imageSplitter.massMaskPieces(pieces);
-      } catch (IOException e) {
-         e.printStackTrace();
-      }
-      
-      scatterPieces(pieceCount);
-      
-   }
-   
-  /**
-   * Calls each method to generate puzzle pieces around the edge of the board.
-   * @param frame the JFrame object initialized in the client class
-   * @param pieceCount how many pieces the puzzle should have. Currently set at 220.
-   */
-   public void generatePieces(JFrame frame, int pieceCount) {
-      int frameWidth = frame.getContentPane().getWidth();
-      int frameHeight = frame.getContentPane().getHeight();
-      int id = generateHorizontal(frame, frameWidth, frameHeight, true, 0);
-      id = generateHorizontal(frame, frameWidth, frameHeight, false, id);
-      id = generateVertical(frame, frameWidth, frameHeight, true, id);
-      id = generateVertical(frame, frameWidth, frameHeight, false, id);
-      
-      for (int i = 0; i < pieces.length; i++) {
-         for (int j = 0; j < pieces[0].length; j++) {
-            getAdjacentPieces(pieces[i][j]);
-         }
-      }
-   }
-   
-  /**
-   * Once every piece has had its image generated, pass every piece in the global array
-   * the image in the image folder that matches its row and column in the global array.
-   */
-   public void setPieceImages() {
-      for (int i = 0; i < pieces.length; i++) {
-         for (int j = 0; j < pieces[0].length; j++) {
-            BufferedImage pieceImage = null;
-            try {
-               File pieceImageFile = new File(System.getProperty("user.dir") + "/Resources/piece" + i + "-" + j + ".png");
-               pieceImage = ImageIO.read(pieceImageFile);
-            } catch (IOException e) {
-               e.printStackTrace();
-            }
-            pieces[i][j].setImage(pieceImage);
-         }
-      }      
-   }
-   
-  /**
-   * Generates pieces along the top and bottom of the screen.
-   * @param frame the window itself
-   * @param frameWidth the width of the application window
-   * @param frameHeight the height of the application window
-   * @param top whether to generate pieces at the top or bottom of the application window
-   * @param pieceID the number of pieces that have been generated at the time of the method call
-   * @return the number of pieces that have been generated at the time the method call finishes running.
-   * This is used as the starting ID for the next time a piece generation method is called.
-   */
-   public int generateHorizontal(JFrame frame, int frameWidth, int frameHeight, boolean top, int pieceID) {
-      int ypos = 0;
-      
-      for (int rows = 0; rows < 3; rows++) {
-         if (top) {
-            ypos = (rows*35 + (15*(rows + 1)));
-         } else {
-            ypos = frameHeight - 20 - ((rows+1)*50);
-         }
-         
-         int col = 0; 
-         while ((col*35 + 10*col) < frameWidth - 40) {
-            Piece puzzlePiece = new Piece(this, (col*35 + ((col+1)*10)), ypos, 35, 35, pieceID);
-            frame.add(puzzlePiece);
-            setArrayLocation(puzzlePiece);
-            col++;
-            pieceID++;
-         }
-      }
-      return pieceID;
-   }
-   
-  /**
-   * Generates pieces along the left and right of the screen, filling the gaps created by generateHorizontal.
-   * @param frame the window itself
-   * @param frameWidth the width of the application window
-   * @param frameHeight the height of the application window
-   * @param left whether to generate pieces at the left or right of the application window
-   * @param pieceID the number of pieces that have been generated at the time of the method call
-   * @return the number of pieces that have been generated at the time the method call finishes running.
-   * This is used as the starting ID for the next time a piece generation method is called.
-   */
-   public int generateVertical(JFrame frame, int frameWidth, int frameHeight, boolean left, int pieceID) {
-      int ypos = 160;
-      int iterations = 0;
-      int startingX = 0;
-      int rightOffset = 0;
-      
-      if (!left) {
-         startingX = 27;
-         rightOffset = 1;
-      }
-      
-      while (ypos < frameHeight - 170) {
-         for (int i = startingX; i < startingX + 2 + rightOffset; i++) {
-            Piece puzzlePiece = new Piece(this, (i*35 + ((i+1)*10)), ypos, 35, 35, pieceID);
-            frame.add(puzzlePiece);
-            setArrayLocation(puzzlePiece);
-            pieceID++;
-         }
-         ypos += 50;
-         iterations++;
-      }
-      
-      return pieceID;
-   }
-   
-  /**
-   * Adds a piece to the general pieces array at the appropriate location. 
-   * This array is used for pieces to check adjacency.
-   * @param piece the piece being added to the array
-   */
-   public void setArrayLocation(Piece piece) {
-      if (this.genCol > 19) {
-         genRow++;
-         genCol = 0;
-      }
-      
-      pieces[genRow][genCol] = piece;
-      piece.setArrayPosition(genRow, genCol);
-      genCol++;
-   }
-   
-  /**
-   * Assigns every piece in the global array its adjacent pieces. 
-   * Not every piece is adjacent to 4 others - in these cases, the slot in the adjacent pieces array is 
-   * left as null. Positions in the generated adjacent pieces array go clockwise. This means that 
-   * index 0 = the adjacent piece above, index 1 = the adjacent piece to the right, and so forth.
-   * @param currentPiece the piece to generate this array of adjacent pieces for
-   */ 
-   public void getAdjacentPieces(Piece currentPiece) {
-      Piece[] adjacencies = new Piece[4]; 
-      if (currentPiece.getFinalRow() == 0) {
-         adjacencies[0] = null;
-      } else {
-         adjacencies[0] = pieces[currentPiece.getFinalRow() - 1][currentPiece.getFinalCol()];
-      }
-      
-      if (currentPiece.getFinalCol() == pieces[0].length - 1) {
-         adjacencies[1] = null;
-      } else {
-         adjacencies[1] = pieces[currentPiece.getFinalRow()][currentPiece.getFinalCol() + 1];
-      }
-      
-      if (currentPiece.getFinalRow() == pieces.length - 1) {
-         adjacencies[2] = null;
-      } else {
-         adjacencies[2] = pieces[currentPiece.getFinalRow() + 1][currentPiece.getFinalCol()];
-      }
-      
-      if (currentPiece.getFinalCol() == 0) {
-         adjacencies[3] = null;
-      } else {
-         adjacencies[3] = pieces[currentPiece.getFinalRow()][currentPiece.getFinalCol() - 1];
-      }
-      
-      currentPiece.setAdjacencies(adjacencies);
-   }
-   
-  /**
-   * Randomizes the positions of the piece around the board, so that the nice grid layout doesn't change but adjacent
-   * pieces no longer are created right next to each other. 
-   * The first loop adds the position of every piece to the list, the second loop swaps all of them around.
-   * @param pieceCount the amount of pieces in the puzzle
-   */
-   public void scatterPieces(int pieceCount) {
-      Random rand = new Random();
-      ArrayList<Integer> xPositions = new ArrayList<Integer>();
-      ArrayList<Integer> yPositions = new ArrayList<Integer>();
-      
-      for (int i = 0; i < pieces.length; i++) {
-         for (int j = 0; j < pieces[0].length; j++) {
-            xPositions.add(pieces[i][j].getPieceX());
-            yPositions.add(pieces[i][j].getPieceY());   
-         }
-      }
-      
-      for (int i = 0; i < pieces.length; i++) {
-         for (int j = 0; j < pieces[0].length; j++) {
-            Piece currentPiece = pieces[i][j];
-            int swapIndex = rand.nextInt(xPositions.size());
-            int newXPos = xPositions.get(swapIndex);
-            int newYPos = yPositions.get(swapIndex);
-            currentPiece.setPieceLocation(newXPos, newYPos);
-            xPositions.remove(swapIndex);
-            yPositions.remove(swapIndex);
-         }
-      }
-   }
-   
-  /**
-   * Returns the global piece array.
-   * @return {@link JigsawPuzzle#pieces}
-   */
-   public Piece[][] getPieceArray() {
-      return pieces;
-   }
-}
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+import javax.swing.border.*;
+import java.util.*;
+import java.io.*;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+import java.awt.image.*;
+import java.awt.geom.AffineTransform;
+
+/**
+* This class manages the puzzle board and the generation of all the puzzle pieces.
+* It also checks for completion of the puzzle every time a piece is fused to another.
+* @author Noah Brown
+*/
+public class JigsawPuzzle extends JPanel implements CommandLog.Target {
+  /**
+   * The puzzle shown when the board is first opened.
+   */
+   public static final String DEFAULT_IMAGE = "TheWhitePeople.png";
+  /**
+   * How much of their colour histograms pieces have to share with the selected piece to be shown by
+   * {@link JigsawPuzzle#showSimilarColours}.
+   */
+   private static final float SIMILAR_OVERLAP = 0.5f;
+  /**
+   * The most pieces {@link JigsawPuzzle#showSimilarColours} and {@link JigsawPuzzle#showMatchingColours}
+   * outline at once.
+   */
+   private static final int SIMILAR_LIMIT = 24;
+  /**
+   * How much of a piece has to be close to the selected piece's dominant colour to be shown by
+   * {@link JigsawPuzzle#showMatchingColours}.
+   */
+   private static final float MATCHING_SHARE = 0.4f;
+
+  /**
+   * The global piece array, indexed by each piece's unique ID, which is also its {@link PuzzleGeometry#index}.
+   */
+   private Piece[] pieces;
+  /**
+   * The shape of the puzzle: its rows and columns, piece size, and which pieces are next to which.
+   */
+   private PuzzleGeometry geometry;
+
+  /**
+   * The image the puzzle is cut from.
+   */
+   private File puzzleImage;
+  /**
+   * The puzzles that can be played, and the piece sets already generated for them.
+   */
+   private PuzzleLibrary library;
+  /**
+   * Roughly how many pieces every puzzle should have.
+   */
+   private int requestedPieceCount;
+  /**
+   * The loader generating the current puzzle's pieces, or null if they were dealt from the library.
+   */
+   private PieceLoader loader;
+  /**
+   * Shows how many pieces have been generated while {@link PieceLoader} is still running.
+   */
+   private JProgressBar loadingBar;
+  /**
+   * How the pieces are generated and drawn.
+   */
+   private PuzzleOptions options;
+  /**
+   * Builds and holds the sprites of compact pieces while they are being painted.
+   */
+   private SpriteCache spriteCache;
+  /**
+   * The shadow and outline sprites drawn under the pieces, or null if effects are off.
+   */
+   private EffectSprites effects;
+  /**
+   * The piece set cut at the scale of the screen the board was last painted on, or null if the screen isn't
+   * scaled or the set isn't ready yet.
+   */
+   private PieceSet scaledPieces;
+  /**
+   * The piece set the board's pieces were dealt from, held in the {@link PuzzleLibrary} until the board moves
+   * on, or null until the pieces have been generated.
+   */
+   private PieceSet dealtPieces;
+  /**
+   * The display scale a piece set is being cut at in the background, or 0 if none is.
+   */
+   private double scalingTo;
+  /**
+   * Which pieces are fused together.
+   */
+   private PieceClusters clusters;
+  /**
+   * The moves and fuses that can be undone and redone.
+   */
+   private CommandLog history;
+  /**
+   * Spreads overlapping pieces out when the table is tidied.
+   */
+   private TableArranger arranger;
+  /**
+   * The overview of the board in its top-right corner, or null if the options turn it off.
+   */
+   private Minimap minimap;
+  /**
+   * Which pieces lie over which parts of the board, so painting only looks at the pieces being painted.
+   */
+   private PieceGrid pieceGrid;
+  /**
+   * Every piece's open sides, used to find what a dragged cluster would snap to.
+   */
+   private SnapIndex snapIndex;
+  /**
+   * The piece outlined because the dragged cluster would snap to it if dropped, or null.
+   */
+   private Piece snapPreview;
+  /**
+   * Describes every piece edge so hints can be found quickly. Null until the pieces have been generated.
+   */
+   private EdgeIndex edgeIndex;
+  /**
+   * Every piece's colours and border sides, for filtering pieces. Null until the pieces have been generated.
+   */
+   private ColourIndex colourIndex;
+  /**
+   * The piece most recently clicked, which hints are given for.
+   */
+   private Piece selectedPiece;
+  /**
+   * The pieces currently outlined by a hint.
+   */
+   private ArrayList<Piece> hintedPieces;
+  /**
+   * Where piece positions and orientations come from. Seeded from {@link PuzzleOptions#getRandomSeed}
+   * if one was given, so a layout can be played again.
+   */
+   private Random random;
+
+  /**
+   * Constructs the puzzle itself. Lays out and scatters every piece, but leaves them hidden until
+   * {@link JigsawPuzzle#startLoading} has generated their images. This keeps the constructor cheap enough
+   * that the window can be shown straight away.
+   * @param frame the JFrame object initialized in the client class
+   * @param pieceCount roughly how many pieces the puzzle should have. The actual count is worked out by
+   * {@link PuzzleGeometry#forPieceCount} from the image's aspect ratio.
+   */
+   public JigsawPuzzle(JFrame frame, int pieceCount) {
+      this(frame, pieceCount, PuzzleOptions.fromSystemProperties());
+   }
+   
+  /**
+   * Constructs the puzzle with the given options. See {@link JigsawPuzzle#JigsawPuzzle(JFrame, int)}.
+   * @param frame the JFrame object initialized in the client class
+   * @param pieceCount roughly how many pieces the puzzle should have
+   * @param puzzleOptions how the pieces should be generated and drawn
+   */
+   public JigsawPuzzle(JFrame frame, int pieceCount, PuzzleOptions puzzleOptions) {
+      this(GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds().getSize(), pieceCount, puzzleOptions);
+      frame.getContentPane().setSize(getWidth(), getHeight());
+      frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+   }
+   
+  /**
+   * Constructs a puzzle board of the given size without a window, e.g. for {@link SoakTest}. Works in
+   * headless mode. See {@link JigsawPuzzle#JigsawPuzzle(JFrame, int)}.
+   * @param boardSize the width and height of the board
+   * @param pieceCount roughly how many pieces the puzzle should have
+   * @param puzzleOptions how the pieces should be generated and drawn
+   */
+   public JigsawPuzzle(Dimension boardSize, int pieceCount, PuzzleOptions puzzleOptions) {
+      this(boardSize, pieceCount, puzzleOptions, null, null);
+   }
+   
+  /**
+   * Constructs a puzzle board of the given size that deals its pieces from a library shared with other boards,
+   * e.g. by a {@link BoardHost}. See {@link JigsawPuzzle#JigsawPuzzle(JFrame, int)}.
+   * @param boardSize the width and height of the board
+   * @param pieceCount roughly how many pieces the puzzle should have
+   * @param puzzleOptions how the pieces should be generated and drawn
+   * @param sharedLibrary the library to deal pieces from, or null for one of the board's own
+   * @param image the image to play first, or null for {@link JigsawPuzzle#DEFAULT_IMAGE}
+   */
+   public JigsawPuzzle(Dimension boardSize, int pieceCount, PuzzleOptions puzzleOptions, PuzzleLibrary sharedLibrary, File image) {
+      this.options = puzzleOptions;
+      this.random = options.getRandomSeed() < 0 ? new Random() : new Random(options.getRandomSeed());
+      setLayout(null);
+      setBounds(0, 0, boardSize.width, boardSize.height);
+      
+      this.requestedPieceCount = pieceCount;
+      File imageFolder = new File(System.getProperty("user.dir") + "/Resources/puzzleImages");
+      library = sharedLibrary != null ? sharedLibrary : new PuzzleLibrary(imageFolder, options.getLibraryCacheBytes());
+      puzzleImage = image != null ? image : library.findImage(DEFAULT_IMAGE);
+      if (puzzleImage == null) {
+         puzzleImage = new File(imageFolder, DEFAULT_IMAGE);
+      }
+      hintedPieces = new ArrayList<Piece>();
+      buildBoard();
+      installUndoKeys();
+      installHintKey();
+      installRotateKey();
+      installFilterKeys();
+      installTidyKey();
+      installMinimapKey();
+   }
+   
+  /**
+   * Lays out and scatters a fresh, hidden set of pieces for {@link JigsawPuzzle#puzzleImage}, with an empty
+   * history and a progress bar waiting for {@link JigsawPuzzle#startLoading}.
+   */
+   private void buildBoard() {
+      releasePieces();
+      geometry = geometryFor(puzzleImage);
+      spriteCache = new SpriteCache(options.getSpriteCacheBytes());
+      effects = options.isEffects() ? new EffectSprites() : null;
+      scaledPieces = null;
+      scalingTo = 0;
+      pieces = new Piece[geometry.getPieceCount()];
+      clusters = new PieceClusters(pieces.length);
+      history = new CommandLog(options.getUndoLimit());
+      if (arranger != null) {
+         arranger.finish();
+      }
+      arranger = new TableArranger(this);
+      snapIndex = new SnapIndex(this);
+      snapPreview = null;
+      hintedPieces.clear();
+      selectedPiece = null;
+      edgeIndex = null;
+      colourIndex = null;
+      pieceGrid = new PieceGrid(getWidth(), getHeight(), geometry.getCellSize() + 2 * geometry.getTabSize(), pieces.length);
+      generatePieces();
+      scatterPieces(pieces.length);
+      minimap = options.isMinimap() ? new Minimap(this) : null;
+      if (minimap != null) {
+         add(minimap, 0);
+      }
+      
+      loadingBar = new JProgressBar(0, pieces.length);
+      loadingBar.setStringPainted(true);
+      loadingBar.setBounds(getWidth() / 2 - 150, getHeight() / 2 - 12, 300, 24);
+      add(loadingBar);
+   }
+   
+  /**
+   * Works out the shape of the puzzle cut from the given image, from its size and the requested piece count.
+   * Only reads the image's header.
+   * @param image the image the puzzle is cut from
+   * @return the shape of the puzzle
+   */
+   private PuzzleGeometry geometryFor(File image) {
+      Dimension imageSize = new Dimension(getWidth(), getHeight());
+      try {
+         imageSize = PuzzleGeometry.readImageSize(image);
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+      return PuzzleGeometry.forPieceCount(requestedPieceCount, imageSize.width, imageSize.height, getWidth(), getHeight());
+   }
+   
+  /**
+   * Throws away the current puzzle and starts the one cut from the given image. If the library already has
+   * its pieces they are dealt straight away; otherwise they are generated in the background like the first
+   * puzzle. Must be called on the event thread.
+   * @param image the image to play next
+   */
+   public void switchPuzzle(File image) {
+      if (loader != null) {
+         loader.cancel(false);
+         loader = null;
+      }
+      removeAll();
+      puzzleImage = image;
+      buildBoard();
+      revalidate();
+      repaint();
+      startLoading();
+   }
+   
+  /**
+   * Hands the piece sets the board holds back to the {@link PuzzleLibrary}, so they can be evicted once no
+   * other board holds them either.
+   */
+   private void releasePieces() {
+      if (dealtPieces != null) {
+         library.release(dealtPieces);
+         dealtPieces = null;
+      }
+      if (scaledPieces != null) {
+         library.release(scaledPieces);
+         scaledPieces = null;
+      }
+   }
+   
+  /**
+   * Shuts the board down for good: stops loading and any tidy in progress, removes every piece and releases
+   * the board's piece sets. Must be called on the event thread.
+   */
+   public void dispose() {
+      if (loader != null) {
+         loader.cancel(false);
+         loader = null;
+      }
+      arranger.finish();
+      releasePieces();
+      removeAll();
+   }
+   
+  /**
+   * Binds R to turning the selected piece's cluster whenever the board's window is focused, if pieces can
+   * be turned. Right-clicking a piece does the same.
+   */
+   private void installRotateKey() {
+      getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_R, 0), "rotate");
+      getActionMap().put("rotate", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            if (options.isRotatePieces() && selectedPiece != null) {
+               selectedPiece.turnCluster();
+            }
+         }
+      });
+   }
+   
+  /**
+   * Binds C to {@link JigsawPuzzle#showSimilarColours}, F to {@link JigsawPuzzle#showMatchingColours}, E to
+   * {@link JigsawPuzzle#showEdgePieces} and Shift+E to {@link JigsawPuzzle#showCornerPieces} whenever the board's
+   * window is focused.
+   */
+   private void installFilterKeys() {
+      InputMap inputs = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_C, 0), "similarColours");
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_F, 0), "matchingColours");
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_E, 0), "edgePieces");
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_E, InputEvent.SHIFT_DOWN_MASK), "cornerPieces");
+      getActionMap().put("similarColours", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            showSimilarColours();
+         }
+      });
+      getActionMap().put("matchingColours", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            showMatchingColours();
+         }
+      });
+      getActionMap().put("edgePieces", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            showEdgePieces();
+         }
+      });
+      getActionMap().put("cornerPieces", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            showCornerPieces();
+         }
+      });
+   }
+   
+  /**
+   * Binds T to {@link JigsawPuzzle#tidyUp} and Shift+T to {@link JigsawPuzzle#sortByColour} whenever the
+   * board's window is focused.
+   */
+   private void installTidyKey() {
+      InputMap inputs = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_T, 0), "tidy");
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_T, InputEvent.SHIFT_DOWN_MASK), "sortByColour");
+      getActionMap().put("tidy", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            tidyUp();
+         }
+      });
+      getActionMap().put("sortByColour", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            sortByColour();
+         }
+      });
+   }
+   
+  /**
+   * Binds M to showing and hiding the minimap whenever the board's window is focused.
+   */
+   private void installMinimapKey() {
+      getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_M, 0), "minimap");
+      getActionMap().put("minimap", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            if (minimap != null) {
+               minimap.setVisible(!minimap.isVisible());
+               minimap.markAll();
+            }
+         }
+      });
+   }
+   
+  /**
+   * Tells the minimap a piece has moved, turned or been shown, so the cells under its old and new places are
+   * drawn again. Called by the piece whenever its bounds change.
+   * @param piece the piece that changed
+   * @param oldX the piece's x-position before the change
+   * @param oldY the piece's y-position before the change
+   * @param oldWidth the piece's width before the change
+   * @param oldHeight the piece's height before the change
+   */
+   public void pieceChanged(Piece piece, int oldX, int oldY, int oldWidth, int oldHeight) {
+      if (minimap == null || !minimap.isVisible() || !piece.isVisible()) {
+         return;
+      }
+      minimap.markDirty(oldX, oldY, oldWidth, oldHeight);
+      minimap.markDirty(piece.getX(), piece.getY(), piece.getWidth(), piece.getHeight());
+   }
+   
+  /**
+   * Spreads out loose pieces and clusters that overlap each other or hang off the board, moving them as
+   * little as possible, and slides them to their new places. Undone in one step like a drag. See
+   * {@link TableArranger}.
+   */
+   public void tidyUp() {
+      arranger.tidy();
+   }
+   
+  /**
+   * Tidies up like {@link JigsawPuzzle#tidyUp}, but lays the loose pieces out row by row in the free space,
+   * sorted by colour from the {@link ColourIndex}. Undone in one step like a drag.
+   */
+   public void sortByColour() {
+      arranger.sortByColour();
+   }
+   
+  /**
+   * Outlines the loose pieces whose colours are most like the selected piece's, by how much their colour
+   * histograms overlap in the {@link ColourIndex}. Pieces already in the selected piece's cluster are left out.
+   */
+   public void showSimilarColours() {
+      clearHints();
+      if (selectedPiece == null || colourIndex == null) {
+         return;
+      }
+      final int selectedID = selectedPiece.getPieceID();
+      int[] similar = colourIndex.findSimilar(selectedID, SIMILAR_OVERLAP, SIMILAR_LIMIT, new VantagePointTree.Filter() {
+         public boolean accept(int id) {
+            return pieces[id].isVisible() && !clusters.connected(id, selectedID);
+         }
+      });
+      for (int id : similar) {
+         pieces[id].setHighlighted(true);
+         hintedPieces.add(pieces[id]);
+      }
+   }
+   
+  /**
+   * Outlines the loose pieces with the most of the selected piece's dominant colour in them, as found by
+   * {@link ColourIndex#findByColour}. Unlike {@link JigsawPuzzle#showSimilarColours}, the rest of the selected
+   * piece's colours don't count, so a piece that is half sky finds the other sky pieces. Pieces already in the
+   * selected piece's cluster are left out.
+   */
+   public void showMatchingColours() {
+      clearHints();
+      if (selectedPiece == null || colourIndex == null) {
+         return;
+      }
+      final int selectedID = selectedPiece.getPieceID();
+      int[] matching = colourIndex.findByColour(colourIndex.getDominantColour(selectedID), MATCHING_SHARE, SIMILAR_LIMIT,
+                                                new VantagePointTree.Filter() {
+         public boolean accept(int id) {
+            return pieces[id].isVisible() && !clusters.connected(id, selectedID);
+         }
+      });
+      for (int id : matching) {
+         pieces[id].setHighlighted(true);
+         hintedPieces.add(pieces[id]);
+      }
+   }
+   
+  /**
+   * Outlines every border piece, corners included, that still has an open side, i.e. that isn't yet fused
+   * to all of its neighbours.
+   */
+   public void showEdgePieces() {
+      clearHints();
+      if (colourIndex == null) {
+         return;
+      }
+      for (int id = 0; id < pieces.length; id++) {
+         if (colourIndex.isEdge(id) && pieces[id].isVisible() && hasOpenSide(id)) {
+            pieces[id].setHighlighted(true);
+            hintedPieces.add(pieces[id]);
+         }
+      }
+   }
+   
+  /**
+   * Outlines every corner piece that still has an open side.
+   */
+   public void showCornerPieces() {
+      clearHints();
+      if (colourIndex == null) {
+         return;
+      }
+      for (int id = 0; id < pieces.length; id++) {
+         if (colourIndex.isCorner(id) && pieces[id].isVisible() && hasOpenSide(id)) {
+            pieces[id].setHighlighted(true);
+            hintedPieces.add(pieces[id]);
+         }
+      }
+   }
+   
+  /**
+   * Returns whether any side of a piece is still open in the {@link SnapIndex}.
+   * @param id the ID of the piece
+   * @return true if at least one neighbour hasn't been fused to it
+   */
+   private boolean hasOpenSide(int id) {
+      for (int side = 0; side < 4; side++) {
+         if (snapIndex.isOpen(id, side)) {
+            return true;
+         }
+      }
+      return false;
+   }
+   
+  /**
+   * Binds H to {@link JigsawPuzzle#showHints} whenever the board's window is focused.
+   */
+   private void installHintKey() {
+      getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_H, 0), "hint");
+      getActionMap().put("hint", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            showHints();
+         }
+      });
+   }
+   
+  /**
+   * Outlines the loose pieces most likely to fit the open edges of the selected piece: edges whose
+   * neighbour hasn't been fused to it yet. Candidates are looked up in the {@link EdgeIndex}, and only
+   * pieces that aren't already part of the selected piece's cluster, and whose own matching edge is still
+   * open, are suggested.
+   */
+   public void showHints() {
+      clearHints();
+      if (selectedPiece == null || edgeIndex == null) {
+         return;
+      }
+      final int selectedID = selectedPiece.getPieceID();
+      for (int side = 0; side < 4; side++) {
+         Piece neighbour = selectedPiece.getAdjacentPiece(side);
+         if (neighbour == null || clusters.connected(selectedID, neighbour.getPieceID())) {
+            continue;
+         }
+         int[] fits = edgeIndex.findFits(selectedID, side, 3, new VantagePointTree.Filter() {
+            public boolean accept(int edge) {
+               int candidateID = edge / 4;
+               Piece candidateNeighbour = pieces[candidateID].getAdjacentPiece(edge % 4);
+               return pieces[candidateID].isVisible()
+                  && !clusters.connected(candidateID, selectedID)
+                  && !clusters.connected(candidateID, candidateNeighbour.getPieceID());
+            }
+         });
+         for (int id : fits) {
+            pieces[id].setHighlighted(true);
+            hintedPieces.add(pieces[id]);
+         }
+      }
+   }
+   
+  /**
+   * Removes the outline from every piece suggested by the last hint.
+   */
+   public void clearHints() {
+      for (Piece piece : hintedPieces) {
+         piece.setHighlighted(false);
+      }
+      hintedPieces.clear();
+   }
+   
+  /**
+   * Remembers which piece was clicked last, so hints can be given for it, and clears any old hints.
+   * @param piece the piece that was clicked
+   */
+   public void setSelectedPiece(Piece piece) {
+      if (selectedPiece != null) {
+         repaintCluster(selectedPiece.getPieceID());
+      }
+      selectedPiece = piece;
+      if (piece != null) {
+         repaintCluster(piece.getPieceID());
+      }
+      clearHints();
+   }
+   
+  /**
+   * Repaints every piece in a cluster, e.g. because the selection outline moved to or from it.
+   * Does nothing with effects off, since the selection isn't drawn then.
+   * @param piece the ID of any piece in the cluster
+   */
+   private void repaintCluster(int piece) {
+      if (effects == null) {
+         return;
+      }
+      int id = piece;
+      do {
+         pieces[id].repaint();
+         id = clusters.next(id);
+      } while (id != piece);
+   }
+   
+  /**
+   * Draws the shadow, and any outline, of every piece under all of the pieces, so the shadows of pieces in
+   * a cluster don't fall across each other. Only the pieces the {@link PieceGrid} has near the area being
+   * painted are looked at, so a small repaint during a drag doesn't cost every piece on the board, and each
+   * visible piece in the area costs one drawImage of a sprite shared with every piece of the same shape. On a
+   * scaled screen the sprites are made at the screen's scale once the piece set for it is ready.
+   * @param g the graphics object to paint with
+   */
+   @Override
+   protected void paintComponent(Graphics g) {
+      super.paintComponent(g);
+      if (effects == null) {
+         return;
+      }
+      double scale = getRenderScale(g);
+      PieceSet scaled = getScaledPieces(scale);
+      int inset = EffectSprites.getMargin(scale);
+      Rectangle clip = g.getClipBounds();
+      int selectedRoot = selectedPiece == null ? -1 : clusters.find(selectedPiece.getPieceID());
+      int count = clip == null ? pieces.length : pieceGrid.find(clip);
+      int[] found = pieceGrid.getFound();
+      for (int i = 0; i < count; i++) {
+         Piece piece = pieces[clip == null ? i : found[i]];
+         AlphaMask shape = piece.getShapeMask();
+         if (!piece.isVisible() || shape == null) {
+            continue;
+         }
+         if (clip != null && (piece.getX() >= clip.x + clip.width || piece.getY() >= clip.y + clip.height
+                              || piece.getX() + piece.getWidth() <= clip.x || piece.getY() + piece.getHeight() <= clip.y)) {
+            continue;
+         }
+         int variant = EffectSprites.SHADOW;
+         if (piece.isSnapPreview()) {
+            variant = EffectSprites.SNAP_PREVIEW;
+         } else if (piece.isHighlighted()) {
+            variant = EffectSprites.HINTED;
+         } else if (clusters.find(piece.getPieceID()) == selectedRoot) {
+            variant = EffectSprites.SELECTED;
+         }
+         if (scaled != null) {
+            BufferedImage sprite = effects.get(scaled.getMask(piece.getPieceID()), piece.getOrientation(), variant, scale);
+            SpriteCache.drawUnscaled((Graphics2D)g, sprite, piece.getX() + EffectSprites.MARGIN, piece.getY() + EffectSprites.MARGIN, inset);
+         } else {
+            g.drawImage(effects.get(shape, piece.getOrientation(), variant), piece.getX(), piece.getY(), null);
+         }
+      }
+   }
+   
+  /**
+   * Returns the display scale pieces should be drawn at with the given graphics: the scale set in the options,
+   * or else the scale of the screen the board is on, from its GraphicsConfiguration's default transform. If the
+   * graphics aren't scaled by exactly that much, as when painting into an image, pieces are drawn at a scale
+   * of 1 and left to Java2D to resample.
+   * @param g the graphics the pieces are about to be painted with
+   * @return how many device pixels there are to each pixel of the puzzle's shape
+   */
+   public double getRenderScale(Graphics g) {
+      double scale = options.getRenderScale();
+      if (scale <= 0) {
+         GraphicsConfiguration config = getGraphicsConfiguration();
+         scale = config == null ? 1 : config.getDefaultTransform().getScaleX();
+      }
+      if (scale == 1 || !(g instanceof Graphics2D)) {
+         return 1;
+      }
+      AffineTransform transform = ((Graphics2D)g).getTransform();
+      boolean scaledOnly = (transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) == 0;
+      if (!scaledOnly || Math.abs(transform.getScaleX() - scale) > 1e-6) {
+         return 1;
+      }
+      return scale;
+   }
+   
+  /**
+   * Returns the piece set cut at a display scale, for drawing pieces pixel for pixel on a scaled screen. Sets
+   * are cut in the background through the {@link PuzzleLibrary}, once per scale, and kept there, so moving the
+   * board back to a screen it has been on reuses the set it already made. Until the set is ready pieces are
+   * drawn at a scale of 1.
+   * @param scale the display scale from {@link JigsawPuzzle#getRenderScale}
+   * @return the set, or null if the scale is 1 or the set isn't ready yet
+   */
+   public PieceSet getScaledPieces(final double scale) {
+      if (scale == 1) {
+         return null;
+      }
+      if (scaledPieces != null && scaledPieces.getScale() == scale) {
+         return scaledPieces;
+      }
+      PieceSet ready = library.acquireIfReady(puzzleImage, geometry, PieceSet.COMPACT, scale);
+      if (ready != null) {
+         if (scaledPieces != null) {
+            library.release(scaledPieces);
+         }
+         scaledPieces = ready;
+         return ready;
+      }
+      if (scalingTo != scale) {
+         scalingTo = scale;
+         final File image = puzzleImage;
+         final PuzzleGeometry shape = geometry;
+         new SwingWorker<PieceSet, Void>() {
+            @Override
+            protected PieceSet doInBackground() throws IOException {
+               return library.get(image, shape, PieceSet.COMPACT, scale, null);
+            }
+            
+            @Override
+            protected void done() {
+               if (image != puzzleImage || shape != geometry) {
+                  return;
+               }
+               try {
+                  get();
+                  scalingTo = 0;
+                  repaint();
+               } catch (Exception e) {
+                  e.printStackTrace();
+               }
+            }
+         }.execute();
+      }
+      return null;
+   }
+   
+  /**
+   * Returns how far each piece's bounds reach past its image to leave room for its shadow.
+   * @return {@link EffectSprites#MARGIN}, or 0 if effects are off
+   */
+   public int getEffectMargin() {
+      return effects == null ? 0 : EffectSprites.MARGIN;
+   }
+   
+  /**
+   * Returns the shadow and outline sprites drawn under the pieces.
+   * @return {@link JigsawPuzzle#effects}, or null if effects are off
+   */
+   public EffectSprites getEffects() {
+      return effects;
+   }
+   
+  /**
+   * Hands the board the edge index once every piece has been generated.
+   * @param index the index of every piece edge
+   */
+   public void setEdgeIndex(EdgeIndex index) {
+      edgeIndex = index;
+   }
+   
+  /**
+   * Binds Ctrl+Z to undo and Ctrl+Y or Ctrl+Shift+Z to redo whenever the board's window is focused.
+   */
+   private void installUndoKeys() {
+      InputMap inputs = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+      ActionMap actions = getActionMap();
+      // Macs use Command where everything else uses Ctrl; asking the toolkit needs a display, e.g. not in SoakTest
+      boolean mac = System.getProperty("os.name", "").toLowerCase().startsWith("mac");
+      int shortcut = mac ? InputEvent.META_DOWN_MASK : InputEvent.CTRL_DOWN_MASK;
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), "undo");
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), "redo");
+      inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK), "redo");
+      actions.put("undo", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            undo();
+         }
+      });
+      actions.put("redo", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            redo();
+         }
+      });
+   }
+   
+  /**
+   * Undoes the most recent drag and drop, including any fuses it caused.
+   */
+   public void undo() {
+      arranger.finish();
+      history.undo(this);
+   }
+   
+  /**
+   * Redoes the most recently undone drag and drop.
+   */
+   public void redo() {
+      arranger.finish();
+      history.redo(this);
+   }
+   
+  /**
+   * Fuses the clusters of two pieces and records the fuse in {@link JigsawPuzzle#history}.
+   * Does nothing if they are already fused.
+   * @param a the ID of one piece
+   * @param b the ID of the other piece
+   */
+   public void bindPieces(int a, int b) {
+      int child = clusters.union(a, b);
+      if (child >= 0) {
+         history.recordBind(a, b, child);
+         snapIndex.refresh(a);
+         if (selectedPiece != null && clusters.connected(a, selectedPiece.getPieceID())) {
+            repaintCluster(a);
+         }
+      }
+   }
+   
+  /**
+   * Outlines the piece the dragged cluster would snap to if it were dropped now, replacing the last outline.
+   * @param edge the open edge found by {@link SnapIndex#findSnap}, or -1 to clear the outline
+   */
+   public void showSnapPreview(int edge) {
+      Piece target = edge < 0 ? null : pieces[geometry.neighbour(edge / 4, edge % 4)];
+      if (target == snapPreview) {
+         return;
+      }
+      if (snapPreview != null) {
+         snapPreview.setSnapPreview(false);
+      }
+      snapPreview = target;
+      if (target != null) {
+         target.setSnapPreview(true);
+      }
+   }
+   
+  /**
+   * Moves every piece in the cluster containing the given piece.
+   * @param piece the ID of any piece in the cluster
+   * @param dx how far to move it left or right
+   * @param dy how far to move it up or down
+   */
+   public void moveCluster(int piece, int dx, int dy) {
+      Piece moved = pieces[piece];
+      moved.setPieceLocation(moved.getPieceX() + dx, moved.getPieceY() + dy);
+      moved.updateBoundPieces(dx, dy);
+   }
+   
+  /**
+   * Turns every piece in the cluster containing the given piece around that piece's square. Each member's
+   * square is swung around the pivot and the member is given the new orientation; only positions and
+   * orientations change, and the turned sprites come from the {@link SpriteCache}.
+   * @param piece the ID of the piece the cluster turns around
+   * @param quarterTurns how many quarter turns clockwise; negative turns anticlockwise
+   */
+   public void rotateCluster(int piece, int quarterTurns) {
+      int turns = ((quarterTurns % 4) + 4) % 4;
+      if (turns == 0) {
+         return;
+      }
+      int half = geometry.getCellSize() / 2;
+      int pivotX = pieces[piece].getCellX() + half;
+      int pivotY = pieces[piece].getCellY() + half;
+      int id = piece;
+      do {
+         Piece member = pieces[id];
+         int offsetX = member.getCellX() + half - pivotX;
+         int offsetY = member.getCellY() + half - pivotY;
+         for (int i = 0; i < turns; i++) {
+            // Clockwise on screen, where y points down
+            int temp = offsetX;
+            offsetX = -offsetY;
+            offsetY = temp;
+         }
+         member.setOrientation(member.getOrientation() + turns, pivotX + offsetX - half, pivotY + offsetY - half);
+         id = clusters.next(id);
+      } while (id != piece);
+   }
+   
+  /**
+   * Fuses two clusters again while redoing. Unlike {@link JigsawPuzzle#bindPieces}, nothing is recorded.
+   * @param a the first piece given to the original fuse
+   * @param b the second piece given to the original fuse
+   */
+   public void bind(int a, int b) {
+      clusters.union(a, b);
+      snapIndex.refresh(a);
+      repaintCluster(a);
+   }
+   
+  /**
+   * Splits a fuse back apart while undoing.
+   * @param a the first piece given to the fuse
+   * @param b the second piece given to the fuse
+   * @param child the cluster root that the fuse hung under the other
+   */
+   public void unbind(int a, int b, int child) {
+      clusters.split(a, b, child);
+      snapIndex.refresh(a);
+      snapIndex.refresh(b);
+      repaintCluster(a);
+      repaintCluster(b);
+   }
+   
+  /**
+   * Gives every piece its image. If the library already has this puzzle's pieces they are dealt at once;
+   * otherwise they are generated in the background and each piece becomes visible as soon as its mask has
+   * been applied, so the board can be played with while the rest are still coming in.
+   * Must be called on the event thread, once the window is showing.
+   */
+   public void startLoading() {
+      PieceSet ready = library.acquireIfReady(puzzleImage, geometry, options.getPieceStorage());
+      if (ready == null) {
+         loader = new PieceLoader(this, library, puzzleImage, loadingBar, options.getPieceStorage());
+         loader.execute();
+         return;
+      }
+      for (Piece piece : pieces) {
+         ready.applyTo(piece);
+         piece.setVisible(true);
+      }
+      piecesLoaded(ready);
+   }
+   
+  /**
+   * Called once every piece has its image. Removes the progress bar, hands the board its edge and colour
+   * indexes and the minimap its thumbnails, and starts prefetching the puzzle most likely to be played next.
+   * If the set couldn't be generated the progress bar is left up, showing why, until another puzzle is started.
+   * @param pieceSet the set the pieces were dealt from, already acquired from the library for this board, or
+   * null if it couldn't be generated
+   */
+   public void piecesLoaded(PieceSet pieceSet) {
+      loader = null;
+      if (pieceSet == null) {
+         repaint();
+         return;
+      }
+      remove(loadingBar);
+      repaint();
+      dealtPieces = pieceSet;
+      setEdgeIndex(pieceSet.getEdgeIndex());
+      colourIndex = pieceSet.getColourIndex();
+      if (minimap != null) {
+         minimap.setThumbnails(pieceSet.getThumbnails());
+      }
+      File next = library.nextImage(puzzleImage);
+      if (next != null) {
+         library.prefetch(next, geometryFor(next), options.getPieceStorage());
+      }
+   }
+   
+  /**
+   * Creates every puzzle piece, hidden, in one of the slots picked by {@link PuzzleGeometry#scatterSlots}.
+   * Each piece's ID is its index in the global array, so its row and column come straight from the geometry.
+   * If pieces can be turned, each one starts out turned at random.
+   */
+   public void generatePieces() {
+      int[] slots = geometry.scatterSlots(getWidth(), getHeight(), random);
+      int cellSize = geometry.getCellSize();
+      for (int id = 0; id < pieces.length; id++) {
+         Piece puzzlePiece = new Piece(this, slots[id * 2], slots[id * 2 + 1], cellSize, cellSize, id);
+         puzzlePiece.setArrayPosition(geometry.row(id), geometry.col(id));
+         if (options.isRotatePieces()) {
+            puzzlePiece.setStartingOrientation(random.nextInt(4));
+         }
+         puzzlePiece.setVisible(false);
+         pieces[id] = puzzlePiece;
+         add(puzzlePiece);
+      }
+   }
+   
+  /**
+   * Randomizes the positions of the piece around the board, so that the slot layout doesn't change but adjacent
+   * pieces no longer are created right next to each other. 
+   * Shuffles the slots with a Fisher-Yates shuffle, then moves every piece to its new slot.
+   * @param pieceCount the amount of pieces in the puzzle
+   */
+   public void scatterPieces(int pieceCount) {
+      int[] xPositions = new int[pieceCount];
+      int[] yPositions = new int[pieceCount];
+      
+      for (int i = 0; i < pieceCount; i++) {
+         xPositions[i] = pieces[i].getPieceX();
+         yPositions[i] = pieces[i].getPieceY();
+      }
+      
+      for (int i = pieceCount - 1; i >= 0; i--) {
+         int swapIndex = random.nextInt(i + 1);
+         pieces[i].setPieceLocation(xPositions[swapIndex], yPositions[swapIndex]);
+         xPositions[swapIndex] = xPositions[i];
+         yPositions[swapIndex] = yPositions[i];
+      }
+   }
+   
+  /**
+   * Returns the global piece array, indexed by piece ID.
+   * @return {@link JigsawPuzzle#pieces}
+   */
+   public Piece[] getPieceArray() {
+      return pieces;
+   }
+   
+  /**
+   * Returns the shape of the puzzle.
+   * @return {@link JigsawPuzzle#geometry}
+   */
+   public PuzzleGeometry getGeometry() {
+      return geometry;
+   }
+   
+  /**
+   * Returns the piece with the given unique ID.
+   * @param id the ID of the piece
+   * @return the piece
+   */
+   public Piece getPieceByID(int id) {
+      return pieces[id];
+   }
+   
+  /**
+   * Returns which pieces are fused together.
+   * @return {@link JigsawPuzzle#clusters}
+   */
+   public PieceClusters getClusters() {
+      return clusters;
+   }
+   
+  /**
+   * Returns the index of every piece's open sides.
+   * @return {@link JigsawPuzzle#snapIndex}
+   */
+   public SnapIndex getSnapIndex() {
+      return snapIndex;
+   }
+   
+  /**
+   * Returns the piece set the board's pieces were dealt from.
+   * @return {@link JigsawPuzzle#dealtPieces}, or null until the pieces have been generated
+   */
+   public PieceSet getDealtPieces() {
+      return dealtPieces;
+   }
+   
+  /**
+   * Returns roughly how many bytes the board keeps for itself, on top of the piece set it shares through the
+   * {@link PuzzleLibrary}: its sprite cache, its effect sprites and its minimap.
+   * @return the size of the board's own caches in bytes
+   */
+   public long getOwnBytes() {
+      long bytes = spriteCache.getCurrentBytes();
+      if (effects != null) {
+         bytes += effects.getCurrentBytes();
+      }
+      if (minimap != null) {
+         bytes += minimap.getByteSize();
+      }
+      return bytes;
+   }
+   
+  /**
+   * Returns the overview of the board.
+   * @return {@link JigsawPuzzle#minimap}, or null if the options turn it off
+   */
+   public Minimap getMinimap() {
+      return minimap;
+   }
+   
+  /**
+   * Returns which pieces lie over which parts of the board.
+   * @return {@link JigsawPuzzle#pieceGrid}
+   */
+   public PieceGrid getPieceGrid() {
+      return pieceGrid;
+   }
+
+  /**
+   * Returns what tidies the table.
+   * @return {@link JigsawPuzzle#arranger}
+   */
+   public TableArranger getArranger() {
+      return arranger;
+   }
+   
+  /**
+   * Returns the undo and redo history.
+   * @return {@link JigsawPuzzle#history}
+   */
+   public CommandLog getHistory() {
+      return history;
+   }
+   
+  /**
+   * Returns how the pieces are generated and drawn.
+   * @return {@link JigsawPuzzle#options}
+   */
+   public PuzzleOptions getOptions() {
+      return options;
+   }
+   
+  /**
+   * Returns the puzzles that can be played.
+   * @return {@link JigsawPuzzle#library}
+   */
+   public PuzzleLibrary getLibrary() {
+      return library;
+   }
+   
+  /**
+   * Returns the image the current puzzle is cut from.
+   * @return {@link JigsawPuzzle#puzzleImage}
+   */
+   public File getPuzzleImage() {
+      return puzzleImage;
+   }
+   
+  /**
+   * Returns every piece's colours and border sides.
+   * @return {@link JigsawPuzzle#colourIndex}, or null until the pieces have been generated
+   */
+   public ColourIndex getColourIndex() {
+      return colourIndex;
+   }
+   
+  /**
+   * Returns the cache that compact pieces get their sprites from.
+   * @return {@link JigsawPuzzle#spriteCache}
+   */
+   public SpriteCache getSpriteCache() {
+      return spriteCache;
+   }
+}
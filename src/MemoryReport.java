@@ -0,0 +1,113 @@
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Compares how much heap the piece images take up with full-colour pieces versus compact pieces that share
+* the puzzle image and an {@link AlphaMask}. The puzzle is shaped by {@link PuzzleGeometry#forPieceCount} for a
+* board of {@link MemoryReport#BOARD_SIZE}, just like the one a board would deal, and each full-colour piece gets
+* its own copy of its sprite, just like the pieces on a real board.
+* <p>
+* Usage: {@code java MemoryReport [pieceCount] [spriteCacheMB]}, run from the folder containing Resources/.
+* @author Noah Brown
+*/
+public class MemoryReport {
+  /**
+   * The size of the board the puzzle is shaped for.
+   */
+   private static final Dimension BOARD_SIZE = new Dimension(1600, 900);
+
+   public static void main(String[] args) throws IOException {
+      System.setProperty("java.awt.headless", "true");
+      int requestedPieces = 10000;
+      if (args.length > 0) {
+         requestedPieces = Integer.parseInt(args[0]);
+      }
+      long cacheBytes = new PuzzleOptions().getSpriteCacheBytes();
+      if (args.length > 1) {
+         cacheBytes = Long.parseLong(args[1]) * 1024 * 1024;
+      }
+
+      File image = new File(System.getProperty("user.dir") + "/Resources/puzzleImages/TheWhitePeople.png");
+      Dimension imageSize = PuzzleGeometry.readImageSize(image);
+      PuzzleGeometry geometry = PuzzleGeometry.forPieceCount(requestedPieces, imageSize.width, imageSize.height,
+                                                             BOARD_SIZE.width, BOARD_SIZE.height);
+      ImageSplitter imageSplitter = new ImageSplitter(image, geometry);
+      int pieceCount = geometry.getPieceCount();
+      // Load every mask up front so neither mode is charged for them
+      for (int k = 0; k < pieceCount; k++) {
+         imageSplitter.getPieceMask(geometry.row(k), geometry.col(k));
+      }
+
+      long baseline = usedHeap();
+      BufferedImage[] sprites = new BufferedImage[pieceCount];
+      long spritePixels = 0;
+      for (int k = 0; k < pieceCount; k++) {
+         int row = geometry.row(k);
+         int col = geometry.col(k);
+         sprites[k] = imageSplitter.maskImage(imageSplitter.cutPiece(row, col), imageSplitter.getMaskPath(row, col));
+         spritePixels += sprites[k].getWidth() * sprites[k].getHeight();
+      }
+      long fullBytes = usedHeap() - baseline;
+      sprites = null;
+
+      baseline = usedHeap();
+      AlphaMask[] masks = new AlphaMask[pieceCount];
+      int[] sourceX = new int[pieceCount];
+      int[] sourceY = new int[pieceCount];
+      for (int k = 0; k < pieceCount; k++) {
+         int row = geometry.row(k);
+         int col = geometry.col(k);
+         Rectangle cutout = imageSplitter.getPieceBounds(row, col);
+         masks[k] = imageSplitter.getPieceMask(row, col);
+         sourceX[k] = cutout.x;
+         sourceY[k] = cutout.y;
+      }
+      long compactBytes = usedHeap() - baseline;
+
+      BufferedImage source = imageSplitter.getPuzzleImage();
+      long sharedBytes = SpriteCache.spriteBytes(source);
+      Set<AlphaMask> distinctMasks = Collections.newSetFromMap(new IdentityHashMap<AlphaMask, Boolean>());
+      distinctMasks.addAll(Arrays.asList(masks));
+      long maskBytes = 0;
+      for (AlphaMask mask : distinctMasks) {
+         maskBytes += mask.getByteSize();
+      }
+      long cacheBound = Math.min(cacheBytes, spritePixels * 4);
+
+      System.out.println("Pieces: " + pieceCount + " (" + geometry.getRows() + " rows by " + geometry.getCols()
+         + " columns of " + geometry.getCellSize() + " px)");
+      System.out.println();
+      System.out.printf("%-28s %12s %14s%n", "", "measured MB", "bytes/piece");
+      System.out.printf("%-28s %12.2f %14.1f%n", "Full-colour sprites", fullBytes / 1048576.0, (double)fullBytes / pieceCount);
+      System.out.printf("%-28s %12.2f %14.1f%n", "Compact (per-piece state)", compactBytes / 1048576.0, (double)compactBytes / pieceCount);
+      System.out.println();
+      System.out.printf("Full-colour pixel data:       %.2f MB (%d px at 4 bytes)%n", spritePixels * 4 / 1048576.0, spritePixels);
+      System.out.printf("Compact shared puzzle image:  %.2f MB%n", sharedBytes / 1048576.0);
+      System.out.printf("Compact shared alpha masks:   %.3f MB%n", maskBytes / 1048576.0);
+      System.out.printf("Compact sprite cache bound:   %.2f MB%n", cacheBound / 1048576.0);
+      long compactTotal = compactBytes + sharedBytes + maskBytes + cacheBound;
+      System.out.printf("Compact worst case total:     %.2f MB (%.1fx smaller than full-colour)%n",
+         compactTotal / 1048576.0, (double)fullBytes / compactTotal);
+      System.out.println("Compact cutouts:              " + Math.min(sourceX.length, sourceY.length) + " pieces sharing "
+         + distinctMasks.size() + " masks");
+   }
+
+  /**
+   * Returns how many bytes of heap are in use after asking the garbage collector to clean up.
+   * @return the used heap in bytes
+   */
+   public static long usedHeap() {
+      Runtime runtime = Runtime.getRuntime();
+      for (int i = 0; i < 4; i++) {
+         System.gc();
+         try {
+            Thread.sleep(50);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+}
@@ -0,0 +1,220 @@
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+import java.util.Arrays;
+import java.awt.image.BufferedImage;
+
+/**
+* A small overview of the whole board in its top-right corner, showing every piece and cluster at
+* {@link PieceThumbnails#SCALE} of its size and the part of the board that is actually on screen.
+* The overview is kept in its own backing image, divided into square cells. Whenever a piece moves, turns or is
+* shown, only the cells under its old and new places are marked dirty; at most every
+* {@link Minimap#REFRESH_MS} the dirty cells are cleared and the thumbnails over them drawn again. The pieces
+* over each dirty cell are found in the board's {@link PieceGrid}, so a drag costs the cells it touches and the
+* pieces near them, and the board is never drawn again at a reduced scale.
+* @author Noah Brown
+*/
+public class Minimap extends JComponent {
+  /**
+   * The version of the minimap's serialized form.
+   */
+   private static final long serialVersionUID = 1L;
+  /**
+   * How many pixels of the backing image each cell covers, across and down.
+   */
+   private static final int CELL_SIZE = 16;
+  /**
+   * The least time between two updates of the backing image, in milliseconds.
+   */
+   private static final int REFRESH_MS = 100;
+  /**
+   * How far the minimap sits from the edges of the board.
+   */
+   private static final int INSET = 12;
+  /**
+   * The colour of the table in the overview.
+   */
+   private static final Color TABLE = new Color(40, 40, 40, 200);
+  /**
+   * The colour of the outline around the part of the board on screen.
+   */
+   private static final Color VIEWPORT = new Color(255, 255, 255, 200);
+
+  /**
+   * The board the minimap shows.
+   */
+   private JigsawPuzzle board;
+  /**
+   * Every piece's thumbnail, or null until the pieces have been generated.
+   */
+   private PieceThumbnails thumbnails;
+  /**
+   * The overview of the board, updated a few cells at a time.
+   */
+   private BufferedImage backing;
+  /**
+   * Which cells of {@link Minimap#backing} have to be drawn again, row by row.
+   */
+   private boolean[] dirty;
+  /**
+   * The number of columns of cells.
+   */
+   private int cellCols;
+  /**
+   * The number of rows of cells.
+   */
+   private int cellRows;
+  /**
+   * Updates the dirty cells once {@link Minimap#REFRESH_MS} has passed since the first was marked.
+   */
+   private Timer refresh;
+
+  /**
+   * Creates the minimap for the given board, sized to the board and placed in its top-right corner. It shows
+   * an empty table until it is given the thumbnails.
+   * @param puzzle the board to show
+   */
+   public Minimap(JigsawPuzzle puzzle) {
+      this.board = puzzle;
+      int width = Math.max(1, (int)Math.ceil(board.getWidth() * PieceThumbnails.SCALE));
+      int height = Math.max(1, (int)Math.ceil(board.getHeight() * PieceThumbnails.SCALE));
+      setBounds(board.getWidth() - width - INSET - 2, INSET, width + 2, height + 2);
+      backing = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      cellCols = (width + CELL_SIZE - 1) / CELL_SIZE;
+      cellRows = (height + CELL_SIZE - 1) / CELL_SIZE;
+      dirty = new boolean[cellCols * cellRows];
+      refresh = new Timer(REFRESH_MS, new ActionListener() {
+         public void actionPerformed(ActionEvent e) {
+            update();
+         }
+      });
+      refresh.setRepeats(false);
+      markAll();
+      // Swallows the mouse, so pieces under the minimap can't be picked up through it
+      addMouseListener(new MouseAdapter() {});
+   }
+
+  /**
+   * Gives the minimap every piece's thumbnail and draws the whole overview again.
+   * @param pieceThumbnails the thumbnails from the board's {@link PieceSet}
+   */
+   public void setThumbnails(PieceThumbnails pieceThumbnails) {
+      this.thumbnails = pieceThumbnails;
+      markAll();
+   }
+
+  /**
+   * Marks every cell dirty.
+   */
+   public void markAll() {
+      markDirty(0, 0, board.getWidth(), board.getHeight());
+   }
+
+  /**
+   * Marks the cells covering an area of the board dirty, and makes sure an update is coming.
+   * @param x the left edge of the area on the board
+   * @param y the top edge of the area on the board
+   * @param width the width of the area
+   * @param height the height of the area
+   */
+   public void markDirty(int x, int y, int width, int height) {
+      double cellScale = PieceThumbnails.SCALE / CELL_SIZE;
+      int col0 = Math.max(0, (int)Math.floor(x * cellScale));
+      int row0 = Math.max(0, (int)Math.floor(y * cellScale));
+      int col1 = Math.min(cellCols - 1, (int)Math.floor((x + width) * cellScale));
+      int row1 = Math.min(cellRows - 1, (int)Math.floor((y + height) * cellScale));
+      for (int row = row0; row <= row1; row++) {
+         for (int col = col0; col <= col1; col++) {
+            dirty[row * cellCols + col] = true;
+         }
+      }
+      if (!refresh.isRunning()) {
+         refresh.start();
+      }
+   }
+
+  /**
+   * Draws the dirty cells of the backing image again. Each cell is drawn on its own, from the pieces the
+   * board's {@link PieceGrid} has near it, bottom first in the reverse of the board's child order, and clipped
+   * to the cell, so the clean cells around it are left exactly as they were.
+   * @return how many cells were drawn
+   */
+   public int update() {
+      Graphics2D g = backing.createGraphics();
+      g.setComposite(AlphaComposite.Src);
+      g.setColor(TABLE);
+      int drawn = 0;
+      for (int cell = 0; cell < dirty.length; cell++) {
+         if (dirty[cell]) {
+            g.fillRect(cell % cellCols * CELL_SIZE, cell / cellCols * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+            drawn++;
+         }
+      }
+      g.setComposite(AlphaComposite.SrcOver);
+      if (thumbnails != null && drawn > 0) {
+         Piece[] pieces = board.getPieceArray();
+         PieceGrid grid = board.getPieceGrid();
+         int margin = board.getEffectMargin();
+         int span = (int)Math.ceil(CELL_SIZE / PieceThumbnails.SCALE);
+         // Thumbnail edges are rounded, so one can reach a pixel past its piece's bounds
+         int pad = (int)Math.ceil(1 / PieceThumbnails.SCALE);
+         Rectangle area = new Rectangle();
+         for (int cell = 0; cell < dirty.length; cell++) {
+            if (!dirty[cell]) {
+               continue;
+            }
+            int cellX = cell % cellCols * CELL_SIZE;
+            int cellY = cell / cellCols * CELL_SIZE;
+            area.setBounds(cell % cellCols * span - pad, cell / cellCols * span - pad, span + 2 * pad, span + 2 * pad);
+            int count = grid.find(area);
+            int[] found = grid.getFound();
+            g.setClip(cellX, cellY, CELL_SIZE, CELL_SIZE);
+            for (int i = count - 1; i >= 0; i--) {
+               int id = found[i];
+               Piece piece = pieces[id];
+               if (!piece.isVisible()) {
+                  continue;
+               }
+               int orientation = piece.getOrientation();
+               int width = orientation % 2 == 0 ? thumbnails.getWidth(id) : thumbnails.getHeight(id);
+               int height = orientation % 2 == 0 ? thumbnails.getHeight(id) : thumbnails.getWidth(id);
+               int x = (int)Math.floor((piece.getX() + margin) * PieceThumbnails.SCALE);
+               int y = (int)Math.floor((piece.getY() + margin) * PieceThumbnails.SCALE);
+               if (x < cellX + CELL_SIZE && y < cellY + CELL_SIZE && x + width > cellX && y + height > cellY) {
+                  thumbnails.draw(g, id, orientation, x, y);
+               }
+            }
+         }
+      }
+      g.dispose();
+      Arrays.fill(dirty, false);
+      repaint();
+      return drawn;
+   }
+
+  /**
+   * Returns roughly how many bytes the minimap keeps.
+   * @return the size of its backing image and dirty cells
+   */
+   public long getByteSize() {
+      return SpriteCache.spriteBytes(backing) + dirty.length;
+   }
+
+  /**
+   * Draws the backing image with a border, and an outline around the part of the board that is on screen.
+   * @param g the graphics to draw with
+   */
+   @Override
+   protected void paintComponent(Graphics g) {
+      g.drawImage(backing, 1, 1, null);
+      g.setColor(Color.GRAY);
+      g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+      Rectangle visible = board.getVisibleRect();
+      if (!visible.isEmpty()) {
+         g.setColor(VIEWPORT);
+         g.drawRect(1 + (int)Math.floor(visible.x * PieceThumbnails.SCALE), 1 + (int)Math.floor(visible.y * PieceThumbnails.SCALE),
+                    Math.max(1, (int)Math.ceil(visible.width * PieceThumbnails.SCALE) - 1),
+                    Math.max(1, (int)Math.ceil(visible.height * PieceThumbnails.SCALE) - 1));
+      }
+   }
+}
@@ -0,0 +1,246 @@
+import java.awt.*;
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import java.nio.channels.FileChannel;
+import java.awt.image.BufferedImage;
+
+/**
+* Holds every piece's masked image off the Java heap, so boards of tens of thousands of full-colour pieces
+* don't need a huge heap or make the garbage collector walk hundreds of megabytes of pixels during a drag.
+* Pixels are packed one piece after another, as ARGB ints, into direct buffers of up to
+* {@link OffHeapPieceStore#REGION_BYTES} each, or into regions of a memory-mapped temporary file so the
+* operating system can page them out. Only pieces that are actually painted are copied back onto the heap,
+* into the board's {@link SpriteCache}.
+* Pieces are written on whatever thread generates the {@link PieceSet} and each piece is only read once it
+* has been handed over.
+* @author Noah Brown
+*/
+public class OffHeapPieceStore {
+  /**
+   * The most bytes one region holds. Every piece's pixels fit in a single region.
+   */
+   private static final int REGION_BYTES = 64 * 1024 * 1024;
+
+  /**
+   * The regions pieces are packed into, in the order they were allocated. Copied on write, so the event thread
+   * can read pieces that are already in while later ones are still being put.
+   */
+   private CopyOnWriteArrayList<IntBuffer> regions;
+  /**
+   * Which region each piece is in, indexed by piece ID.
+   */
+   private int[] regionOf;
+  /**
+   * Where in its region each piece starts, in ints, indexed by piece ID.
+   */
+   private int[] offsets;
+  /**
+   * The width of each piece's image, indexed by piece ID.
+   */
+   private int[] widths;
+  /**
+   * The height of each piece's image, indexed by piece ID.
+   */
+   private int[] heights;
+  /**
+   * How many bytes of pieces haven't got a region yet, so the last region isn't bigger than it needs to be.
+   */
+   private long unallocatedBytes;
+  /**
+   * How many bytes of regions have been allocated.
+   */
+   private long allocatedBytes;
+  /**
+   * The file the regions are mapped from, or null if they are direct buffers.
+   */
+   private File mapFile;
+  /**
+   * The open channel to {@link OffHeapPieceStore#mapFile} while pieces are being written.
+   */
+   private FileChannel channel;
+  /**
+   * Pixels being copied in, reused from one piece to the next by the generating thread.
+   */
+   private int[] writeScratch;
+  /**
+   * Pixels being copied out, reused from one piece to the next by the event thread.
+   */
+   private int[] readScratch;
+  /**
+   * Whether the store has been closed and its pixels freed.
+   */
+   private boolean closed;
+
+  /**
+   * Creates an empty store with room for every piece of the given puzzle, sized from the piece bounds.
+   * @param geometry the shape of the puzzle
+   * @param mapped whether to map the regions from a temporary file instead of allocating direct buffers
+   * @throws java.io.IOException if the temporary file can't be created
+   */
+   public OffHeapPieceStore(PuzzleGeometry geometry, boolean mapped) throws IOException {
+      int pieceCount = geometry.getPieceCount();
+      regions = new CopyOnWriteArrayList<IntBuffer>();
+      regionOf = new int[pieceCount];
+      offsets = new int[pieceCount];
+      widths = new int[pieceCount];
+      heights = new int[pieceCount];
+      for (int piece = 0; piece < pieceCount; piece++) {
+         Rectangle bounds = geometry.getPieceBounds(geometry.row(piece), geometry.col(piece));
+         unallocatedBytes += 4L * bounds.width * bounds.height;
+      }
+      if (mapped) {
+         mapFile = File.createTempFile("jigsaw-pieces", ".bin");
+         mapFile.deleteOnExit();
+         channel = new RandomAccessFile(mapFile, "rw").getChannel();
+      }
+      writeScratch = new int[0];
+      readScratch = new int[0];
+   }
+
+  /**
+   * Copies a piece's masked image into the store. Pieces must each be put once.
+   * @param piece the piece's ID
+   * @param image the piece's masked image
+   * @throws java.io.IOException if a region of the mapped file can't be mapped
+   */
+   public void put(int piece, BufferedImage image) throws IOException {
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int length = width * height;
+      IntBuffer region = regions.isEmpty() ? null : regions.get(regions.size() - 1);
+      if (region == null || region.remaining() < length) {
+         region = allocate(Math.max(4L * length, Math.min(REGION_BYTES, unallocatedBytes)));
+      }
+      if (writeScratch.length < length) {
+         writeScratch = new int[length];
+      }
+      image.getRGB(0, 0, width, height, writeScratch, 0, width);
+      regionOf[piece] = regions.size() - 1;
+      offsets[piece] = region.position();
+      widths[piece] = width;
+      heights[piece] = height;
+      region.put(writeScratch, 0, length);
+      unallocatedBytes -= 4L * length;
+   }
+
+  /**
+   * Allocates a new region and makes it the one pieces are written to.
+   * @param bytes how big the region is
+   * @return the region
+   * @throws java.io.IOException if the region can't be mapped
+   */
+   private IntBuffer allocate(long bytes) throws IOException {
+      ByteBuffer buffer;
+      if (channel != null) {
+         buffer = channel.map(FileChannel.MapMode.READ_WRITE, allocatedBytes, bytes);
+      } else {
+         buffer = ByteBuffer.allocateDirect((int)bytes);
+      }
+      IntBuffer region = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+      regions.add(region);
+      allocatedBytes += bytes;
+      return region;
+   }
+
+  /**
+   * Closes the mapped file once every piece has been put. The regions stay mapped until they are garbage
+   * collected.
+   */
+   public void finish() {
+      if (channel != null) {
+         try {
+            channel.close();
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+         channel = null;
+      }
+   }
+
+  /**
+   * Frees the store once nothing will read from it again. Every region is dropped, so direct buffers are freed by
+   * the next garbage collection rather than whenever the store itself is collected, and the mapped file is
+   * deleted straight away instead of when the JVM exits. Reading a piece afterwards fails.
+   */
+   public void close() {
+      finish();
+      regions.clear();
+      allocatedBytes = 0;
+      closed = true;
+      if (mapFile != null) {
+         // Some platforms can't delete a file while it is still mapped; deleteOnExit still catches those
+         mapFile.delete();
+      }
+   }
+
+  /**
+   * Returns whether the store has been closed.
+   * @return {@link OffHeapPieceStore#closed}
+   */
+   public boolean isClosed() {
+      return closed;
+   }
+
+  /**
+   * Copies a piece's image back onto the heap. Only called from the event thread.
+   * @param piece the piece's ID
+   * @return a new image of the piece
+   */
+   public BufferedImage read(int piece) {
+      int width = widths[piece];
+      int height = heights[piece];
+      int length = width * height;
+      if (readScratch.length < length) {
+         readScratch = new int[length];
+      }
+      IntBuffer region = regions.get(regionOf[piece]).duplicate();
+      region.position(offsets[piece]);
+      region.get(readScratch, 0, length);
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      image.getRaster().setDataElements(0, 0, width, height, readScratch);
+      return image;
+   }
+
+  /**
+   * Returns the width of a piece's image.
+   * @param piece the piece's ID
+   * @return the width in pixels
+   */
+   public int getWidth(int piece) {
+      return widths[piece];
+   }
+
+  /**
+   * Returns the height of a piece's image.
+   * @param piece the piece's ID
+   * @return the height in pixels
+   */
+   public int getHeight(int piece) {
+      return heights[piece];
+   }
+
+  /**
+   * Returns whether the regions are mapped from a file.
+   * @return true if they are mapped, false if they are direct buffers
+   */
+   public boolean isMapped() {
+      return mapFile != null;
+   }
+
+  /**
+   * Returns how many bytes of regions have been allocated outside the heap.
+   * @return {@link OffHeapPieceStore#allocatedBytes}
+   */
+   public long getOffHeapBytes() {
+      return allocatedBytes;
+   }
+
+  /**
+   * Returns roughly how many bytes of heap the store takes up: its tables and scratch arrays, not the pixels.
+   * @return the size of the arrays it keeps
+   */
+   public long getHeapBytes() {
+      return 16L * regionOf.length + 4L * (writeScratch.length + readScratch.length);
+   }
+}
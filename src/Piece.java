@@ -1,399 +1,699 @@
-import java.awt.*;
-import java.awt.event.*;
-import java.util.*;
-import javax.swing.*;
-import javax.swing.border.*;
-import java.io.*;
-import java.awt.Image;
-import java.awt.image.BufferedImage;
-
-/**
- * The individual puzzle piece component. Can fuse with other puzzle pieces
- * (if appropriate) and move an image around the board when dragged with the
- * mouse.
- * @author Noah Brown
- */
-public class Piece extends JPanel {
-  /**
-   * The board as a whole. Used to access the global piece array.
-   */
-   private JigsawPuzzle fullPuzzle;
-  /**
-   * The image displayed over the piece.
-   */
-   private BufferedImage pieceImage;
-  /**
-   * The x-position of the mouse.
-   */
-   private int mouseX = 0;
-  /**
-   * The y-position of the mouse.
-   */
-   private int mouseY = 0;
-  /**
-   * The x-position of the piece.
-   */
-   private int pieceX;
-  /**
-   * The y-position of the piece.
-   */
-   private int pieceY;
-  /**
-   * The row the piece occupies in the global piece array.
-   */
-   private int puzzleRow;
-  /**
-   * The column the piece occupies in the global piece array.
-   */
-   private int puzzleCol;
-  /**
-   * The unique ID of the piece.
-   */
-   private int pieceID;
-  /**
-   * An array of all pieces that an instance of a piece object can connect to.
-   * Determined in {@link JigsawPuzzle#getAdjacentPieces}.
-   */
-   private Piece[] adjacentPieces;
-  /**
-   * A list of all pieces the piece is currently connected to.
-   * When the piece moves, all pieces in this list need to be updated by the same change in position.
-   */
-   private ArrayList<Piece> boundPieces;
-   
-  /**
-   * Constructor that places the pieces around the board instead of just at 0, 0.
-   * @param puzzle the puzzle board as a whole 
-   * @param xpos the x-position to initialize the piece at
-   * @param ypos the y-position to initialize the piece at
-   * @param width the width of the piece being initialized
-   * @param height the height of the piece being initialized
-   * @param id the unique ID of the piece. Used for checking if two pieces are the same.
-   */
-   public Piece(JigsawPuzzle puzzle, int xpos, int ypos, int width, int height, int id) {
-      this.pieceX = xpos;
-      this.pieceY = ypos;
-      this.pieceID = id;
-      this.fullPuzzle = puzzle;
-      this.boundPieces = new ArrayList<Piece>();
-      Piece[][] puzzleBoard = fullPuzzle.getPieceArray();
-      
-      
-      drawPiece(width, height);
-      setupControls();
-   }
-  
-  /* GENERALLY USEFUL METHODS: LINES 85 TO 156 */
-
-  /**
-   * Whenever the piece is painted, this method draws the image given by {@link Piece#pieceImage} over it.
-   * @param g the graphics object used for... graphics, probably
-   */
-   @Override
-   protected void paintComponent(Graphics g) {
-      super.paintComponent(g);
-      if (pieceImage != null) {
-         g.drawImage(pieceImage, 0, 0, this);
-      }
-   }
-   
-   
-  /**
-   * Sets the location of the piece on the board.
-   * @param x the top-left x coordinate of the piece
-   * @param y the top-left y coordinate of the piece
-   */ 
-   public void setPieceLocation(int x, int y) {
-      super.setLocation(x, y);
-      pieceX = getX();
-      pieceY = getY();
-   }
-   
-  /**
-   * Adds a mouse listener so the piece can be draggable.
-   * While this method is only called in initial setup, the mouse listener is constantly functioning.
-   */
-   public void setupControls() {
-      Piece[][] puzzleBoard = fullPuzzle.getPieceArray();
-      addMouseListener(new MouseAdapter() {
-         public void mousePressed(MouseEvent e) {
-            mouseX = e.getXOnScreen();
-            mouseY = e.getYOnScreen();
-            pieceX = getX();
-            pieceY = getY();
-         }
-         
-         public void mouseReleased(MouseEvent e) {
-            Rectangle bounds = returnBounds();
-            for (int i = 0; i < puzzleBoard.length; i++) {
-               for (int j = 0; j < puzzleBoard[0].length; j++) {
-                  if (bounds.intersects(puzzleBoard[i][j].getBounds())) {
-                     checkAdjacence(puzzleBoard[i][j]);
-                  }
-               }
-            }
-         }
-      });
-         
-      addMouseMotionListener(new MouseMotionAdapter() {
-         public void mouseDragged(MouseEvent e) {
-            int deltaX = e.getXOnScreen() - mouseX;
-            int deltaY = e.getYOnScreen() - mouseY;
-            
-            int oldPieceX = getX();
-            int oldPieceY = getY();
-            setLocation(pieceX + deltaX, pieceY + deltaY);
-            
-            int dx = getX() - oldPieceX;
-            int dy = getY() - oldPieceY;
-            
-            if (boundPieces.size() > 0) {
-               updateBoundPieces(dx, dy);
-            }
-         }
-      });
-   }
-  
-  /* END OF GENERALLY USEFUL METHODS 
-   * ADJACENCY AND BINDING METHODS: LINES 157 - 282 */ 
-  
-  /**
-   * Checks two intersecting pieces for adjacency. If the pieces are indeed adjacent in the global array,
-   * it adds the intersecting piece to the original's ArrayList and vice versa.
-   * @param intersecting the piece to check adjacence against
-   */ 
-   public void checkAdjacence(Piece intersecting) {
-      for (int i = 0; i < adjacentPieces.length; i++) {
-         if (adjacentPieces[i] != null) {
-            if (intersecting.getPieceID() == adjacentPieces[i].getPieceID()) {
-               
-               int oldX = getX();
-               int oldY = getY();
-               if (i == 0) { // Piece is above
-                  setPieceLocation(intersecting.getPieceX(), intersecting.getPieceY() + intersecting.getPieceImage().getHeight() - 10); 
-               } else if (i == 1) { // Piece is right
-                  setPieceLocation(intersecting.getPieceX() - pieceImage.getWidth() + 10, intersecting.getPieceY());
-               } else if (i == 2) { // Piece is below
-                  setPieceLocation(intersecting.getPieceX(), intersecting.getPieceY() - pieceImage.getHeight() + 10);
-               } else { // Piece is left
-                  setPieceLocation(intersecting.getPieceX() + intersecting.getPieceImage().getWidth() - 10, intersecting.getPieceY());
-               }
-               
-               if (boundPieces.size() > 0) {
-                  updateBoundPieces(getX() - oldX, getY() - oldY);
-               }
-
-               addBindingsNew(intersecting);
-               //checkBindDesyncs();
-            }
-         }     
-      }
-   }
-   
-  /**
-   * Functions by first adding the intersecting piece to the method caller's list of connected pieces, then adding every 
-   * piece the intersecting piece connects to to the method caller's list. Duplicates and the caller itself are removed
-   * from the caller's list. 
-   * Every piece in the caller's list is then sent the caller itself, and every item in the caller's list. All received
-   * objects are added to the receiver's list. Duplicates and the receiver itself are removed from the receiver's list.
-   * @param bindTo the intersecting piece as referred to above
-   */
-   public void addBindingsNew(Piece bindTo) {
-      boundPieces.add(bindTo);
-      if (bindTo.getBoundPieces().size() > 0) {
-         for (int i = 0; i < bindTo.getBoundPieces().size(); i++) {
-            boundPieces.add(bindTo.getBoundPieces().get(i));
-         }
-      }
-      boundPieces = sanitizeList(boundPieces);
-      
-      for (int i = 0; i < boundPieces.size(); i++) {
-         boundPieces.get(i).addBindingUnsafe(this);
-         for (int j = 0; j < boundPieces.size(); j++) {
-            boundPieces.get(i).addBindingUnsafe(boundPieces.get(j));
-         }
-         boundPieces.get(i).sanitizeList(boundPieces.get(i).getBoundPieces());
-      }
-   }
-   
-  /**
-   * Adds a given piece to this piece's binding list without sanitizing the list.
-   * This method is marked as unsafe because it does not sanitize the list after adding the piece.
-   * This can cause two problems: a duplicate in the list, or the piece itself existing as an item in its own list.
-   * Remember to call {@link Piece#sanitizeList} after running this to prevent these problems.
-   * @param bindTo the piece to add to the list of connected pieces
-   */
-   public void addBindingUnsafe(Piece bindTo) {
-      boundPieces.add(bindTo);
-   }
-   
-  /**
-   * Removes all duplicates and the method caller itself from a given list of objects. This is referred
-   * to as "sanitization."
-   * @param list the arrayList to sanitize
-   * @return the sanitized list
-   */
-   public ArrayList<Piece> sanitizeList(ArrayList<Piece> list) {
-      Set<Piece> tempSet = new HashSet<>(list);
-      list.clear();
-      list.addAll(tempSet);
-      
-      for (int i = list.size() - 1; i >= 0; i--) {
-         if (list.get(i).getPieceID() == pieceID) {
-            list.remove(i);
-         }
-      }
-      
-      return list;
-   }
-   
-  /**
-   * If a bug arises where some pieces aren't being correctly added to other's lists by {@link Piece#addBindingsNew}, 
-   * this method serves as a nuclear option to reset the problematic piece's list and start over. 
-   * The piece binding algorithm seems to work perfectly, but this method has been left in the code for if the need arises.
-   */
-   public void checkBindDesyncs() {
-      for (int i = 0; i < boundPieces.size(); i++) {
-         if (boundPieces.get(i).getBoundPieces().size() < boundPieces.size()) {
-            // oh god
-            // sound the alarms
-            Piece problemPiece = boundPieces.get(i);
-            problemPiece.addBindingUnsafe(this);
-            for (int j = 0; j < boundPieces.size(); j++) {
-               problemPiece.addBindingUnsafe(boundPieces.get(i));
-            }
-            problemPiece.sanitizeList(problemPiece.getBoundPieces());
-         }
-      }
-   }
-   
-  /**
-   * Updates the position of all pieces connected to the one that called the method.
-   * Uses the piece's ArrayList of bound pieces to determine which ones are connected.
-   * @param deltaX the amount of pixels to move all bound pieces left or right by
-   * @param deltaY the amount of pixels to move all bound pieces up or down by
-   */
-   public void updateBoundPieces(int deltaX, int deltaY) {
-      for (int i = 0; i < boundPieces.size(); i++) {
-         Piece currentBoundPiece = boundPieces.get(i);
-         currentBoundPiece.setPieceLocation(currentBoundPiece.getPieceX() + deltaX, currentBoundPiece.getPieceY() + deltaY);
-      }
-   }
-  
-  /* END OF ADJACENCY AND BINDING METHODS
-   * ACCESSOR METHODS: LINES 284 TO 350 */
-  
-  /**
-   * Returns the current x-coordinate of the piece.
-   * @return {@link Piece#pieceX}
-   */ 
-   public int getPieceX() {
-      return getX();
-   }
-   
-  /**
-   * Returns the current x-coordinate of the piece.
-   * @return {@link Piece#pieceY}
-   */ 
-   public int getPieceY() {
-      return getY();
-   }
-  
-  /**
-   * Returns the correct final row for the piece.
-   * @return {@link Piece#puzzleRow}
-   */  
-   public int getFinalRow() {
-      return this.puzzleRow;
-   }
-  
-  /**
-   * Returns the correct final column for the piece.
-   * @return {@link Piece#puzzleCol}
-   */
-   public int getFinalCol() {
-      return this.puzzleCol;
-   }
-  
-  /**
-   * Returns the list of currently bound pieces.
-   * @return {@link Piece#boundPieces}
-   */
-   public ArrayList<Piece> getBoundPieces() {
-      return boundPieces;
-   }   
-  
-  /**
-   * Returns the unique ID of the piece.
-   * @return {@link Piece#pieceID}
-   */
-   public int getPieceID() {
-      return pieceID;
-   }
-   
-  /**
-   * Returns the current bounds of the piece as a Rectangle object.
-   * @return {@link Piece#getBounds}
-   */
-   public Rectangle returnBounds() {
-      return getBounds();
-   }
-  
-  /**
-   * Returns the current image used for the piece.
-   * @return {@link Piece#pieceImage}
-   */
-   public BufferedImage getPieceImage() {
-      return pieceImage;
-   }   
-   
-  /* END OF ACCESSOR METHODS
-   * INITIAL SETUP METHODS: LINES 351 TO 397 */
-   
-  /**
-   * Sets {@link Piece#pieceImage} to the given BufferedImage.
-   * Only called in initial setup.
-   * @param image the image to set {@link Piece#pieceImage} to
-   */
-   public void setImage(BufferedImage image) {
-      this.pieceImage = image;
-      drawPiece(image.getWidth(), image.getHeight());
-      repaint();
-   }
-   
-  /**
-   * Adds all adjacent pieces to {@link Piece#adjacentPieces} at the appropriate indices.
-   * Only called in initial setup.
-   * @param adjacencies an array of pieces adjacent to this one in the global array to be copied into 
-   * the piece's array
-   */
-   public void setAdjacencies(Piece[] adjacencies) {
-      adjacentPieces = adjacencies;
-   }
-   
-  /**
-   * Adds the piece to the global array so later adjacency can be checked.
-   * Only called in initial setup.
-   * @param row the row of the global array to add the piece to
-   * @param col the column of the global array to add the piece to
-   */
-   public void setArrayPosition(int row, int col) {
-      this.puzzleRow = row;
-      this.puzzleCol = col;
-   }
-   
-  /** 
-   * Sets the bounds of the piece and makes it non-opaque. Actual visuals are done via {@link Piece#setImage}.
-   * Only called in initial setup.
-   * @param width the width of the piece
-   * @param height the height of the piece
-   */
-   public void drawPiece(int width, int height) {
-      setBackground(Color.WHITE);
-      setBounds(pieceX, pieceY, width, height);
-      setOpaque(false);
-   }
-   
-  /* END OF INITIAL SETUP METHODS
-     END OF FILE */
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import javax.swing.*;
+import javax.swing.border.*;
+import java.io.*;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+/**
+ * The individual puzzle piece component. Can fuse with other puzzle pieces
+ * (if appropriate) and move an image around the board when dragged with the
+ * mouse.
+ * @author Noah Brown
+ */
+public class Piece extends JPanel {
+  /**
+   * The board as a whole. Used to access the global piece array.
+   */
+   private JigsawPuzzle fullPuzzle;
+  /**
+   * The image displayed over the piece.
+   */
+   private BufferedImage pieceImage;
+  /**
+   * The shared puzzle image this piece is cut from. Only set for compact pieces, which have no
+   * {@link Piece#pieceImage} of their own.
+   */
+   private BufferedImage sourceImage;
+  /**
+   * The left edge of this piece's cutout in {@link Piece#sourceImage}.
+   */
+   private int sourceX;
+  /**
+   * The top edge of this piece's cutout in {@link Piece#sourceImage}.
+   */
+   private int sourceY;
+  /**
+   * The shared alpha cutout for compact pieces. Combined with {@link Piece#sourceImage} when painted.
+   */
+   private AlphaMask alphaMask;
+  /**
+   * The store holding this piece's masked image off the heap, or null if the piece keeps its image some other
+   * way. Its sprite is copied back onto the heap by the board's {@link SpriteCache} when painted.
+   */
+   private OffHeapPieceStore pixelStore;
+  /**
+   * The piece's shape, used for its shadow and outline. Set for every piece, compact or not.
+   */
+   private AlphaMask shapeMask;
+  /**
+   * The x-position of the mouse.
+   */
+   private int mouseX = 0;
+  /**
+   * The y-position of the mouse.
+   */
+   private int mouseY = 0;
+  /**
+   * The x-position of the piece.
+   */
+   private int pieceX;
+  /**
+   * The y-position of the piece.
+   */
+   private int pieceY;
+  /**
+   * The row the piece occupies in the global piece array.
+   */
+   private int puzzleRow;
+  /**
+   * The column the piece occupies in the global piece array.
+   */
+   private int puzzleCol;
+  /**
+   * The unique ID of the piece.
+   */
+   private int pieceID;
+  /**
+   * Whether the piece is outlined, e.g. because it was suggested by a hint.
+   */
+   private boolean highlighted;
+  /**
+   * How many quarter turns clockwise the piece is turned from the right way up, 0 to 3.
+   * Every piece in a cluster has the same orientation.
+   */
+   private int orientation;
+  /**
+   * Whether the piece is outlined because the cluster being dragged would snap to it if dropped.
+   */
+   private boolean snapPreview;
+   
+  /**
+   * Constructor that places the pieces around the board instead of just at 0, 0.
+   * @param puzzle the puzzle board as a whole 
+   * @param xpos the x-position to initialize the piece at
+   * @param ypos the y-position to initialize the piece at
+   * @param width the width of the piece being initialized
+   * @param height the height of the piece being initialized
+   * @param id the unique ID of the piece. Used for checking if two pieces are the same.
+   */
+   public Piece(JigsawPuzzle puzzle, int xpos, int ypos, int width, int height, int id) {
+      this.pieceX = xpos;
+      this.pieceY = ypos;
+      this.pieceID = id;
+      this.fullPuzzle = puzzle;
+      
+      drawPiece(width, height);
+      setupControls();
+   }
+  
+  /* GENERALLY USEFUL METHODS: LINES 85 TO 156 */
+
+  /**
+   * Whenever the piece is painted, this method draws the image given by {@link Piece#getPieceImage} over it,
+   * inside the margin left for its shadow. On a scaled screen it draws the sprite cut at the screen's scale
+   * instead, once the board has one, pixel for pixel. With effects on, the shadow and any outline are drawn
+   * underneath by the board; with them off, outlines are drawn as rectangles over the piece.
+   * @param g the graphics object used for... graphics, probably
+   */
+   @Override
+   protected void paintComponent(Graphics g) {
+      super.paintComponent(g);
+      int margin = fullPuzzle.getEffectMargin();
+      PieceSet scaled = fullPuzzle.getScaledPieces(fullPuzzle.getRenderScale(g));
+      if (scaled != null && (alphaMask != null || pixelStore != null || pieceImage != null)) {
+         SpriteCache.drawUnscaled((Graphics2D)g, fullPuzzle.getSpriteCache().get(this, scaled), margin, margin, 0);
+      } else {
+         BufferedImage image = getPieceImage();
+         if (image != null) {
+            g.drawImage(image, margin, margin, this);
+         }
+      }
+      if (margin == 0 && (highlighted || snapPreview)) {
+         g.setColor(snapPreview ? Color.GREEN : Color.YELLOW);
+         g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+         g.drawRect(1, 1, getWidth() - 3, getHeight() - 3);
+      }
+   }
+   
+  /**
+   * Turns the piece's outline on or off.
+   * @param highlight whether to outline the piece
+   */
+   public void setHighlighted(boolean highlight) {
+      if (highlighted != highlight) {
+         highlighted = highlight;
+         repaint();
+      }
+   }
+   
+  /**
+   * Only counts the piece itself as part of it, not the margin left around it for its shadow, so the shadow
+   * can't be grabbed.
+   * @param x the x-position to check, relative to the piece
+   * @param y the y-position to check, relative to the piece
+   * @return true if the position is on the piece
+   */
+   @Override
+   public boolean contains(int x, int y) {
+      int margin = fullPuzzle.getEffectMargin();
+      return x >= margin && y >= margin && x < getWidth() - margin && y < getHeight() - margin;
+   }
+   
+  /**
+   * Returns whether the piece is outlined by a hint.
+   * @return {@link Piece#highlighted}
+   */
+   public boolean isHighlighted() {
+      return highlighted;
+   }
+   
+  /**
+   * Returns whether the piece is outlined because the dragged cluster would snap to it.
+   * @return {@link Piece#snapPreview}
+   */
+   public boolean isSnapPreview() {
+      return snapPreview;
+   }
+   
+  /**
+   * Turns the snap preview outline on or off. Drawn in green, over any hint outline.
+   * @param preview whether the dragged cluster would snap to this piece
+   */
+   public void setSnapPreview(boolean preview) {
+      if (snapPreview != preview) {
+         snapPreview = preview;
+         repaint();
+      }
+   }
+   
+   
+  /**
+   * Sets the location of the piece on the board, and tells the board so the minimap can be updated.
+   * @param x the top-left x coordinate of the piece
+   * @param y the top-left y coordinate of the piece
+   */ 
+   public void setPieceLocation(int x, int y) {
+      int oldX = getX();
+      int oldY = getY();
+      super.setLocation(x, y);
+      pieceX = getX();
+      pieceY = getY();
+      fullPuzzle.pieceChanged(this, oldX, oldY, getWidth(), getHeight());
+   }
+   
+  /**
+   * Adds a mouse listener so the piece can be draggable.
+   * While this method is only called in initial setup, the mouse listener is constantly functioning.
+   */
+   public void setupControls() {
+      addMouseListener(new MouseAdapter() {
+         public void mousePressed(MouseEvent e) {
+            beginDrag(e.getXOnScreen(), e.getYOnScreen());
+         }
+         
+         public void mouseReleased(MouseEvent e) {
+            if (SwingUtilities.isRightMouseButton(e)) {
+               if (fullPuzzle.getOptions().isRotatePieces()) {
+                  turnCluster();
+               }
+               return;
+            }
+            endDrag();
+         }
+      });
+         
+      addMouseMotionListener(new MouseMotionAdapter() {
+         public void mouseDragged(MouseEvent e) {
+            if (SwingUtilities.isRightMouseButton(e)) {
+               return;
+            }
+            dragTo(e.getXOnScreen(), e.getYOnScreen());
+         }
+      });
+   }
+   
+  /**
+   * Picks the piece up: selects it and remembers where the drag started. Called when the mouse is pressed
+   * on the piece, or directly by {@link SoakTest}.
+   * @param screenX the x-position of the mouse on screen
+   * @param screenY the y-position of the mouse on screen
+   */
+   public void beginDrag(int screenX, int screenY) {
+      fullPuzzle.getArranger().finish();
+      fullPuzzle.setSelectedPiece(this);
+      mouseX = screenX;
+      mouseY = screenY;
+      pieceX = getX();
+      pieceY = getY();
+      fullPuzzle.getSnapIndex().beginDrag(pieceID);
+   }
+   
+  /**
+   * Moves the piece's cluster along with the mouse and updates the snap preview.
+   * @param screenX the x-position of the mouse on screen
+   * @param screenY the y-position of the mouse on screen
+   */
+   public void dragTo(int screenX, int screenY) {
+      int deltaX = screenX - mouseX;
+      int deltaY = screenY - mouseY;
+      
+      int oldPieceX = getX();
+      int oldPieceY = getY();
+      setLocation(pieceX + deltaX, pieceY + deltaY);
+      fullPuzzle.pieceChanged(this, oldPieceX, oldPieceY, getWidth(), getHeight());
+      
+      int dx = getX() - oldPieceX;
+      int dy = getY() - oldPieceY;
+      
+      updateBoundPieces(dx, dy);
+      fullPuzzle.showSnapPreview(fullPuzzle.getSnapIndex().findSnap());
+   }
+   
+  /**
+   * Drops the piece: records the drag as one undoable gesture and snaps the cluster to any neighbour
+   * it was dropped next to.
+   */
+   public void endDrag() {
+      fullPuzzle.showSnapPreview(-1);
+      CommandLog history = fullPuzzle.getHistory();
+      history.beginGroup();
+      history.recordMove(pieceID, getX() - pieceX, getY() - pieceY);
+      snapToNeighbours();
+   }
+  
+  /* END OF GENERALLY USEFUL METHODS 
+   * ADJACENCY AND BINDING METHODS: LINES 157 - 282 */ 
+  
+  /**
+   * Snaps this piece's cluster to every neighbour it was dropped or turned close enough to. The closest
+   * match is found with the board's {@link SnapIndex} and fused with {@link Piece#checkAdjacence}, and the
+   * cluster's open edges are collected again after each fuse, since lining up with one neighbour can
+   * line it up with others too.
+   */
+   public void snapToNeighbours() {
+      SnapIndex snapIndex = fullPuzzle.getSnapIndex();
+      snapIndex.beginDrag(pieceID);
+      for (int edge = snapIndex.findSnap(); edge >= 0; edge = snapIndex.findSnap()) {
+         Piece member = fullPuzzle.getPieceByID(edge / 4);
+         member.checkAdjacence(member.getAdjacentPiece(edge % 4));
+         snapIndex.beginDrag(pieceID);
+      }
+   }
+   
+  /**
+   * Turns this piece's cluster a quarter turn clockwise around this piece as one undoable gesture,
+   * then snaps it to any neighbour it now fits against.
+   */
+   public void turnCluster() {
+      CommandLog history = fullPuzzle.getHistory();
+      history.beginGroup();
+      fullPuzzle.rotateCluster(pieceID, 1);
+      history.recordRotate(pieceID, 1);
+      snapToNeighbours();
+   }
+  
+  /**
+   * Checks two intersecting pieces for adjacency. If the pieces are indeed adjacent in the global array,
+   * turned the same way and not already fused, it snaps this piece's cluster into place against the
+   * intersecting piece and fuses the two clusters.
+   * @param intersecting the piece to check adjacence against
+   */ 
+   public void checkAdjacence(Piece intersecting) {
+      if (intersecting.getOrientation() != orientation
+          || fullPuzzle.getClusters().connected(pieceID, intersecting.getPieceID())) {
+         return;
+      }
+      PuzzleGeometry geometry = fullPuzzle.getGeometry();
+      int cellSize = geometry.getCellSize();
+      for (int i = 0; i < 4; i++) {
+         if (geometry.neighbour(pieceID, i) == intersecting.getPieceID()) {
+            // Line this piece's square up one cell away from the neighbour's square, on the side the
+            // neighbour's edge faces once both pieces are turned
+            int facing = (i + orientation) % 4;
+            int dx = intersecting.getCellX() - PuzzleGeometry.SIDE_DX[facing] * cellSize - getCellX();
+            int dy = intersecting.getCellY() - PuzzleGeometry.SIDE_DY[facing] * cellSize - getCellY();
+            setPieceLocation(getX() + dx, getY() + dy);
+            updateBoundPieces(dx, dy);
+            fullPuzzle.getHistory().recordMove(pieceID, dx, dy);
+
+            addBindingsNew(intersecting);
+         }
+      }
+   }
+   
+  /**
+   * Returns the x-coordinate of the piece's square on the board, leaving out the buffer space for its left tab.
+   * @return the left edge of the piece's square
+   */
+   public int getCellX() {
+      return getX() + fullPuzzle.getEffectMargin() + getScreenSpace(3);
+   }
+   
+  /**
+   * Returns the y-coordinate of the piece's square on the board, leaving out the buffer space for its top tab.
+   * @return the top edge of the piece's square
+   */
+   public int getCellY() {
+      return getY() + fullPuzzle.getEffectMargin() + getScreenSpace(0);
+   }
+   
+  /**
+   * Returns the buffer space on one side of the piece as it is drawn, taking its orientation into account.
+   * @param side the side on screen, clockwise from the top
+   * @return the tab size of whichever of the piece's own sides is facing that way, or 0 for a border side
+   */
+   private int getScreenSpace(int side) {
+      return fullPuzzle.getGeometry().getSideSpace(pieceID, (side - orientation + 4) % 4);
+   }
+   
+  /**
+   * Moves or resizes the piece, and keeps the board's {@link PieceGrid} up to date. Every change to the piece's
+   * bounds comes through here, including {@link Piece#setLocation}.
+   * @param x the new x-position
+   * @param y the new y-position
+   * @param width the new width
+   * @param height the new height
+   */
+   @Override
+   public void setBounds(int x, int y, int width, int height) {
+      super.setBounds(x, y, width, height);
+      PieceGrid grid = fullPuzzle == null ? null : fullPuzzle.getPieceGrid();
+      if (grid != null) {
+         grid.update(pieceID, x, y, width, height);
+      }
+   }
+   
+  /**
+   * Turns the piece and moves it so its square's top-left corner ends up at the given spot. The piece's
+   * width and height swap on odd quarter turns. Its sprite isn't rebuilt here; the {@link SpriteCache} keeps
+   * one per orientation.
+   * @param quarterTurns the new orientation, in quarter turns clockwise from the right way up
+   * @param cellX where the left edge of the piece's square should go
+   * @param cellY where the top edge of the piece's square should go
+   */
+   public void setOrientation(int quarterTurns, int cellX, int cellY) {
+      int turns = ((quarterTurns % 4) + 4) % 4;
+      boolean swap = (turns + orientation) % 2 == 1;
+      int width = swap ? getHeight() : getWidth();
+      int height = swap ? getWidth() : getHeight();
+      orientation = turns;
+      int margin = fullPuzzle.getEffectMargin();
+      Rectangle old = getBounds();
+      setBounds(cellX - margin - getScreenSpace(3), cellY - margin - getScreenSpace(0), width, height);
+      pieceX = getX();
+      pieceY = getY();
+      fullPuzzle.pieceChanged(this, old.x, old.y, old.width, old.height);
+      repaint();
+   }
+   
+  /**
+   * Fuses this piece's cluster with the cluster of the given piece, and records the fuse so it can be undone.
+   * See {@link JigsawPuzzle#bindPieces}.
+   * @param bindTo the piece to fuse with
+   */
+   public void addBindingsNew(Piece bindTo) {
+      fullPuzzle.bindPieces(pieceID, bindTo.getPieceID());
+   }
+   
+  /**
+   * Updates the position of all pieces connected to the one that called the method.
+   * Walks the piece's cluster in {@link JigsawPuzzle#getClusters} to determine which ones are connected.
+   * @param deltaX the amount of pixels to move all bound pieces left or right by
+   * @param deltaY the amount of pixels to move all bound pieces up or down by
+   */
+   public void updateBoundPieces(int deltaX, int deltaY) {
+      if (deltaX == 0 && deltaY == 0) {
+         return;
+      }
+      PieceClusters clusters = fullPuzzle.getClusters();
+      for (int id = clusters.next(pieceID); id != pieceID; id = clusters.next(id)) {
+         Piece currentBoundPiece = fullPuzzle.getPieceByID(id);
+         currentBoundPiece.setPieceLocation(currentBoundPiece.getPieceX() + deltaX, currentBoundPiece.getPieceY() + deltaY);
+      }
+   }
+  
+  /* END OF ADJACENCY AND BINDING METHODS
+   * ACCESSOR METHODS: LINES 284 TO 350 */
+  
+  /**
+   * Returns the current x-coordinate of the piece.
+   * @return {@link Piece#pieceX}
+   */ 
+   public int getPieceX() {
+      return getX();
+   }
+   
+  /**
+   * Returns the current x-coordinate of the piece.
+   * @return {@link Piece#pieceY}
+   */ 
+   public int getPieceY() {
+      return getY();
+   }
+  
+  /**
+   * Returns the correct final row for the piece.
+   * @return {@link Piece#puzzleRow}
+   */  
+   public int getFinalRow() {
+      return this.puzzleRow;
+   }
+  
+  /**
+   * Returns the correct final column for the piece.
+   * @return {@link Piece#puzzleCol}
+   */
+   public int getFinalCol() {
+      return this.puzzleCol;
+   }
+  
+  /**
+   * Returns a new list of the pieces currently fused to this one, not including itself.
+   * @return the other members of this piece's cluster
+   */
+   public ArrayList<Piece> getBoundPieces() {
+      ArrayList<Piece> boundPieces = new ArrayList<Piece>();
+      PieceClusters clusters = fullPuzzle.getClusters();
+      for (int id = clusters.next(pieceID); id != pieceID; id = clusters.next(id)) {
+         boundPieces.add(fullPuzzle.getPieceByID(id));
+      }
+      return boundPieces;
+   }   
+  
+  /**
+   * Returns the piece that belongs on the given side of this one.
+   * @param side the side, clockwise from the top
+   * @return the adjacent piece, or null if this side is on the border of the puzzle
+   */
+   public Piece getAdjacentPiece(int side) {
+      int neighbour = fullPuzzle.getGeometry().neighbour(pieceID, side);
+      if (neighbour < 0) {
+         return null;
+      }
+      return fullPuzzle.getPieceByID(neighbour);
+   }
+  
+  /**
+   * Returns the unique ID of the piece.
+   * @return {@link Piece#pieceID}
+   */
+   public int getPieceID() {
+      return pieceID;
+   }
+   
+  /**
+   * Returns the current bounds of the piece as a Rectangle object.
+   * @return {@link Piece#getBounds}
+   */
+   public Rectangle returnBounds() {
+      return getBounds();
+   }
+  
+  /**
+   * Returns the current image used for the piece. Compact, off-heap and turned pieces get theirs from the
+   * board's {@link SpriteCache}, so the returned image shouldn't be held on to.
+   * @return {@link Piece#pieceImage}, or the cached sprite for a compact, off-heap or turned piece
+   */
+   public BufferedImage getPieceImage() {
+      if (alphaMask == null && pixelStore == null && (orientation == 0 || pieceImage == null)) {
+         return pieceImage;
+      }
+      return fullPuzzle.getSpriteCache().get(this);
+   }   
+  
+  /**
+   * Returns the piece's own image the right way up, without going through the sprite cache.
+   * @return {@link Piece#pieceImage}, or null for a compact piece
+   */
+   public BufferedImage getUprightImage() {
+      return pieceImage;
+   }
+  
+  /**
+   * Returns how far the piece is turned.
+   * @return {@link Piece#orientation}
+   */
+   public int getOrientation() {
+      return orientation;
+   }
+  
+  /**
+   * Returns the shared puzzle image a compact piece is cut from.
+   * @return {@link Piece#sourceImage}
+   */
+   public BufferedImage getSourceImage() {
+      return sourceImage;
+   }
+  
+  /**
+   * Returns the left edge of a compact piece's cutout in the shared puzzle image.
+   * @return {@link Piece#sourceX}
+   */
+   public int getSourceX() {
+      return sourceX;
+   }
+  
+  /**
+   * Returns the top edge of a compact piece's cutout in the shared puzzle image.
+   * @return {@link Piece#sourceY}
+   */
+   public int getSourceY() {
+      return sourceY;
+   }
+  
+  /**
+   * Returns the shared alpha cutout of a compact piece.
+   * @return {@link Piece#alphaMask}, or null if the piece has its own image
+   */
+   public AlphaMask getAlphaMask() {
+      return alphaMask;
+   }
+  
+  /**
+   * Returns the store holding the piece's image off the heap.
+   * @return {@link Piece#pixelStore}, or null if the piece keeps its image some other way
+   */
+   public OffHeapPieceStore getPixelStore() {
+      return pixelStore;
+   }
+  
+  /**
+   * Returns the piece's shape, which its shadow and outline are built from.
+   * @return {@link Piece#shapeMask}, or null if the piece hasn't been generated yet
+   */
+   public AlphaMask getShapeMask() {
+      return shapeMask;
+   }
+   
+  /* END OF ACCESSOR METHODS
+   * INITIAL SETUP METHODS: LINES 351 TO 397 */
+   
+  /**
+   * Sets {@link Piece#pieceImage} to the given BufferedImage.
+   * Only called in initial setup.
+   * @param image the image to set {@link Piece#pieceImage} to
+   */
+   public void setImage(BufferedImage image) {
+      this.pieceImage = image;
+      this.sourceImage = null;
+      this.alphaMask = null;
+      this.pixelStore = null;
+      fullPuzzle.getSpriteCache().invalidate(this);
+      drawPiece(image.getWidth(), image.getHeight());
+      repaint();
+   }
+   
+  /**
+   * Makes this a compact piece: instead of holding its own masked image, it keeps a reference to the shared
+   * puzzle image and a shared alpha mask, and its sprite is built by the board's {@link SpriteCache} when painted.
+   * Only called in initial setup.
+   * @param source the shared puzzle image
+   * @param x the left edge of the piece's cutout in the puzzle image
+   * @param y the top edge of the piece's cutout in the puzzle image
+   * @param mask the shared alpha mask for the piece
+   */
+   public void setCompactImage(BufferedImage source, int x, int y, AlphaMask mask) {
+      this.pieceImage = null;
+      this.sourceImage = source;
+      this.sourceX = x;
+      this.sourceY = y;
+      this.alphaMask = mask;
+      this.shapeMask = mask;
+      this.pixelStore = null;
+      fullPuzzle.getSpriteCache().invalidate(this);
+      drawPiece(mask.getWidth(), mask.getHeight());
+      repaint();
+   }
+   
+  /**
+   * Makes this an off-heap piece: its masked image stays in the given store, and is copied onto the heap by
+   * the board's {@link SpriteCache} only while the piece is being painted.
+   * Only called in initial setup.
+   * @param store the store holding the piece's masked image
+   * @param shape the piece's shared mask, for its shadow and outline
+   */
+   public void setStoredImage(OffHeapPieceStore store, AlphaMask shape) {
+      this.pieceImage = null;
+      this.sourceImage = null;
+      this.alphaMask = null;
+      this.pixelStore = store;
+      this.shapeMask = shape;
+      fullPuzzle.getSpriteCache().invalidate(this);
+      drawPiece(store.getWidth(pieceID), store.getHeight(pieceID));
+      repaint();
+   }
+   
+  /**
+   * Adds the piece to the global array so later adjacency can be checked.
+   * Only called in initial setup.
+   * @param row the row of the global array to add the piece to
+   * @param col the column of the global array to add the piece to
+   */
+   public void setArrayPosition(int row, int col) {
+      this.puzzleRow = row;
+      this.puzzleCol = col;
+   }
+   
+  /**
+   * Sets the shape a piece with its own image uses for its shadow and outline. Compact pieces get theirs from
+   * {@link Piece#setCompactImage}.
+   * Only called in initial setup.
+   * @param mask the piece's shared mask
+   */
+   public void setShapeMask(AlphaMask mask) {
+      this.shapeMask = mask;
+   }
+   
+  /**
+   * Sets which way the piece starts out turned, before its image has been generated. The turned size is
+   * applied by {@link Piece#drawPiece} once the image arrives.
+   * Only called in initial setup.
+   * @param quarterTurns how many quarter turns clockwise from the right way up, 0 to 3
+   */
+   public void setStartingOrientation(int quarterTurns) {
+      this.orientation = quarterTurns;
+   }
+   
+  /** 
+   * Sets the bounds of the piece and makes it non-opaque. Actual visuals are done via {@link Piece#setImage}.
+   * The bounds include the board's effect margin on every side.
+   * Only called in initial setup.
+   * @param width the width of the piece the right way up
+   * @param height the height of the piece the right way up
+   */
+   public void drawPiece(int width, int height) {
+      int margin = fullPuzzle.getEffectMargin();
+      width += 2 * margin;
+      height += 2 * margin;
+      boolean turned = orientation % 2 == 1;
+      setBackground(Color.WHITE);
+      setBounds(pieceX, pieceY, turned ? height : width, turned ? width : height);
+      setOpaque(false);
+   }
+   
+  /* END OF INITIAL SETUP METHODS
+     END OF FILE */
 }
\ No newline at end of file
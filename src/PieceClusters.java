@@ -0,0 +1,137 @@
+/**
+* Keeps track of which pieces are fused together. Every piece belongs to exactly one cluster, starting out
+* on its own. Clusters are a union-find over piece IDs (union by size, no path compression) plus a circular
+* linked list of members, so fusing two clusters and undoing the most recent fuse are both constant time
+* apart from the root lookups, and a cluster's members can be walked without building a list.
+* @author Noah Brown
+*/
+public class PieceClusters {
+  /**
+   * The parent of every piece in the union-find tree. A piece that is its own parent is the root of its cluster.
+   */
+   private int[] parent;
+  /**
+   * The number of pieces in each cluster, only meaningful for roots.
+   */
+   private int[] size;
+  /**
+   * The next member of each piece's cluster. Following it from any piece visits every member once and
+   * comes back around to where it started.
+   */
+   private int[] next;
+
+  /**
+   * Starts every piece in a cluster of its own.
+   * @param pieceCount the number of pieces, whose IDs run from 0 to pieceCount - 1
+   */
+   public PieceClusters(int pieceCount) {
+      parent = new int[pieceCount];
+      size = new int[pieceCount];
+      next = new int[pieceCount];
+      for (int i = 0; i < pieceCount; i++) {
+         parent[i] = i;
+         size[i] = 1;
+         next[i] = i;
+      }
+   }
+
+  /**
+   * Returns the root of the cluster the given piece belongs to. Two pieces are fused exactly when
+   * they have the same root.
+   * @param piece the ID of the piece
+   * @return the ID of the cluster's root
+   */
+   public int find(int piece) {
+      while (parent[piece] != piece) {
+         piece = parent[piece];
+      }
+      return piece;
+   }
+
+  /**
+   * Returns whether the two pieces are in the same cluster.
+   * @param a the ID of one piece
+   * @param b the ID of the other piece
+   * @return true if they are fused, directly or through other pieces
+   */
+   public boolean connected(int a, int b) {
+      return find(a) == find(b);
+   }
+
+  /**
+   * Fuses the clusters of the two given pieces. The smaller cluster is hung under the root of the larger one.
+   * @param a the ID of one piece
+   * @param b the ID of the other piece
+   * @return the root of the cluster that was hung under the other, which {@link PieceClusters#split} needs
+   * to undo this, or -1 if the pieces were already in the same cluster
+   */
+   public int union(int a, int b) {
+      int rootA = find(a);
+      int rootB = find(b);
+      if (rootA == rootB) {
+         return -1;
+      }
+      if (size[rootA] < size[rootB]) {
+         int temp = rootA;
+         rootA = rootB;
+         rootB = temp;
+      }
+      parent[rootB] = rootA;
+      size[rootA] += size[rootB];
+      swapNext(a, b);
+      return rootB;
+   }
+
+  /**
+   * Undoes a call to {@link PieceClusters#union}. Only works if every union made after it has already been
+   * undone, which is always the case when undoing in order.
+   * @param a the first piece given to the union
+   * @param b the second piece given to the union
+   * @param child the value returned by the union
+   */
+   public void split(int a, int b, int child) {
+      int root = parent[child];
+      size[root] -= size[child];
+      parent[child] = child;
+      // Swapping the same two links again cuts the merged circle back into the original two
+      swapNext(a, b);
+   }
+
+  /**
+   * Swaps the next links of two pieces. If they are in different circles this joins them into one,
+   * and if they are in the same circle it cuts it in two.
+   * @param a the ID of one piece
+   * @param b the ID of the other piece
+   */
+   private void swapNext(int a, int b) {
+      int temp = next[a];
+      next[a] = next[b];
+      next[b] = temp;
+   }
+
+  /**
+   * Returns the next member of the given piece's cluster.
+   * @param piece the ID of the piece
+   * @return the ID of the next member, or the piece itself if it's on its own
+   */
+   public int next(int piece) {
+      return next[piece];
+   }
+
+  /**
+   * Returns how many pieces are in the given piece's cluster.
+   * @param piece the ID of the piece
+   * @return the size of its cluster, including itself
+   */
+   public int clusterSize(int piece) {
+      return size[find(piece)];
+   }
+
+  /**
+   * Returns the number of pieces being tracked.
+   * @return the length of {@link PieceClusters#parent}
+   */
+   public int pieceCount() {
+      return parent.length;
+   }
+}
@@ -0,0 +1,196 @@
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+* Keeps track of which pieces lie over which parts of the board, so painting an area only looks at the pieces
+* that can be in it rather than at every piece on the board. The board is divided into square cells about one
+* piece across, each holding the IDs of the pieces whose bounds touch it, so a piece is in at most a handful of
+* cells. A piece's cells are worked out again whenever its bounds change, and it is only moved between cells
+* when they differ, so most steps of a drag cost nothing here.
+* Pieces outside the board are kept in the cells along its edges.
+* @author Noah Brown
+*/
+public class PieceGrid {
+  /**
+   * How many pixels each cell covers, across and down.
+   */
+   private int cellSize;
+  /**
+   * The number of columns of cells.
+   */
+   private int cols;
+  /**
+   * The number of rows of cells.
+   */
+   private int rows;
+  /**
+   * The IDs of the pieces in each cell, row by row. Only the first {@link PieceGrid#cellCounts} of each are used.
+   */
+   private int[][] cellPieces;
+  /**
+   * How many pieces are in each cell.
+   */
+   private int[] cellCounts;
+  /**
+   * The first column, first row, last column and last row of the cells each piece is in, four ints per
+   * piece ID. The first column is -1 for a piece that isn't in the grid yet.
+   */
+   private int[] spans;
+  /**
+   * The query each piece was last found by, so a piece in several cells is only found once.
+   */
+   private int[] seen;
+  /**
+   * Counts queries, for {@link PieceGrid#seen}.
+   */
+   private int query;
+  /**
+   * The pieces found by the last query.
+   */
+   private int[] found;
+
+  /**
+   * Creates an empty grid over a board.
+   * @param boardWidth the width of the board
+   * @param boardHeight the height of the board
+   * @param cell how many pixels each cell covers, about the size of a piece
+   * @param pieceCount how many pieces there are
+   */
+   public PieceGrid(int boardWidth, int boardHeight, int cell, int pieceCount) {
+      cellSize = Math.max(1, cell);
+      cols = Math.max(1, (boardWidth + cellSize - 1) / cellSize);
+      rows = Math.max(1, (boardHeight + cellSize - 1) / cellSize);
+      cellPieces = new int[cols * rows][];
+      cellCounts = new int[cols * rows];
+      spans = new int[pieceCount * 4];
+      for (int piece = 0; piece < pieceCount; piece++) {
+         spans[piece * 4] = -1;
+      }
+      seen = new int[pieceCount];
+      found = new int[16];
+   }
+
+  /**
+   * Moves a piece to the cells under its new bounds.
+   * @param piece the piece's ID
+   * @param x the left edge of the piece's bounds
+   * @param y the top edge of the piece's bounds
+   * @param width the width of the piece's bounds
+   * @param height the height of the piece's bounds
+   */
+   public void update(int piece, int x, int y, int width, int height) {
+      int col0 = col(x);
+      int row0 = row(y);
+      int col1 = col(x + Math.max(1, width) - 1);
+      int row1 = row(y + Math.max(1, height) - 1);
+      int span = piece * 4;
+      if (spans[span] == col0 && spans[span + 1] == row0 && spans[span + 2] == col1 && spans[span + 3] == row1) {
+         return;
+      }
+      if (spans[span] >= 0) {
+         for (int row = spans[span + 1]; row <= spans[span + 3]; row++) {
+            for (int col = spans[span]; col <= spans[span + 2]; col++) {
+               remove(row * cols + col, piece);
+            }
+         }
+      }
+      for (int row = row0; row <= row1; row++) {
+         for (int col = col0; col <= col1; col++) {
+            add(row * cols + col, piece);
+         }
+      }
+      spans[span] = col0;
+      spans[span + 1] = row0;
+      spans[span + 2] = col1;
+      spans[span + 3] = row1;
+   }
+
+  /**
+   * Returns the column of cells an x-coordinate falls in, clamped to the grid.
+   * @param x the x-coordinate on the board
+   * @return the column
+   */
+   private int col(int x) {
+      return Math.max(0, Math.min(cols - 1, Math.floorDiv(x, cellSize)));
+   }
+
+  /**
+   * Returns the row of cells a y-coordinate falls in, clamped to the grid.
+   * @param y the y-coordinate on the board
+   * @return the row
+   */
+   private int row(int y) {
+      return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, cellSize)));
+   }
+
+  /**
+   * Adds a piece to a cell.
+   * @param cell the cell, row by row
+   * @param piece the piece's ID
+   */
+   private void add(int cell, int piece) {
+      int[] list = cellPieces[cell];
+      if (list == null) {
+         list = new int[4];
+      } else if (cellCounts[cell] == list.length) {
+         list = Arrays.copyOf(list, list.length * 2);
+      }
+      list[cellCounts[cell]++] = piece;
+      cellPieces[cell] = list;
+   }
+
+  /**
+   * Takes a piece out of a cell, moving the cell's last piece into its place.
+   * @param cell the cell, row by row
+   * @param piece the piece's ID
+   */
+   private void remove(int cell, int piece) {
+      int[] list = cellPieces[cell];
+      for (int i = 0; i < cellCounts[cell]; i++) {
+         if (list[i] == piece) {
+            list[i] = list[--cellCounts[cell]];
+            return;
+         }
+      }
+   }
+
+  /**
+   * Finds every piece in the cells an area touches, in order of ID. They can be read from
+   * {@link PieceGrid#getFound} until the next query. Pieces near the area but not in it can be found too, so
+   * callers still check each piece's bounds.
+   * @param area the area of the board
+   * @return how many pieces were found
+   */
+   public int find(Rectangle area) {
+      query++;
+      int count = 0;
+      int col1 = col(area.x + Math.max(1, area.width) - 1);
+      int row1 = row(area.y + Math.max(1, area.height) - 1);
+      for (int row = row(area.y); row <= row1; row++) {
+         for (int col = col(area.x); col <= col1; col++) {
+            int cell = row * cols + col;
+            for (int i = 0; i < cellCounts[cell]; i++) {
+               int piece = cellPieces[cell][i];
+               if (seen[piece] == query) {
+                  continue;
+               }
+               seen[piece] = query;
+               if (count == found.length) {
+                  found = Arrays.copyOf(found, count * 2);
+               }
+               found[count++] = piece;
+            }
+         }
+      }
+      Arrays.sort(found, 0, count);
+      return count;
+   }
+
+  /**
+   * Returns the pieces found by the last call to {@link PieceGrid#find}.
+   * @return {@link PieceGrid#found}, of which only the first few are valid
+   */
+   public int[] getFound() {
+      return found;
+   }
+}
@@ -0,0 +1,190 @@
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.*;
+
+/**
+* Runs the image splitting and masking pipeline off the Swing event thread so the board can be shown
+* before any piece images exist. The pieces come from the board's {@link PuzzleLibrary}, acquired for the board
+* as soon as they are found so they can't be evicted before they are dealt: if the set is
+* generated here, each piece is handed to the board as soon as its mask has been applied, and if it was
+* already being prefetched the loader waits for it and deals every piece at once. The progress bar is
+* advanced as pieces come in. Pieces are cut in memory, so nothing is written to the Resources folder.
+* @author Noah Brown
+*/
+public class PieceLoader extends SwingWorker<Void, Integer> {
+  /**
+   * The board the finished pieces are published to.
+   */
+   private JigsawPuzzle board;
+  /**
+   * Where the piece sets come from, and where the finished set is cached.
+   */
+   private PuzzleLibrary library;
+  /**
+   * The image the puzzle is being cut from.
+   */
+   private File puzzleImage;
+  /**
+   * The shape of the puzzle being cut, read from the board when the loader is made so a later
+   * {@link JigsawPuzzle#switchPuzzle} can't change it under the background thread.
+   */
+   private PuzzleGeometry geometry;
+  /**
+   * The progress bar shown on the board while pieces are still being generated.
+   */
+   private JProgressBar progressBar;
+  /**
+   * How many pieces have been published to the board so far. Only touched on the event thread.
+   */
+   private int loadedCount;
+  /**
+   * Which pieces have been published to the board so far, indexed by piece ID. Only touched on the event thread.
+   */
+   private boolean[] shown;
+  /**
+   * How the pieces' images are kept, as in {@link PieceSet#getStorage}.
+   */
+   private int pieceStorage;
+  /**
+   * The set the published pieces are taken from. Set on the background thread before the first piece is
+   * published.
+   */
+   private volatile PieceSet pieceSet;
+  /**
+   * The set acquired from the library for the board, until it has been handed to the board or released.
+   * Guarded by the loader's lock, since the loader can be cancelled while the background thread acquires it.
+   */
+   private PieceSet held;
+
+  /**
+   * Creates a loader for the given board's current puzzle. Must be called on the event thread. Nothing happens
+   * until {@link SwingWorker#execute} is called.
+   * @param puzzle the board to publish pieces to
+   * @param puzzleLibrary the library to get the piece set from
+   * @param image the image the puzzle is being cut from
+   * @param progress the progress bar to advance as pieces are published
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   */
+   public PieceLoader(JigsawPuzzle puzzle, PuzzleLibrary puzzleLibrary, File image, JProgressBar progress, int storage) {
+      this.board = puzzle;
+      this.library = puzzleLibrary;
+      this.puzzleImage = image;
+      this.geometry = puzzle.getGeometry();
+      this.progressBar = progress;
+      this.loadedCount = 0;
+      this.shown = new boolean[geometry.getPieceCount()];
+      this.pieceStorage = storage;
+   }
+
+  /**
+   * Gets the board's piece set from the library, publishing the index of each piece as soon as it is ready.
+   * Runs on a background thread, so nothing in here may touch Swing components.
+   * @return nothing
+   * @throws Exception if the image or one of the masks can't be read
+   */
+   @Override
+   protected Void doInBackground() throws Exception {
+      PieceSet finished = library.acquire(puzzleImage, geometry, pieceStorage, new PieceSet.Listener() {
+         public void pieceReady(PieceSet pieces, int index) {
+            pieceSet = pieces;
+            publish(index);
+         }
+      });
+      synchronized (this) {
+         held = finished;
+         if (isCancelled()) {
+            // done() may already have run, so the set has to be given back here
+            releaseHeld();
+            return null;
+         }
+      }
+      if (pieceSet == null) {
+         // The set was cached or prefetched, so nothing has been published yet
+         pieceSet = finished;
+         for (int index = 0; index < finished.getGeometry().getPieceCount(); index++) {
+            publish(index);
+         }
+      }
+      return null;
+   }
+
+  /**
+   * Hands a batch of finished pieces to the board. Runs on the event thread. Does nothing once the board
+   * has moved on to another puzzle.
+   * @param chunk the indices of the pieces finished since the last call
+   */
+   @Override
+   protected void process(List<Integer> chunk) {
+      if (isCancelled()) {
+         return;
+      }
+      for (int index : chunk) {
+         show(index);
+      }
+      progressBar.setValue(loadedCount);
+   }
+
+  /**
+   * Gives a piece its images and shows it, unless it has already been shown.
+   * @param index the piece's ID
+   */
+   private void show(int index) {
+      if (shown[index]) {
+         return;
+      }
+      Piece piece = board.getPieceByID(index);
+      pieceSet.applyTo(piece);
+      piece.setVisible(true);
+      shown[index] = true;
+      loadedCount++;
+   }
+
+  /**
+   * Shows any pieces whose last batch hasn't been processed yet and tells the board every piece is in. If
+   * anything went wrong in the background the progress bar shows the error instead, and the board is told there
+   * is no set rather than being handed the half-built one. Once the board has moved on to another puzzle, the
+   * set is only given back to the library.
+   */
+   @Override
+   protected void done() {
+      if (isCancelled()) {
+         synchronized (this) {
+            releaseHeld();
+         }
+         return;
+      }
+      try {
+         get();
+      } catch (Exception e) {
+         e.printStackTrace();
+         Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+         progressBar.setString("Couldn't load the puzzle: " + cause.getMessage());
+         synchronized (this) {
+            releaseHeld();
+         }
+         board.piecesLoaded(null);
+         return;
+      }
+      // Published pieces are handed over in batches on a timer, so the last batch may still be queued
+      for (int index = 0; index < shown.length; index++) {
+         show(index);
+      }
+      progressBar.setValue(loadedCount);
+      synchronized (this) {
+         held = null;
+      }
+      board.piecesLoaded(pieceSet);
+   }
+
+  /**
+   * Gives the acquired set back to the library, if the loader still holds one. Must be called while holding
+   * the loader's lock.
+   */
+   private void releaseHeld() {
+      if (held != null) {
+         library.release(held);
+         held = null;
+      }
+   }
+}
@@ -0,0 +1,333 @@
+import java.awt.*;
+import java.io.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Everything the image splitting and masking pipeline produces for one puzzle: the resized puzzle image, each
+* piece's alpha mask or masked image, the edge index used for hints, the colour index used to filter and sort
+* pieces, and the thumbnails the minimap is drawn from. A board can be dealt from a finished set without
+* touching the pipeline again, which is what lets {@link PuzzleLibrary} cache and prefetch them.
+* Masked images can be kept on the heap, or off it in an {@link OffHeapPieceStore} for very large boards.
+* A set can also be cut at a display's scale, with a bigger puzzle image and bigger masks, so pieces can be
+* drawn pixel for pixel on a HiDPI screen; those sets only hold the compact pieces used for drawing, and no
+* indexes or thumbnails.
+* The set is filled in on whatever thread generates it and only read once it has been handed over.
+* @author Noah Brown
+*/
+public class PieceSet {
+  /**
+   * Told about each piece as soon as it has been generated, so a board can show pieces before the whole
+   * set is done.
+   */
+   public interface Listener {
+     /**
+      * Called on the generating thread once the given piece is ready.
+      * @param pieces the set being generated
+      * @param index the index of the piece that is ready
+      */
+      void pieceReady(PieceSet pieces, int index);
+   }
+
+  /**
+   * Pieces share the puzzle image and get an {@link AlphaMask} each, and their sprites are built when painted.
+   */
+   public static final int COMPACT = 0;
+  /**
+   * Every piece gets its own masked image on the heap.
+   */
+   public static final int HEAP = 1;
+  /**
+   * Every piece's masked image is kept off the heap, in direct buffers.
+   */
+   public static final int DIRECT = 2;
+  /**
+   * Every piece's masked image is kept off the heap, in a memory-mapped temporary file.
+   */
+   public static final int MAPPED = 3;
+
+  /**
+   * The image the puzzle was cut from.
+   */
+   private File imageFile;
+  /**
+   * The shape of the puzzle.
+   */
+   private PuzzleGeometry geometry;
+  /**
+   * How many of the set's pixels there are to each pixel of the puzzle's shape.
+   */
+   private double scale;
+  /**
+   * How the pieces' images are kept: {@link PieceSet#COMPACT}, {@link PieceSet#HEAP}, {@link PieceSet#DIRECT}
+   * or {@link PieceSet#MAPPED}.
+   */
+   private int storage;
+  /**
+   * The puzzle image resized to the finished puzzle's size, shared by every compact piece. Dropped once an
+   * off-heap set has been generated, since nothing is cut from it after that.
+   */
+   private BufferedImage source;
+  /**
+   * Each piece's shared alpha mask, indexed by piece ID. Kept for full-colour pieces too, for their shadows.
+   */
+   private AlphaMask[] masks;
+  /**
+   * The area of {@link PieceSet#source} each piece is cut from, indexed by piece ID.
+   */
+   private Rectangle[] cutouts;
+  /**
+   * Each piece's masked image, indexed by piece ID, or null unless the pieces are kept on the heap.
+   */
+   private BufferedImage[] images;
+  /**
+   * Each piece's masked image, or null unless the pieces are kept off the heap.
+   */
+   private OffHeapPieceStore store;
+  /**
+   * The index of every piece edge.
+   */
+   private EdgeIndex edgeIndex;
+  /**
+   * Every piece's colours and border sides.
+   */
+   private ColourIndex colourIndex;
+  /**
+   * A tiny picture of every piece, for the minimap.
+   */
+   private PieceThumbnails thumbnails;
+
+  /**
+   * Runs the whole pipeline for one puzzle. Slow, so never call it on the event thread.
+   * @param image the image to cut the puzzle from
+   * @param puzzleGeometry the shape of the puzzle
+   * @param pieceStorage how the pieces' images are kept, {@link PieceSet#COMPACT}, {@link PieceSet#HEAP},
+   * {@link PieceSet#DIRECT} or {@link PieceSet#MAPPED}
+   * @param listener told about each piece as it is finished, or null
+   * @return the finished set
+   * @throws java.io.IOException if the image or one of the masks can't be read
+   */
+   public static PieceSet generate(File image, PuzzleGeometry puzzleGeometry, int pieceStorage, Listener listener) throws IOException {
+      return generate(image, puzzleGeometry, pieceStorage, 1, listener);
+   }
+
+  /**
+   * Runs the whole pipeline for one puzzle at a display scale. A scaled set is always compact and has no
+   * indexes or thumbnails, since it is only used to draw pieces. Slow, so never call it on the event thread.
+   * @param image the image to cut the puzzle from
+   * @param puzzleGeometry the shape of the puzzle
+   * @param pieceStorage how the pieces' images are kept, {@link PieceSet#COMPACT}, {@link PieceSet#HEAP},
+   * {@link PieceSet#DIRECT} or {@link PieceSet#MAPPED}
+   * @param displayScale how many device pixels there are to each pixel of the puzzle's shape
+   * @param listener told about each piece as it is finished, or null
+   * @return the finished set
+   * @throws java.io.IOException if the image or one of the masks can't be read
+   */
+   public static PieceSet generate(File image, PuzzleGeometry puzzleGeometry, int pieceStorage, double displayScale,
+                                   Listener listener) throws IOException {
+      PieceSet pieces = new PieceSet();
+      pieces.imageFile = image;
+      pieces.geometry = puzzleGeometry;
+      pieces.scale = displayScale;
+      pieces.storage = displayScale == 1 ? pieceStorage : COMPACT;
+      ImageSplitter imageSplitter = new ImageSplitter(image, puzzleGeometry, displayScale);
+      pieces.source = imageSplitter.getPuzzleImage();
+      int pieceCount = puzzleGeometry.getPieceCount();
+      pieces.masks = new AlphaMask[pieceCount];
+      pieces.cutouts = new Rectangle[pieceCount];
+      if (displayScale == 1) {
+         pieces.colourIndex = new ColourIndex(puzzleGeometry);
+         pieces.thumbnails = new PieceThumbnails(puzzleGeometry);
+      }
+      if (pieces.storage == HEAP) {
+         pieces.images = new BufferedImage[pieceCount];
+      } else if (pieces.storage != COMPACT) {
+         pieces.store = new OffHeapPieceStore(puzzleGeometry, pieces.storage == MAPPED);
+      }
+
+      for (int index = 0; index < pieceCount; index++) {
+         int row = puzzleGeometry.row(index);
+         int col = puzzleGeometry.col(index);
+         pieces.masks[index] = imageSplitter.getPieceMask(row, col);
+         pieces.cutouts[index] = imageSplitter.getPieceBounds(row, col);
+         if (pieces.colourIndex != null) {
+            pieces.colourIndex.addPiece(index, pieces.source, pieces.cutouts[index], pieces.masks[index]);
+            pieces.thumbnails.addPiece(index, pieces.source, pieces.cutouts[index], pieces.masks[index]);
+         }
+         if (pieces.storage != COMPACT) {
+            BufferedImage masked = imageSplitter.maskImage(imageSplitter.cutPiece(row, col), imageSplitter.getMaskPath(row, col));
+            if (pieces.images != null) {
+               pieces.images[index] = masked;
+            } else {
+               pieces.store.put(index, masked);
+            }
+         }
+         if (listener != null) {
+            listener.pieceReady(pieces, index);
+         }
+      }
+
+      if (displayScale == 1) {
+         pieces.edgeIndex = new EdgeIndex(imageSplitter);
+      }
+      if (pieces.store != null) {
+         pieces.store.finish();
+         pieces.source = null;
+      }
+      return pieces;
+   }
+
+  /**
+   * Gives a piece its image from this set. Only sets cut at a scale of 1 are dealt to pieces. Must be called
+   * on the event thread.
+   * @param piece the piece to give the image to
+   */
+   public void applyTo(Piece piece) {
+      int index = piece.getPieceID();
+      if (store != null) {
+         piece.setStoredImage(store, masks[index]);
+      } else if (images == null) {
+         Rectangle cutout = cutouts[index];
+         piece.setCompactImage(source, cutout.x, cutout.y, masks[index]);
+      } else {
+         piece.setImage(images[index]);
+         piece.setShapeMask(masks[index]);
+      }
+   }
+
+  /**
+   * Returns roughly how many bytes the set keeps alive. Masks are shared with every other set of the same
+   * piece size through {@link ImageSplitter}'s caches, which keep to their own budget, so only the puzzle
+   * image, any masked piece images and the indexes are counted. Masked images kept off the heap count too,
+   * since they are only freed when the set is.
+   * @return the size of the set in bytes
+   */
+   public long getByteSize() {
+      long bytes = source == null ? 0 : SpriteCache.spriteBytes(source);
+      if (images != null) {
+         for (BufferedImage image : images) {
+            bytes += SpriteCache.spriteBytes(image);
+         }
+      }
+      if (edgeIndex != null) {
+         bytes += edgeIndex.getByteSize();
+      }
+      if (colourIndex != null) {
+         bytes += colourIndex.getByteSize();
+      }
+      if (thumbnails != null) {
+         bytes += thumbnails.getByteSize();
+      }
+      if (store != null) {
+         bytes += store.getHeapBytes() + store.getOffHeapBytes();
+      }
+      return bytes;
+   }
+
+  /**
+   * Frees the pieces' images kept off the heap, once the set has been evicted from its {@link PuzzleLibrary} and
+   * no board holds it. Sets kept on the heap are left to the garbage collector. The set can't be dealt afterwards.
+   */
+   public void close() {
+      if (store != null) {
+         store.close();
+      }
+   }
+
+  /**
+   * Returns whether the set's images have been freed by {@link PieceSet#close}.
+   * @return true if its off-heap store has been closed
+   */
+   public boolean isClosed() {
+      return store != null && store.isClosed();
+   }
+
+  /**
+   * Returns the image the puzzle was cut from.
+   * @return {@link PieceSet#imageFile}
+   */
+   public File getImageFile() {
+      return imageFile;
+   }
+
+  /**
+   * Returns the shape of the puzzle.
+   * @return {@link PieceSet#geometry}
+   */
+   public PuzzleGeometry getGeometry() {
+      return geometry;
+   }
+
+  /**
+   * Returns how many of the set's pixels there are to each pixel of the puzzle's shape.
+   * @return {@link PieceSet#scale}
+   */
+   public double getScale() {
+      return scale;
+   }
+
+  /**
+   * Returns the puzzle image the pieces are cut from, at the set's scale.
+   * @return {@link PieceSet#source}
+   */
+   public BufferedImage getSource() {
+      return source;
+   }
+
+  /**
+   * Returns a piece's mask, at the set's scale.
+   * @param index the piece's ID
+   * @return the shared alpha mask
+   */
+   public AlphaMask getMask(int index) {
+      return masks[index];
+   }
+
+  /**
+   * Returns the area of the puzzle image a piece is cut from, at the set's scale.
+   * @param index the piece's ID
+   * @return the cutout area
+   */
+   public Rectangle getCutout(int index) {
+      return cutouts[index];
+   }
+
+  /**
+   * Returns how the pieces' images are kept.
+   * @return {@link PieceSet#storage}
+   */
+   public int getStorage() {
+      return storage;
+   }
+
+  /**
+   * Returns the store holding the pieces' images off the heap.
+   * @return {@link PieceSet#store}, or null unless the pieces are kept off the heap
+   */
+   public OffHeapPieceStore getStore() {
+      return store;
+   }
+
+  /**
+   * Returns the index of every piece edge.
+   * @return {@link PieceSet#edgeIndex}
+   */
+   public EdgeIndex getEdgeIndex() {
+      return edgeIndex;
+   }
+
+  /**
+   * Returns every piece's colours and border sides.
+   * @return {@link PieceSet#colourIndex}
+   */
+   public ColourIndex getColourIndex() {
+      return colourIndex;
+   }
+
+  /**
+   * Returns the thumbnails the minimap is drawn from.
+   * @return {@link PieceSet#thumbnails}
+   */
+   public PieceThumbnails getThumbnails() {
+      return thumbnails;
+   }
+}
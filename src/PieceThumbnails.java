@@ -0,0 +1,182 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+* A tiny picture of every piece, at {@link PieceThumbnails#SCALE} of its size, for drawing the board's
+* {@link Minimap}. The thumbnails are made once, while the pipeline masks the pieces, by averaging each block of
+* the piece's pixels weighted by its mask, so no full-size masked image is ever made. They are all packed into
+* one atlas image, laid out like the finished puzzle, so the minimap draws from a single image.
+* Pieces are added on whatever thread generates the {@link PieceSet}, and the thumbnails are only read once it
+* has been handed over.
+* @author Noah Brown
+*/
+public class PieceThumbnails {
+  /**
+   * How big a thumbnail is compared to its piece.
+   */
+   public static final double SCALE = 0.125;
+
+  /**
+   * Every piece's thumbnail, in a grid of {@link PieceThumbnails#pitch} square slots.
+   */
+   private BufferedImage atlas;
+  /**
+   * How far apart the slots of {@link PieceThumbnails#atlas} are.
+   */
+   private int pitch;
+  /**
+   * The number of columns of slots, the same as the puzzle's.
+   */
+   private int cols;
+  /**
+   * The width of each piece's thumbnail, the right way up, indexed by piece ID.
+   */
+   private int[] widths;
+  /**
+   * The height of each piece's thumbnail, the right way up, indexed by piece ID.
+   */
+   private int[] heights;
+  /**
+   * Pixels read while adding a piece, reused from one piece to the next.
+   */
+   private int[] scratch;
+
+  /**
+   * Creates an empty atlas with a slot for every piece of the given puzzle. Thumbnails are filled in by
+   * {@link PieceThumbnails#addPiece}.
+   * @param geometry the shape of the puzzle
+   */
+   public PieceThumbnails(PuzzleGeometry geometry) {
+      int pieceCount = geometry.getPieceCount();
+      pitch = (int)Math.ceil((geometry.getCellSize() + 2 * geometry.getTabSize()) * SCALE) + 1;
+      cols = geometry.getCols();
+      atlas = new BufferedImage(cols * pitch, geometry.getRows() * pitch, BufferedImage.TYPE_INT_ARGB);
+      widths = new int[pieceCount];
+      heights = new int[pieceCount];
+      scratch = new int[0];
+   }
+
+  /**
+   * Makes one piece's thumbnail from the pixels the piece is cut from. Each thumbnail pixel is the average of
+   * the block of source pixels it covers, weighted by how opaque the mask leaves them, and is as opaque as the
+   * mask is over the block on average.
+   * @param piece the piece's ID
+   * @param source the puzzle image
+   * @param cutout the area of the puzzle image the piece is cut from
+   * @param mask the piece's mask
+   */
+   public void addPiece(int piece, BufferedImage source, Rectangle cutout, AlphaMask mask) {
+      int width = Math.max(1, (int)Math.ceil(cutout.width * SCALE));
+      int height = Math.max(1, (int)Math.ceil(cutout.height * SCALE));
+      int pixelCount = cutout.width * cutout.height;
+      if (scratch.length < pixelCount) {
+         scratch = new int[pixelCount];
+      }
+      source.getRGB(cutout.x, cutout.y, cutout.width, cutout.height, scratch, 0, cutout.width);
+      long[] sums = new long[width * height * 4];
+      int[] counts = new int[width * height];
+      for (int y = 0; y < cutout.height; y++) {
+         int row = Math.min(height - 1, (int)(y * SCALE)) * width;
+         for (int x = 0; x < cutout.width; x++) {
+            int bin = row + Math.min(width - 1, (int)(x * SCALE));
+            int alpha = mask.getAlpha(x, y);
+            int rgb = scratch[y * cutout.width + x];
+            counts[bin]++;
+            sums[bin * 4] += alpha;
+            sums[bin * 4 + 1] += (long)((rgb >> 16) & 0xFF) * alpha;
+            sums[bin * 4 + 2] += (long)((rgb >> 8) & 0xFF) * alpha;
+            sums[bin * 4 + 3] += (long)(rgb & 0xFF) * alpha;
+         }
+      }
+
+      int[] pixels = new int[width * height];
+      for (int bin = 0; bin < pixels.length; bin++) {
+         long alphaSum = sums[bin * 4];
+         if (alphaSum == 0) {
+            continue;
+         }
+         int alpha = (int)(alphaSum / Math.max(1, counts[bin]));
+         pixels[bin] = alpha << 24 | (int)(sums[bin * 4 + 1] / alphaSum) << 16 | (int)(sums[bin * 4 + 2] / alphaSum) << 8
+            | (int)(sums[bin * 4 + 3] / alphaSum);
+      }
+      atlas.setRGB(slotX(piece), slotY(piece), width, height, pixels, 0, width);
+      widths[piece] = width;
+      heights[piece] = height;
+   }
+
+  /**
+   * Returns the x-coordinate of a piece's slot in the atlas.
+   * @param piece the piece's ID
+   * @return the left edge of the slot
+   */
+   private int slotX(int piece) {
+      return piece % cols * pitch;
+   }
+
+  /**
+   * Returns the y-coordinate of a piece's slot in the atlas.
+   * @param piece the piece's ID
+   * @return the top edge of the slot
+   */
+   private int slotY(int piece) {
+      return piece / cols * pitch;
+   }
+
+  /**
+   * Draws a piece's thumbnail, turned to the given orientation.
+   * @param g the graphics to draw with
+   * @param piece the piece's ID
+   * @param orientation how many quarter turns clockwise the piece is turned
+   * @param x where the left edge of the turned thumbnail goes
+   * @param y where the top edge of the turned thumbnail goes
+   */
+   public void draw(Graphics2D g, int piece, int orientation, int x, int y) {
+      int width = widths[piece];
+      int height = heights[piece];
+      int sx = slotX(piece);
+      int sy = slotY(piece);
+      if (orientation == 0) {
+         g.drawImage(atlas, x, y, x + width, y + height, sx, sy, sx + width, sy + height, null);
+         return;
+      }
+      AffineTransform transform = g.getTransform();
+      // Turning about the top-left corner swings the thumbnail off it, so move it back into place
+      if (orientation == 1) {
+         g.translate(x + height, y);
+      } else if (orientation == 2) {
+         g.translate(x + width, y + height);
+      } else {
+         g.translate(x, y + width);
+      }
+      g.transform(AffineTransform.getQuadrantRotateInstance(orientation));
+      g.drawImage(atlas, 0, 0, width, height, sx, sy, sx + width, sy + height, null);
+      g.setTransform(transform);
+   }
+
+  /**
+   * Returns the width of a piece's thumbnail the right way up.
+   * @param piece the piece's ID
+   * @return the width in pixels
+   */
+   public int getWidth(int piece) {
+      return widths[piece];
+   }
+
+  /**
+   * Returns the height of a piece's thumbnail the right way up.
+   * @param piece the piece's ID
+   * @return the height in pixels
+   */
+   public int getHeight(int piece) {
+      return heights[piece];
+   }
+
+  /**
+   * Returns roughly how many bytes the thumbnails take up.
+   * @return the size of the atlas and the arrays kept with it
+   */
+   public long getByteSize() {
+      return SpriteCache.spriteBytes(atlas) + 4L * (widths.length + heights.length + scratch.length);
+   }
+}
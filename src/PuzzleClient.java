@@ -1,28 +1,66 @@
-import java.awt.*;
-import java.awt.event.*;
-import javax.swing.*;
-import javax.swing.border.*;
-
-/**
-* Client class that sets up the window and adds the puzzle board to it.
-*/
-public class PuzzleClient {
-   
-   public static void main(String[] args) {
-      JFrame frame = new JFrame("Jigsaw Puzzle");
-      
-      frame.setLayout(null);
-      
-      JigsawPuzzle puzzleFrame = new JigsawPuzzle(frame, 100);
-      frame.add(puzzleFrame);
-      
-      GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-      Rectangle bounds = environment.getMaximumWindowBounds(); 
-      frame.setSize((int)bounds.getWidth(), (int)bounds.getHeight());
-      
-      frame.setExtendedState(JFrame.MAXIMIZED_BOTH); 
-      frame.setUndecorated(false);
-      frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-      frame.setVisible(true);
-   }
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+import javax.swing.border.*;
+import java.io.*;
+
+/**
+* Client class that sets up the window and adds the puzzle board to it.
+*/
+public class PuzzleClient {
+   
+   public static void main(String[] args) {
+      final int pieceCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+      SwingUtilities.invokeLater(new Runnable() {
+         public void run() {
+            createWindow(pieceCount);
+         }
+      });
+   }
+   
+  /**
+   * Builds and shows the window, then starts generating the piece images in the background.
+   * Runs on the event thread.
+   * @param pieceCount roughly how many pieces the puzzle should have
+   */
+   private static void createWindow(int pieceCount) {
+      JFrame frame = new JFrame("Jigsaw Puzzle");
+      
+      frame.setLayout(null);
+      
+      JigsawPuzzle puzzleFrame = new JigsawPuzzle(frame, pieceCount);
+      frame.add(puzzleFrame);
+      frame.setJMenuBar(createPuzzleMenu(puzzleFrame));
+      
+      GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
+      Rectangle bounds = environment.getMaximumWindowBounds(); 
+      frame.setSize((int)bounds.getWidth(), (int)bounds.getHeight());
+      
+      frame.setExtendedState(JFrame.MAXIMIZED_BOTH); 
+      frame.setUndecorated(false);
+      frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+      frame.setVisible(true);
+      puzzleFrame.startLoading();
+   }
+   
+  /**
+   * Builds a menu listing every puzzle in the board's library. Picking one switches the board to it.
+   * @param puzzleFrame the board to switch
+   * @return the menu bar
+   */
+   private static JMenuBar createPuzzleMenu(final JigsawPuzzle puzzleFrame) {
+      JMenuBar menuBar = new JMenuBar();
+      JMenu puzzleMenu = new JMenu("Puzzle");
+      for (final File image : puzzleFrame.getLibrary().getImages()) {
+         JMenuItem item = new JMenuItem(image.getName());
+         item.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+               puzzleFrame.switchPuzzle(image);
+            }
+         });
+         puzzleMenu.add(item);
+      }
+      menuBar.add(puzzleMenu);
+      return menuBar;
+   }
 }
\ No newline at end of file
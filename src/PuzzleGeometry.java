@@ -0,0 +1,351 @@
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+* The shape of a puzzle: how many rows and columns it has, how big each piece's square is, how far tabs stick
+* out, and which pieces are next to which. Pieces are identified by a single index, {@code row * cols + col},
+* and their neighbours are kept in one flat array instead of an array of pieces per piece.
+* <p>
+* The mask images tile in a 3x3 pattern between a row/column of border masks on each side, so a puzzle always
+* has 2 more than a multiple of 3 rows and columns.
+* @author Noah Brown
+*/
+public class PuzzleGeometry {
+  /**
+   * How many times wider a piece's square is than its tabs, matching the mask images.
+   */
+   public static final int CELL_TO_TAB_RATIO = 7;
+  /**
+   * The size of a piece's square in the mask images.
+   */
+   public static final int MASK_CELL_SIZE = 35;
+  /**
+   * The fewest rows or columns a puzzle can have: one row of border masks on each side of the 3x3 pattern.
+   */
+   public static final int MIN_LINES = 5;
+  /**
+   * The smallest square a piece can have while still having 1 pixel tabs.
+   */
+   public static final int MIN_CELL_SIZE = CELL_TO_TAB_RATIO;
+  /**
+   * How much of the board's width and height the finished puzzle may take up. The rest is where the loose
+   * pieces are scattered.
+   */
+   public static final double ASSEMBLY_FRACTION = 0.4;
+  /**
+   * How far a piece's square moves, in cells, when stepping to the neighbour on each side, clockwise from the top.
+   */
+   public static final int[] SIDE_DX = {0, 1, 0, -1};
+  /**
+   * See {@link PuzzleGeometry#SIDE_DX}.
+   */
+   public static final int[] SIDE_DY = {-1, 0, 1, 0};
+
+  /**
+   * The number of rows of pieces.
+   */
+   private int rows;
+  /**
+   * The number of columns of pieces.
+   */
+   private int cols;
+  /**
+   * The width and height of each piece's square, in pixels.
+   */
+   private int cellSize;
+  /**
+   * How far tabs stick out past a piece's square, in pixels.
+   */
+   private int tabSize;
+  /**
+   * The neighbour of every piece on every side, 4 entries per piece going clockwise from the top,
+   * or -1 where the side is on the border.
+   */
+   private int[] neighbours;
+
+  /**
+   * Creates a puzzle shape with the given number of rows and columns.
+   * @param numRows the number of rows of pieces
+   * @param numCols the number of columns of pieces
+   * @param cell the width and height of each piece's square, in pixels
+   */
+   public PuzzleGeometry(int numRows, int numCols, int cell) {
+      this.rows = numRows;
+      this.cols = numCols;
+      this.cellSize = cell;
+      this.tabSize = Math.max(1, Math.round((float)cell / CELL_TO_TAB_RATIO));
+      this.neighbours = new int[numRows * numCols * 4];
+      for (int row = 0; row < numRows; row++) {
+         for (int col = 0; col < numCols; col++) {
+            int base = index(row, col) * 4;
+            neighbours[base] = row == 0 ? -1 : index(row - 1, col);
+            neighbours[base + 1] = col == numCols - 1 ? -1 : index(row, col + 1);
+            neighbours[base + 2] = row == numRows - 1 ? -1 : index(row + 1, col);
+            neighbours[base + 3] = col == 0 ? -1 : index(row, col - 1);
+         }
+      }
+   }
+
+  /**
+   * Works out the puzzle shape closest to the requested number of pieces. The columns and rows follow the
+   * image's aspect ratio, rounded to counts the masks can tile, and the squares are as big as they can be
+   * while the finished puzzle fits in the middle of the board and doesn't need the image scaled up.
+   * @param pieceCount roughly how many pieces the puzzle should have
+   * @param imageWidth the width of the source image
+   * @param imageHeight the height of the source image
+   * @param boardWidth the width of the board the puzzle is played on
+   * @param boardHeight the height of the board the puzzle is played on
+   * @return the puzzle shape
+   */
+   public static PuzzleGeometry forPieceCount(int pieceCount, int imageWidth, int imageHeight, int boardWidth, int boardHeight) {
+      double aspect = (double)imageWidth / imageHeight;
+      int numCols = nearestTileable(Math.sqrt(pieceCount * aspect));
+      int numRows = nearestTileable((double)pieceCount / numCols);
+      int cell = (int)Math.min(Math.min(boardWidth * ASSEMBLY_FRACTION / numCols, boardHeight * ASSEMBLY_FRACTION / numRows),
+                               Math.min(imageWidth / numCols, imageHeight / numRows));
+      return new PuzzleGeometry(numRows, numCols, Math.max(MIN_CELL_SIZE, cell));
+   }
+
+  /**
+   * Rounds a row or column count to the nearest count the masks can tile: 2 more than a multiple of 3,
+   * and at least {@link PuzzleGeometry#MIN_LINES}.
+   * @param ideal the count to round
+   * @return the nearest tileable count
+   */
+   public static int nearestTileable(double ideal) {
+      int lines = (int)Math.round((ideal - 2) / 3) * 3 + 2;
+      return Math.max(MIN_LINES, lines);
+   }
+
+  /**
+   * Reads the width and height of an image file from its header, without decoding the pixels.
+   * @param image the image file
+   * @return the size of the image
+   * @throws java.io.IOException if the file can't be read or isn't an image
+   */
+   public static Dimension readImageSize(File image) throws IOException {
+      ImageInputStream input = ImageIO.createImageInputStream(image);
+      if (input == null) {
+         throw new IOException("Couldn't open " + image);
+      }
+      try {
+         Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+         if (!readers.hasNext()) {
+            throw new IOException("Unknown image format: " + image);
+         }
+         ImageReader reader = readers.next();
+         try {
+            reader.setInput(input);
+            return new Dimension(reader.getWidth(0), reader.getHeight(0));
+         } finally {
+            reader.dispose();
+         }
+      } finally {
+         input.close();
+      }
+   }
+
+  /**
+   * Returns the index of the piece at the given row and column.
+   * @param row the row of the piece
+   * @param col the column of the piece
+   * @return the piece's index
+   */
+   public int index(int row, int col) {
+      return row * cols + col;
+   }
+
+  /**
+   * Returns the row of the piece with the given index.
+   * @param index the piece's index
+   * @return the row of the piece
+   */
+   public int row(int index) {
+      return index / cols;
+   }
+
+  /**
+   * Returns the column of the piece with the given index.
+   * @param index the piece's index
+   * @return the column of the piece
+   */
+   public int col(int index) {
+      return index % cols;
+   }
+
+  /**
+   * Returns the piece that belongs on the given side of a piece.
+   * @param index the piece's index
+   * @param side the side, clockwise from the top
+   * @return the neighbour's index, or -1 if that side is on the border
+   */
+   public int neighbour(int index, int side) {
+      return neighbours[index * 4 + side];
+   }
+
+  /**
+   * Returns how much buffer space the piece at the given row and column needs on each side for its tabs.
+   * Sides on the border of the puzzle have no tabs, so they get no buffer space.
+   * @param row the row of the piece
+   * @param col the column of the piece
+   * @return the buffer space going clockwise from the top: up, right, down, left
+   */
+   public int[] getBufferSpace(int row, int col) {
+      int[] space = {tabSize, tabSize, tabSize, tabSize};
+      if (row == 0) {
+         space[0] = 0;
+      }
+      if (col == cols - 1) {
+         space[1] = 0;
+      }
+      if (row == rows - 1) {
+         space[2] = 0;
+      }
+      if (col == 0) {
+         space[3] = 0;
+      }
+      return space;
+   }
+
+  /**
+   * Returns how much buffer space one side of a piece needs for its tab, without allocating an array like
+   * {@link PuzzleGeometry#getBufferSpace} does.
+   * @param index the piece's index
+   * @param side the side, clockwise from the top
+   * @return the tab size, or 0 if the side is on the border
+   */
+   public int getSideSpace(int index, int side) {
+      return neighbours[index * 4 + side] < 0 ? 0 : tabSize;
+   }
+
+  /**
+   * Returns the square the piece at the given row and column covers in the finished puzzle.
+   * @param row the row of the piece
+   * @param col the column of the piece
+   * @return the piece's square, in puzzle image pixels
+   */
+   public Rectangle getCellBounds(int row, int col) {
+      return new Rectangle(col * cellSize, row * cellSize, cellSize, cellSize);
+   }
+
+  /**
+   * Returns the area the piece at the given row and column is cut from, including its buffer space.
+   * @param row the row of the piece
+   * @param col the column of the piece
+   * @return the cutout area, in puzzle image pixels
+   */
+   public Rectangle getPieceBounds(int row, int col) {
+      int[] space = getBufferSpace(row, col);
+      return new Rectangle(col * cellSize - space[3], row * cellSize - space[0],
+                           cellSize + space[3] + space[1], cellSize + space[0] + space[2]);
+   }
+
+  /**
+   * Picks a starting spot on the board for every piece. The board is divided into slots one piece apart;
+   * slots overlapping the middle of the board, where the puzzle gets put together, are left empty, and the
+   * slots closest to the edges of the board are used first. If there still aren't enough slots, the
+   * remaining pieces are dropped at random spots on top of the others.
+   * @param boardWidth the width of the board
+   * @param boardHeight the height of the board
+   * @param rand where the random spots come from
+   * @return the top-left corner of each slot, x then y, 2 entries per piece
+   */
+   public int[] scatterSlots(int boardWidth, int boardHeight, Random rand) {
+      int pitch = cellSize + 2 * tabSize;
+      int margin = 2 * tabSize;
+      int pieceCount = getPieceCount();
+      Rectangle assembly = new Rectangle((boardWidth - getPuzzleWidth()) / 2 - pitch, (boardHeight - getPuzzleHeight()) / 2 - pitch,
+                                         getPuzzleWidth() + 2 * pitch, getPuzzleHeight() + 2 * pitch);
+
+      int slotCols = Math.max(1, (boardWidth - margin) / pitch);
+      int slotRows = Math.max(1, (boardHeight - margin) / pitch);
+      ArrayList<int[]> free = new ArrayList<int[]>();
+      for (int i = 0; i < slotRows; i++) {
+         for (int j = 0; j < slotCols; j++) {
+            int x = margin + j * pitch;
+            int y = margin + i * pitch;
+            if (!assembly.intersects(x, y, pitch, pitch)) {
+               int edgeDistance = Math.min(Math.min(j, slotCols - 1 - j), Math.min(i, slotRows - 1 - i));
+               free.add(new int[] {x, y, edgeDistance});
+            }
+         }
+      }
+      Collections.sort(free, new Comparator<int[]>() {
+         public int compare(int[] a, int[] b) {
+            return Integer.compare(a[2], b[2]);
+         }
+      });
+
+      int[] slots = new int[pieceCount * 2];
+      for (int i = 0; i < pieceCount; i++) {
+         if (i < free.size()) {
+            slots[i * 2] = free.get(i)[0];
+            slots[i * 2 + 1] = free.get(i)[1];
+         } else {
+            slots[i * 2] = margin + rand.nextInt(Math.max(1, boardWidth - pitch - margin));
+            slots[i * 2 + 1] = margin + rand.nextInt(Math.max(1, boardHeight - pitch - margin));
+         }
+      }
+      return slots;
+   }
+
+  /**
+   * Returns the number of rows of pieces.
+   * @return {@link PuzzleGeometry#rows}
+   */
+   public int getRows() {
+      return rows;
+   }
+
+  /**
+   * Returns the number of columns of pieces.
+   * @return {@link PuzzleGeometry#cols}
+   */
+   public int getCols() {
+      return cols;
+   }
+
+  /**
+   * Returns the total number of pieces.
+   * @return rows times columns
+   */
+   public int getPieceCount() {
+      return rows * cols;
+   }
+
+  /**
+   * Returns the width and height of each piece's square.
+   * @return {@link PuzzleGeometry#cellSize}
+   */
+   public int getCellSize() {
+      return cellSize;
+   }
+
+  /**
+   * Returns how far tabs stick out past a piece's square.
+   * @return {@link PuzzleGeometry#tabSize}
+   */
+   public int getTabSize() {
+      return tabSize;
+   }
+
+  /**
+   * Returns the width of the finished puzzle, and of the resized puzzle image.
+   * @return columns times the cell size
+   */
+   public int getPuzzleWidth() {
+      return cols * cellSize;
+   }
+
+  /**
+   * Returns the height of the finished puzzle, and of the resized puzzle image.
+   * @return rows times the cell size
+   */
+   public int getPuzzleHeight() {
+      return rows * cellSize;
+   }
+}
@@ -0,0 +1,460 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* The puzzles that can be played: every image in a folder, plus a cache of the {@link PieceSet}s already
+* generated for them. The cache is least recently used first and bounded by the bytes the sets keep alive.
+* While one puzzle is being played the most likely next one can be prefetched on a single low-priority
+* background thread, so switching to it deals the pieces straight from the cache.
+* Sets are looked up by image, piece layout, how the pieces' images are kept and the display scale they were cut
+* at, so a set is never dealt to a board of a different shape, and a board moved back to a screen it has been on
+* before draws its pieces from the set it already made for that screen.
+* One library can be shared by several boards, e.g. by a {@link BoardHost}. Boards acquire the sets they are
+* dealt and release them when they move on, and a set that any board holds is never evicted, so boards
+* playing the same puzzle always share one copy of its pieces. An evicted set that no board holds is closed
+* straight away, so pieces kept off the heap don't hold on to their buffers and files. Boards therefore look
+* sets up and acquire them in one step, so a set can't be closed between the two.
+* @author Noah Brown
+*/
+public class PuzzleLibrary {
+  /**
+   * The file extensions of the images that can be cut into puzzles.
+   */
+   private static final String[] IMAGE_TYPES = {".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+
+  /**
+   * The images that can be played, sorted by name.
+   */
+   private ArrayList<File> images;
+  /**
+   * The finished sets, least recently used first.
+   */
+   private LinkedHashMap<String, PieceSet> cache;
+  /**
+   * The sets being generated right now, so a set is never generated twice at the same time.
+   */
+   private HashMap<String, FutureTask<PieceSet>> pending;
+  /**
+   * How many boards hold each cached set, by key. Sets with no boards holding them aren't in the map.
+   */
+   private HashMap<String, Integer> users;
+  /**
+   * The most bytes the cached sets may keep alive.
+   */
+   private long maxBytes;
+  /**
+   * How many bytes the cached sets currently keep alive.
+   */
+   private long currentBytes;
+  /**
+   * Runs prefetches one at a time, at the lowest thread priority.
+   */
+   private ExecutorService prefetcher;
+
+  /**
+   * Creates a library of every image in the given folder.
+   * @param folder the folder holding the puzzle images
+   * @param budget the most bytes the cached sets may keep alive
+   */
+   public PuzzleLibrary(File folder, long budget) {
+      this.images = new ArrayList<File>();
+      this.cache = new LinkedHashMap<String, PieceSet>(16, 0.75f, true);
+      this.pending = new HashMap<String, FutureTask<PieceSet>>();
+      this.users = new HashMap<String, Integer>();
+      this.maxBytes = budget;
+      File[] files = folder.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            if (isImage(file)) {
+               images.add(file);
+            }
+         }
+      }
+      Collections.sort(images);
+      prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "puzzle-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+         }
+      });
+   }
+
+  /**
+   * Returns whether a file looks like an image that can be cut into a puzzle.
+   * @param file the file to check
+   * @return true if it has one of the {@link PuzzleLibrary#IMAGE_TYPES}
+   */
+   private static boolean isImage(File file) {
+      String name = file.getName().toLowerCase();
+      for (String type : IMAGE_TYPES) {
+         if (name.endsWith(type)) {
+            return file.isFile();
+         }
+      }
+      return false;
+   }
+
+  /**
+   * Returns the images that can be played.
+   * @return a copy of {@link PuzzleLibrary#images}, sorted by name
+   */
+   public List<File> getImages() {
+      return new ArrayList<File>(images);
+   }
+
+  /**
+   * Returns the image with the given file name, or the first image if there isn't one.
+   * @param name the file name to look for
+   * @return the image, or null if the library is empty
+   */
+   public File findImage(String name) {
+      for (File image : images) {
+         if (image.getName().equals(name)) {
+            return image;
+         }
+      }
+      return images.isEmpty() ? null : images.get(0);
+   }
+
+  /**
+   * Guesses which puzzle will be played after the given one: the next image in the library, wrapping around.
+   * @param current the image being played
+   * @return the next image, or null if there is no other image
+   */
+   public File nextImage(File current) {
+      if (images.size() < 2) {
+         return null;
+      }
+      int index = images.indexOf(current);
+      return images.get((index + 1) % images.size());
+   }
+
+  /**
+   * Returns the key a set is cached under.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param scale the display scale the pieces are cut at
+   * @return the cache key
+   */
+   private static String key(File image, PuzzleGeometry geometry, int storage, double scale) {
+      return image.getAbsolutePath() + "@" + geometry.getRows() + "x" + geometry.getCols() + "x" + geometry.getCellSize()
+         + "s" + storage + (scale == 1 ? "" : "@" + scale + "x");
+   }
+
+  /**
+   * Returns the set for a puzzle if it has already been generated, without waiting. Safe to call on the
+   * event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @return the cached set, or null if it isn't ready
+   */
+   public PieceSet getIfReady(File image, PuzzleGeometry geometry, int storage) {
+      return getIfReady(image, geometry, storage, 1);
+   }
+
+  /**
+   * Returns the set for a puzzle if it has already been generated, without waiting, and acquires it for the
+   * calling board. Safe to call on the event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @return the cached set, now held, or null if it isn't ready
+   */
+   public PieceSet acquireIfReady(File image, PuzzleGeometry geometry, int storage) {
+      return acquireIfReady(image, geometry, storage, 1);
+   }
+
+  /**
+   * Returns the set for a puzzle cut at a display scale if it has already been generated, without waiting, and
+   * acquires it for the calling board. The set is looked up and acquired in one step, so it can't be evicted and
+   * closed in between. Safe to call on the event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param scale the display scale the pieces are cut at
+   * @return the cached set, now held, or null if it isn't ready
+   */
+   public synchronized PieceSet acquireIfReady(File image, PuzzleGeometry geometry, int storage, double scale) {
+      PieceSet ready = cache.get(key(image, geometry, storage, scale));
+      if (ready != null) {
+         acquire(ready);
+      }
+      return ready;
+   }
+
+  /**
+   * Returns the set for a puzzle cut at a display scale if it has already been generated, without waiting.
+   * Safe to call on the event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param scale the display scale the pieces are cut at
+   * @return the cached set, or null if it isn't ready
+   */
+   public synchronized PieceSet getIfReady(File image, PuzzleGeometry geometry, int storage, double scale) {
+      return cache.get(key(image, geometry, storage, scale));
+   }
+
+  /**
+   * Returns the set for a puzzle, waiting for it if it is already being prefetched and generating it on the
+   * calling thread otherwise. Never call it on the event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param listener told about each piece as it is finished if the set is generated by this call, or null
+   * @return the finished set
+   * @throws java.io.IOException if the image or one of the masks can't be read
+   */
+   public PieceSet get(File image, PuzzleGeometry geometry, int storage, PieceSet.Listener listener) throws IOException {
+      return get(image, geometry, storage, 1, listener);
+   }
+
+  /**
+   * Returns the set for a puzzle cut at a display scale, waiting for it if it is already being generated and
+   * generating it on the calling thread otherwise. Never call it on the event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param scale the display scale the pieces are cut at
+   * @param listener told about each piece as it is finished if the set is generated by this call, or null
+   * @return the finished set
+   * @throws java.io.IOException if the image or one of the masks can't be read
+   */
+   public PieceSet get(File image, PuzzleGeometry geometry, int storage, double scale, PieceSet.Listener listener)
+      throws IOException {
+      return get(image, geometry, storage, scale, listener, false);
+   }
+
+  /**
+   * Returns the set for a puzzle like {@link PuzzleLibrary#get}, and acquires it for the calling board in the
+   * same step. Never call it on the event thread.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param listener told about each piece as it is finished if the set is generated by this call, or null
+   * @return the finished set, now held
+   * @throws java.io.IOException if the image or one of the masks can't be read
+   */
+   public PieceSet acquire(File image, PuzzleGeometry geometry, int storage, PieceSet.Listener listener) throws IOException {
+      return get(image, geometry, storage, 1, listener, true);
+   }
+
+  /**
+   * Looks a set up, waits for it or generates it, and acquires it if asked to. A set generated by this call is
+   * acquired as it goes into the cache; one generated by another thread is acquired once it is ready, unless it
+   * has been evicted and closed in the meantime, in which case it is generated again.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param scale the display scale the pieces are cut at
+   * @param listener told about each piece as it is finished if the set is generated by this call, or null
+   * @param hold whether to acquire the set for the caller
+   * @return the finished set
+   * @throws java.io.IOException if the image or one of the masks can't be read
+   */
+   private PieceSet get(File image, PuzzleGeometry geometry, int storage, double scale, PieceSet.Listener listener,
+                        boolean hold) throws IOException {
+      FutureTask<PieceSet> task;
+      boolean owner = false;
+      synchronized (this) {
+         String key = key(image, geometry, storage, scale);
+         PieceSet cached = cache.get(key);
+         if (cached != null) {
+            if (hold) {
+               acquire(cached);
+            }
+            return cached;
+         }
+         task = pending.get(key);
+         if (task == null) {
+            task = newTask(image, geometry, storage, scale, listener, hold);
+            owner = true;
+         }
+      }
+      if (owner) {
+         task.run();
+      }
+      PieceSet pieces = await(task, image);
+      if (owner || !hold) {
+         return pieces;
+      }
+      synchronized (this) {
+         if (!pieces.isClosed()) {
+            acquire(pieces);
+            return pieces;
+         }
+      }
+      return get(image, geometry, storage, scale, null, true);
+   }
+
+  /**
+   * Waits for a set to be generated.
+   * @param task the task generating it
+   * @param image the image the puzzle is cut from, for the error message
+   * @return the finished set
+   * @throws java.io.IOException if generating it failed or the wait was interrupted
+   */
+   private static PieceSet await(FutureTask<PieceSet> task, File image) throws IOException {
+      try {
+         return task.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted waiting for " + image);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException)e.getCause();
+         }
+         throw new IOException(e.getCause());
+      }
+   }
+
+  /**
+   * Starts generating the set for a puzzle in the background, unless it is already cached or being generated.
+   * Safe to call on the event thread.
+   * @param image the image the puzzle is cut from, or null to do nothing
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   */
+   public synchronized void prefetch(File image, PuzzleGeometry geometry, int storage) {
+      if (image == null) {
+         return;
+      }
+      String key = key(image, geometry, storage, 1);
+      if (cache.containsKey(key) || pending.containsKey(key)) {
+         return;
+      }
+      prefetcher.execute(newTask(image, geometry, storage, 1, null, false));
+   }
+
+  /**
+   * Creates the task that generates a set, registers it as pending, and has it move its result into the
+   * cache when it finishes. Must be called while holding the library's lock.
+   * @param image the image the puzzle is cut from
+   * @param geometry the shape of the puzzle
+   * @param storage how the pieces' images are kept, as in {@link PieceSet#getStorage}
+   * @param scale the display scale the pieces are cut at
+   * @param listener told about each piece as it is finished, or null
+   * @param hold whether the finished set is acquired as it goes into the cache
+   * @return the task, not yet run
+   */
+   private FutureTask<PieceSet> newTask(final File image, final PuzzleGeometry geometry, final int storage,
+                                        final double scale, final PieceSet.Listener listener, final boolean hold) {
+      final String key = key(image, geometry, storage, scale);
+      FutureTask<PieceSet> task = new FutureTask<PieceSet>(new Callable<PieceSet>() {
+         public PieceSet call() throws IOException {
+            PieceSet pieces = null;
+            try {
+               pieces = PieceSet.generate(image, geometry, storage, scale, listener);
+               return pieces;
+            } finally {
+               finish(key, pieces, hold);
+            }
+         }
+      });
+      pending.put(key, task);
+      return task;
+   }
+
+  /**
+   * Moves a finished set from pending into the cache, then trims the cache back under budget.
+   * @param key the set's cache key
+   * @param pieces the finished set, or null if generating it failed
+   * @param hold whether to acquire the set before trimming, for the board that generated it
+   */
+   private synchronized void finish(String key, PieceSet pieces, boolean hold) {
+      pending.remove(key);
+      if (pieces == null) {
+         return;
+      }
+      cache.put(key, pieces);
+      currentBytes += pieces.getByteSize();
+      if (hold) {
+         acquire(pieces);
+      }
+      trim();
+   }
+
+  /**
+   * Throws away the least recently used sets until the cache is back under budget, and closes them. Sets held
+   * by a board are never thrown away, so the cache can stay over budget while they are held, and the newest set
+   * is always kept. Must be called while holding the library's lock.
+   */
+   private void trim() {
+      Iterator<Map.Entry<String, PieceSet>> iterator = cache.entrySet().iterator();
+      while (currentBytes > maxBytes && iterator.hasNext()) {
+         Map.Entry<String, PieceSet> entry = iterator.next();
+         if (iterator.hasNext() && !users.containsKey(entry.getKey())) {
+            PieceSet evicted = entry.getValue();
+            currentBytes -= evicted.getByteSize();
+            iterator.remove();
+            evicted.close();
+         }
+      }
+   }
+
+  /**
+   * Marks a set as held by one more board, so it stays cached until every board holding it has released it.
+   * A set that was evicted before it was acquired is put back, so other boards can share it. Sets kept off the
+   * heap have to be acquired with {@link PuzzleLibrary#acquire(File, PuzzleGeometry, int, PieceSet.Listener)} or
+   * {@link PuzzleLibrary#acquireIfReady(File, PuzzleGeometry, int)} instead, since they are closed once evicted.
+   * @param pieces the set a board was dealt
+   */
+   public synchronized void acquire(PieceSet pieces) {
+      String key = key(pieces.getImageFile(), pieces.getGeometry(), pieces.getStorage(), pieces.getScale());
+      Integer count = users.get(key);
+      users.put(key, count == null ? 1 : count + 1);
+      if (!cache.containsKey(key)) {
+         cache.put(key, pieces);
+         currentBytes += pieces.getByteSize();
+      }
+   }
+
+  /**
+   * Marks a set as no longer held by a board. Once no board holds it, it can be evicted like any other set.
+   * @param pieces a set passed to {@link PuzzleLibrary#acquire}
+   */
+   public synchronized void release(PieceSet pieces) {
+      String key = key(pieces.getImageFile(), pieces.getGeometry(), pieces.getStorage(), pieces.getScale());
+      Integer count = users.get(key);
+      if (count == null) {
+         return;
+      }
+      if (count > 1) {
+         users.put(key, count - 1);
+      } else {
+         users.remove(key);
+         trim();
+      }
+   }
+
+  /**
+   * Returns how many boards hold a set.
+   * @param pieces the set
+   * @return how many times it has been acquired and not released
+   */
+   public synchronized int getUserCount(PieceSet pieces) {
+      Integer count = users.get(key(pieces.getImageFile(), pieces.getGeometry(), pieces.getStorage(), pieces.getScale()));
+      return count == null ? 0 : count;
+   }
+
+  /**
+   * Returns how many bytes the cached sets currently keep alive.
+   * @return {@link PuzzleLibrary#currentBytes}
+   */
+   public synchronized long getCurrentBytes() {
+      return currentBytes;
+   }
+
+  /**
+   * Returns how many sets are cached.
+   * @return the number of cached sets
+   */
+   public synchronized int size() {
+      return cache.size();
+   }
+}
@@ -0,0 +1,278 @@
+/**
+* Settings that change how the puzzle is generated and drawn. Defaults can be overridden with system
+* properties, e.g. {@code java -Djigsaw.compactPieces=false PuzzleClient}.
+* @author Noah Brown
+*/
+public class PuzzleOptions {
+  /**
+   * Whether pieces store a shared {@link AlphaMask} instead of their own full-colour image.
+   */
+   private boolean compactPieces;
+  /**
+   * Whether full-colour pieces keep their images off the heap, in an {@link OffHeapPieceStore}. Takes priority
+   * over {@link PuzzleOptions#compactPieces}.
+   */
+   private boolean offHeapPieces;
+  /**
+   * Whether off-heap piece images are kept in a memory-mapped file instead of direct buffers.
+   */
+   private boolean mappedPieces;
+  /**
+   * The most bytes the board's {@link SpriteCache} may use.
+   */
+   private long spriteCacheBytes;
+  /**
+   * The most moves and fuses the undo history remembers, or 0 to keep no history.
+   */
+   private int undoLimit;
+  /**
+   * Whether pieces are scattered turned at random and have to be turned the right way up before they fit.
+   */
+   private boolean rotatePieces;
+  /**
+   * The most bytes the {@link PuzzleLibrary} may spend on generated piece sets.
+   */
+   private long libraryCacheBytes;
+  /**
+   * The seed for scattering and turning pieces, or -1 for a different layout every time.
+   */
+   private long randomSeed;
+  /**
+   * Whether pieces are drawn with drop shadows and outlines from {@link EffectSprites}.
+   */
+   private boolean effects;
+  /**
+   * The display scale pieces are drawn at, or 0 to take it from the screen the board is on.
+   */
+   private double renderScale;
+  /**
+   * Whether the board shows a {@link Minimap} overview of itself.
+   */
+   private boolean minimap;
+
+  /**
+   * Creates the default options: compact pieces on the heap with an 8 MB sprite cache, 1000 undo steps, no rotation,
+   * 64 MB of cached piece sets, an unseeded layout, drop shadows, the screen's own display scale, and a minimap.
+   */
+   public PuzzleOptions() {
+      this.compactPieces = true;
+      this.offHeapPieces = false;
+      this.mappedPieces = false;
+      this.spriteCacheBytes = 8L * 1024 * 1024;
+      this.undoLimit = 1000;
+      this.rotatePieces = false;
+      this.libraryCacheBytes = 64L * 1024 * 1024;
+      this.randomSeed = -1;
+      this.effects = true;
+      this.renderScale = 0;
+      this.minimap = true;
+   }
+
+  /**
+   * Creates the default options, then applies any overrides given as system properties.
+   * @return the options to use
+   */
+   public static PuzzleOptions fromSystemProperties() {
+      PuzzleOptions options = new PuzzleOptions();
+      options.compactPieces = Boolean.parseBoolean(System.getProperty("jigsaw.compactPieces", "" + options.compactPieces));
+      options.offHeapPieces = Boolean.parseBoolean(System.getProperty("jigsaw.offHeapPieces", "" + options.offHeapPieces));
+      options.mappedPieces = Boolean.parseBoolean(System.getProperty("jigsaw.mappedPieces", "" + options.mappedPieces));
+      options.spriteCacheBytes = Long.getLong("jigsaw.spriteCacheMB", options.spriteCacheBytes / (1024 * 1024)) * 1024 * 1024;
+      options.undoLimit = Math.max(0, Integer.getInteger("jigsaw.undoLimit", options.undoLimit));
+      options.rotatePieces = Boolean.parseBoolean(System.getProperty("jigsaw.rotatePieces", "" + options.rotatePieces));
+      options.libraryCacheBytes = Long.getLong("jigsaw.libraryCacheMB", options.libraryCacheBytes / (1024 * 1024)) * 1024 * 1024;
+      options.randomSeed = Long.getLong("jigsaw.seed", options.randomSeed);
+      options.effects = Boolean.parseBoolean(System.getProperty("jigsaw.effects", "" + options.effects));
+      options.renderScale = Double.parseDouble(System.getProperty("jigsaw.renderScale", "" + options.renderScale));
+      options.minimap = Boolean.parseBoolean(System.getProperty("jigsaw.minimap", "" + options.minimap));
+      return options;
+   }
+
+  /**
+   * Returns whether pieces store a shared alpha mask instead of their own image.
+   * @return {@link PuzzleOptions#compactPieces}
+   */
+   public boolean isCompactPieces() {
+      return compactPieces;
+   }
+
+  /**
+   * Sets whether pieces store a shared alpha mask instead of their own image.
+   * @param compact the new value of {@link PuzzleOptions#compactPieces}
+   */
+   public void setCompactPieces(boolean compact) {
+      this.compactPieces = compact;
+   }
+
+  /**
+   * Returns whether full-colour pieces keep their images off the heap.
+   * @return {@link PuzzleOptions#offHeapPieces}
+   */
+   public boolean isOffHeapPieces() {
+      return offHeapPieces;
+   }
+
+  /**
+   * Sets whether full-colour pieces keep their images off the heap.
+   * @param offHeap the new value of {@link PuzzleOptions#offHeapPieces}
+   */
+   public void setOffHeapPieces(boolean offHeap) {
+      this.offHeapPieces = offHeap;
+   }
+
+  /**
+   * Returns whether off-heap piece images are kept in a memory-mapped file.
+   * @return {@link PuzzleOptions#mappedPieces}
+   */
+   public boolean isMappedPieces() {
+      return mappedPieces;
+   }
+
+  /**
+   * Sets whether off-heap piece images are kept in a memory-mapped file instead of direct buffers.
+   * @param mapped the new value of {@link PuzzleOptions#mappedPieces}
+   */
+   public void setMappedPieces(boolean mapped) {
+      this.mappedPieces = mapped;
+   }
+
+  /**
+   * Returns how pieces keep their images, from {@link PuzzleOptions#offHeapPieces},
+   * {@link PuzzleOptions#mappedPieces} and {@link PuzzleOptions#compactPieces}.
+   * @return {@link PieceSet#COMPACT}, {@link PieceSet#HEAP}, {@link PieceSet#DIRECT} or {@link PieceSet#MAPPED}
+   */
+   public int getPieceStorage() {
+      if (offHeapPieces) {
+         return mappedPieces ? PieceSet.MAPPED : PieceSet.DIRECT;
+      }
+      return compactPieces ? PieceSet.COMPACT : PieceSet.HEAP;
+   }
+
+  /**
+   * Returns the most bytes the board's sprite cache may use.
+   * @return {@link PuzzleOptions#spriteCacheBytes}
+   */
+   public long getSpriteCacheBytes() {
+      return spriteCacheBytes;
+   }
+
+  /**
+   * Sets the most bytes the board's sprite cache may use.
+   * @param bytes the new value of {@link PuzzleOptions#spriteCacheBytes}
+   */
+   public void setSpriteCacheBytes(long bytes) {
+      this.spriteCacheBytes = bytes;
+   }
+
+  /**
+   * Returns the most moves and fuses the undo history remembers.
+   * @return {@link PuzzleOptions#undoLimit}
+   */
+   public int getUndoLimit() {
+      return undoLimit;
+   }
+
+  /**
+   * Sets the most moves and fuses the undo history remembers. Negative limits are taken as 0, no history.
+   * @param limit the new value of {@link PuzzleOptions#undoLimit}
+   */
+   public void setUndoLimit(int limit) {
+      this.undoLimit = Math.max(0, limit);
+   }
+
+  /**
+   * Returns whether pieces are scattered turned and have to be turned before they fit.
+   * @return {@link PuzzleOptions#rotatePieces}
+   */
+   public boolean isRotatePieces() {
+      return rotatePieces;
+   }
+
+  /**
+   * Sets whether pieces are scattered turned and have to be turned before they fit.
+   * @param rotate the new value of {@link PuzzleOptions#rotatePieces}
+   */
+   public void setRotatePieces(boolean rotate) {
+      this.rotatePieces = rotate;
+   }
+
+  /**
+   * Returns the most bytes the puzzle library may spend on generated piece sets.
+   * @return {@link PuzzleOptions#libraryCacheBytes}
+   */
+   public long getLibraryCacheBytes() {
+      return libraryCacheBytes;
+   }
+
+  /**
+   * Sets the most bytes the puzzle library may spend on generated piece sets.
+   * @param bytes the new value of {@link PuzzleOptions#libraryCacheBytes}
+   */
+   public void setLibraryCacheBytes(long bytes) {
+      this.libraryCacheBytes = bytes;
+   }
+
+  /**
+   * Returns the seed for scattering and turning pieces.
+   * @return {@link PuzzleOptions#randomSeed}, or -1 if the layout isn't seeded
+   */
+   public long getRandomSeed() {
+      return randomSeed;
+   }
+
+  /**
+   * Sets the seed for scattering and turning pieces, so the same layout can be played again.
+   * @param seed the new value of {@link PuzzleOptions#randomSeed}, or -1 for a different layout every time
+   */
+   public void setRandomSeed(long seed) {
+      this.randomSeed = seed;
+   }
+
+  /**
+   * Returns whether pieces are drawn with drop shadows and outlines.
+   * @return {@link PuzzleOptions#effects}
+   */
+   public boolean isEffects() {
+      return effects;
+   }
+
+  /**
+   * Sets whether pieces are drawn with drop shadows and outlines.
+   * @param showEffects the new value of {@link PuzzleOptions#effects}
+   */
+   public void setEffects(boolean showEffects) {
+      this.effects = showEffects;
+   }
+
+  /**
+   * Returns the display scale pieces are drawn at.
+   * @return {@link PuzzleOptions#renderScale}, or 0 if it is taken from the screen
+   */
+   public double getRenderScale() {
+      return renderScale;
+   }
+
+  /**
+   * Sets the display scale pieces are drawn at, instead of taking it from the screen the board is on.
+   * @param scale the new value of {@link PuzzleOptions#renderScale}, or 0 to take it from the screen
+   */
+   public void setRenderScale(double scale) {
+      this.renderScale = scale;
+   }
+
+  /**
+   * Returns whether the board shows a minimap.
+   * @return {@link PuzzleOptions#minimap}
+   */
+   public boolean isMinimap() {
+      return minimap;
+   }
+
+  /**
+   * Sets whether the board shows a minimap.
+   * @param showMinimap the new value of {@link PuzzleOptions#minimap}
+   */
+   public void setMinimap(boolean showMinimap) {
+      this.minimap = showMinimap;
+   }
+}
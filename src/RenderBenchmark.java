@@ -0,0 +1,114 @@
+import java.awt.*;
+import java.util.*;
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+
+/**
+* Measures how long it takes to paint a whole board with piece effects off and on. Each run builds a headless
+* board with the same seeded layout, deals its pieces, selects one piece so a selection outline is drawn too,
+* warms up, and then paints the board into an offscreen image over and over. Given a display scale, it also
+* paints into an image that much bigger, once with sprites made at a scale of 1 and left to Java2D to resample,
+* and once with sprites made at the display's scale.
+* <p>
+* Usage: {@code java RenderBenchmark [pieceCount] [frames] [scale]}, run from the folder containing Resources/.
+* @author Noah Brown
+*/
+public class RenderBenchmark {
+  /**
+   * The size of the board being painted.
+   */
+   private static final Dimension BOARD_SIZE = new Dimension(1600, 900);
+  /**
+   * How many frames are painted and thrown away before timing starts.
+   */
+   private static final int WARMUP_FRAMES = 50;
+
+   public static void main(String[] args) throws Exception {
+      System.setProperty("java.awt.headless", "true");
+      int pieceCount = args.length > 0 ? Integer.parseInt(args[0]) : 220;
+      int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+      double scale = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+
+      System.out.printf("%-16s %8s %9s %9s %9s %12s %12s%n", "run", "frames", "mean ms", "p50 ms", "p99 ms", "sprites", "sprite KB");
+      double off = run(pieceCount, frames, false, 1, 1, "effects off");
+      double on = run(pieceCount, frames, true, 1, 1, "effects on");
+      System.out.printf("%nEffects add %.3f ms per frame (%.0f%%)%n", on - off, (on - off) / off * 100);
+      if (scale != 1) {
+         System.out.println();
+         double resampled = run(pieceCount, frames, true, scale, 1, "x" + scale + " resampled");
+         double unscaled = run(pieceCount, frames, true, scale, scale, "x" + scale + " native");
+         System.out.printf("%nSprites made at x%s take %.3f ms per frame less (%.0f%%)%n", scale, resampled - unscaled,
+                           (resampled - unscaled) / resampled * 100);
+      }
+      System.exit(0);
+   }
+
+  /**
+   * Builds a board and times painting it.
+   * @param pieceCount roughly how many pieces the board should have
+   * @param frames how many frames to time
+   * @param effects whether pieces have shadows and outlines
+   * @param frameScale how much bigger than the board the painted image is
+   * @param renderScale the display scale sprites are made at
+   * @param label what to call the run in the report
+   * @return the mean time per frame, in milliseconds
+   * @throws Exception if the pieces can't be generated
+   */
+   private static double run(final int pieceCount, int frames, boolean effects, final double frameScale, double renderScale,
+                             String label) throws Exception {
+      final PuzzleOptions options = new PuzzleOptions();
+      options.setEffects(effects);
+      options.setRandomSeed(1);
+      options.setRenderScale(renderScale);
+      final JigsawPuzzle[] built = new JigsawPuzzle[1];
+      SwingUtilities.invokeAndWait(new Runnable() {
+         public void run() {
+            built[0] = new JigsawPuzzle(BOARD_SIZE, pieceCount, options);
+         }
+      });
+      final JigsawPuzzle board = built[0];
+      board.getLibrary().get(board.getPuzzleImage(), board.getGeometry(), options.getPieceStorage(), null);
+      if (renderScale != 1) {
+         board.getLibrary().get(board.getPuzzleImage(), board.getGeometry(), PieceSet.COMPACT, renderScale, null);
+      }
+      SwingUtilities.invokeAndWait(new Runnable() {
+         public void run() {
+            board.startLoading();
+            board.setSelectedPiece(board.getPieceByID(0));
+         }
+      });
+
+      final BufferedImage frame = new BufferedImage((int)Math.ceil(BOARD_SIZE.width * frameScale),
+                                                    (int)Math.ceil(BOARD_SIZE.height * frameScale), BufferedImage.TYPE_INT_ARGB);
+      final long[] times = new long[frames];
+      for (int i = -WARMUP_FRAMES; i < frames; i++) {
+         final int index = i;
+         SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+               Graphics2D g = frame.createGraphics();
+               g.scale(frameScale, frameScale);
+               long start = System.nanoTime();
+               board.paint(g);
+               long elapsed = System.nanoTime() - start;
+               g.dispose();
+               if (index >= 0) {
+                  times[index] = elapsed;
+               }
+            }
+         });
+      }
+
+      Arrays.sort(times);
+      long total = 0;
+      for (long time : times) {
+         total += time;
+      }
+      double mean = total / 1e6 / frames;
+      EffectSprites sprites = board.getEffects();
+      System.out.printf("%-16s %8d %9.3f %9.3f %9.3f %12s %12s%n", label, frames, mean,
+                        times[frames / 2] / 1e6, times[Math.min(frames - 1, (int)Math.ceil(frames * 0.99) - 1)] / 1e6,
+                        sprites == null ? "-" : "" + sprites.size(),
+                        sprites == null ? "-" : String.format("%.1f", sprites.getCurrentBytes() / 1024.0));
+      return mean;
+   }
+}
@@ -0,0 +1,145 @@
+/**
+* Keeps track of every piece's open connection points, the sides whose neighbour hasn't been fused to it yet,
+* so a dragged cluster can find what it would snap to without looking at every piece on the board.
+* Each piece's open sides are a 4-bit mask, refreshed for the affected clusters whenever clusters are fused
+* or split. When a drag starts the dragged cluster's open edges are collected once; while it moves, each of
+* them is checked against the one piece that belongs on it, so a lookup costs the length of the cluster's
+* outline no matter how many pieces are on the board.
+* @author Noah Brown
+*/
+public class SnapIndex {
+  /**
+   * How close, as a fraction of the cell size, a neighbour's square has to be to where it belongs before
+   * the pieces snap together.
+   */
+   public static final double SNAP_RADIUS_FRACTION = 0.5;
+
+  /**
+   * The board the pieces are on.
+   */
+   private JigsawPuzzle board;
+  /**
+   * Which sides of each piece are open, bit i set for side i clockwise from the top.
+   */
+   private byte[] openSides;
+  /**
+   * The open edges of the cluster being dragged, as {@code pieceID * 4 + side}. Reused between drags.
+   */
+   private int[] dragEdges;
+  /**
+   * How many entries of {@link SnapIndex#dragEdges} belong to the current drag.
+   */
+   private int dragEdgeCount;
+
+  /**
+   * Starts every side that has a neighbour open.
+   * @param puzzle the board the pieces are on
+   */
+   public SnapIndex(JigsawPuzzle puzzle) {
+      this.board = puzzle;
+      PuzzleGeometry geometry = puzzle.getGeometry();
+      openSides = new byte[geometry.getPieceCount()];
+      for (int piece = 0; piece < openSides.length; piece++) {
+         for (int side = 0; side < 4; side++) {
+            if (geometry.neighbour(piece, side) >= 0) {
+               openSides[piece] |= 1 << side;
+            }
+         }
+      }
+      dragEdges = new int[16];
+   }
+
+  /**
+   * Recomputes the open sides of every piece in the given piece's cluster. Called after that cluster has
+   * been fused with another or split off from one.
+   * @param piece the ID of any piece in the cluster
+   */
+   public void refresh(int piece) {
+      PuzzleGeometry geometry = board.getGeometry();
+      PieceClusters clusters = board.getClusters();
+      int root = clusters.find(piece);
+      int id = piece;
+      do {
+         int open = 0;
+         for (int side = 0; side < 4; side++) {
+            int neighbour = geometry.neighbour(id, side);
+            if (neighbour >= 0 && clusters.find(neighbour) != root) {
+               open |= 1 << side;
+            }
+         }
+         openSides[id] = (byte)open;
+         id = clusters.next(id);
+      } while (id != piece);
+   }
+
+  /**
+   * Returns whether one side of a piece is still open.
+   * @param piece the ID of the piece
+   * @param side the side, clockwise from the top
+   * @return true if the side has a neighbour that hasn't been fused to the piece
+   */
+   public boolean isOpen(int piece, int side) {
+      return (openSides[piece] & (1 << side)) != 0;
+   }
+
+  /**
+   * Collects the open edges of the cluster containing the given piece, ready for {@link SnapIndex#findSnap}.
+   * @param piece the ID of any piece in the dragged cluster
+   */
+   public void beginDrag(int piece) {
+      PieceClusters clusters = board.getClusters();
+      dragEdgeCount = 0;
+      int id = piece;
+      do {
+         for (int side = 0; side < 4; side++) {
+            if (isOpen(id, side)) {
+               if (dragEdgeCount == dragEdges.length) {
+                  int[] grown = new int[dragEdges.length * 2];
+                  System.arraycopy(dragEdges, 0, grown, 0, dragEdgeCount);
+                  dragEdges = grown;
+               }
+               dragEdges[dragEdgeCount++] = id * 4 + side;
+            }
+         }
+         id = clusters.next(id);
+      } while (id != piece);
+   }
+
+  /**
+   * Finds the open edge of the dragged cluster whose neighbour is closest to where it belongs, within
+   * {@link SnapIndex#SNAP_RADIUS_FRACTION} of a cell. Only neighbours that are showing and turned the same
+   * way as the dragged cluster count.
+   * @return the edge as {@code pieceID * 4 + side}, or -1 if nothing is close enough
+   */
+   public int findSnap() {
+      PuzzleGeometry geometry = board.getGeometry();
+      int cellSize = geometry.getCellSize();
+      int best = -1;
+      int bestDistance = (int)(cellSize * SNAP_RADIUS_FRACTION) + 1;
+      for (int i = 0; i < dragEdgeCount; i++) {
+         int edge = dragEdges[i];
+         Piece member = board.getPieceByID(edge / 4);
+         Piece neighbour = board.getPieceByID(geometry.neighbour(edge / 4, edge % 4));
+         if (!neighbour.isVisible() || neighbour.getOrientation() != member.getOrientation()) {
+            continue;
+         }
+         int facing = (edge % 4 + member.getOrientation()) % 4;
+         int dx = neighbour.getCellX() - (member.getCellX() + PuzzleGeometry.SIDE_DX[facing] * cellSize);
+         int dy = neighbour.getCellY() - (member.getCellY() + PuzzleGeometry.SIDE_DY[facing] * cellSize);
+         int distance = Math.max(Math.abs(dx), Math.abs(dy));
+         if (distance < bestDistance) {
+            best = edge;
+            bestDistance = distance;
+         }
+      }
+      return best;
+   }
+
+  /**
+   * Returns how many open edges the current drag is checking.
+   * @return {@link SnapIndex#dragEdgeCount}
+   */
+   public int getDragEdgeCount() {
+      return dragEdgeCount;
+   }
+}
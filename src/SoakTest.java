@@ -0,0 +1,468 @@
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.lang.management.*;
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+* End-to-end load generator. Builds a real {@link JigsawPuzzle} board and has a scripted robot solve it through
+* the same drag methods the mouse uses, with every action run on the Swing event thread the way real input
+* is. Single pieces and whole clusters are dragged, turned if rotation is on, dropped and snapped until the
+* puzzle is finished. Latency percentiles are recorded for each kind of action, along with every GC pause
+* and the heap's high-water mark.
+* <p>
+* The script is driven by a seeded Random and the board's layout by {@link PuzzleOptions#getRandomSeed}, so
+* two runs with the same arguments perform the same actions and end with the same layout checksum, and their
+* reports can be diffed between builds.
+* <p>
+* Runs headless by default, painting the board into an offscreen image after every drag step. With a display
+* (e.g. under Xvfb) and {@code -Djava.awt.headless=false}, the board is shown in a window instead and each
+* frame waits for Swing's own repaints.
+* <p>
+* Usage: {@code java SoakTest [pieceCount] [sessions] [seed] [dragSteps] [paint]}, run from the folder
+* containing Resources/. Board options such as {@code -Djigsaw.rotatePieces=true} are honoured.
+* @author Noah Brown
+*/
+public class SoakTest {
+  /**
+   * The size of the board when running headless.
+   */
+   private static final Dimension HEADLESS_BOARD = new Dimension(1600, 900);
+
+  /**
+   * The board being played.
+   */
+   private JigsawPuzzle board;
+  /**
+   * Chooses what the robot does next.
+   */
+   private Random script;
+  /**
+   * How many mouse-move events each drag is split into.
+   */
+   private int dragSteps;
+  /**
+   * Whether to paint a frame after every drag step.
+   */
+   private boolean paintFrames;
+  /**
+   * The offscreen image headless frames are painted into, or null when the board is in a window.
+   */
+   private BufferedImage offscreen;
+  /**
+   * How long each kind of action took, by name, in the order they were first seen.
+   */
+   private LinkedHashMap<String, LatencyLog> latencies;
+  /**
+   * How many drops ended without the dragged cluster fusing to its target.
+   */
+   private int missedDrops;
+  /**
+   * How many GC pauses happened while the test was running.
+   */
+   private AtomicLong gcCount;
+  /**
+   * The total length of those pauses, in milliseconds.
+   */
+   private AtomicLong gcTotalMillis;
+  /**
+   * The longest of those pauses, in milliseconds.
+   */
+   private AtomicLong gcMaxMillis;
+
+  /**
+   * Times a run of one kind of action and reports percentiles.
+   */
+   private static class LatencyLog {
+     /**
+      * Every recorded time, in nanoseconds.
+      */
+      private long[] times = new long[1024];
+     /**
+      * How many times have been recorded.
+      */
+      private int count;
+
+     /**
+      * Records one time.
+      * @param nanos how long the action took
+      */
+      public void add(long nanos) {
+         if (count == times.length) {
+            times = Arrays.copyOf(times, count * 2);
+         }
+         times[count++] = nanos;
+      }
+
+     /**
+      * Returns the given percentile of the recorded times, in milliseconds.
+      * @param sorted the recorded times, sorted
+      * @param percentile the percentile, from 0 to 100
+      * @return the time at that percentile
+      */
+      private double percentile(long[] sorted, double percentile) {
+         int index = (int)Math.ceil(percentile / 100 * count) - 1;
+         return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+      }
+
+     /**
+      * Formats the count and percentiles as one line of the report.
+      * @param name the kind of action
+      * @return the report line
+      */
+      public String report(String name) {
+         long[] sorted = Arrays.copyOf(times, count);
+         Arrays.sort(sorted);
+         return String.format("%-14s %8d %9.3f %9.3f %9.3f %9.3f %9.3f", name, count, percentile(sorted, 50),
+                              percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 99.9), sorted[count - 1] / 1e6);
+      }
+   }
+
+  /**
+   * Sets up a run against the given board.
+   * @param puzzle the board to play
+   * @param seed the seed for the robot's choices
+   * @param steps how many mouse-move events each drag is split into
+   * @param paint whether to paint a frame after every drag step
+   * @param headless whether frames are painted offscreen instead of by Swing
+   */
+   public SoakTest(JigsawPuzzle puzzle, long seed, int steps, boolean paint, boolean headless) {
+      this.board = puzzle;
+      this.script = new Random(seed);
+      this.dragSteps = steps;
+      this.paintFrames = paint;
+      this.latencies = new LinkedHashMap<String, LatencyLog>();
+      this.gcCount = new AtomicLong();
+      this.gcTotalMillis = new AtomicLong();
+      this.gcMaxMillis = new AtomicLong();
+      if (headless) {
+         offscreen = new BufferedImage(puzzle.getWidth(), puzzle.getHeight(), BufferedImage.TYPE_INT_ARGB);
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      final int pieceCount = args.length > 0 ? Integer.parseInt(args[0]) : 220;
+      int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+      long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+      int steps = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+      boolean paint = args.length > 4 ? Boolean.parseBoolean(args[4]) : true;
+      if (System.getProperty("java.awt.headless") == null) {
+         System.setProperty("java.awt.headless", "true");
+      }
+      final boolean headless = GraphicsEnvironment.isHeadless();
+      final PuzzleOptions options = PuzzleOptions.fromSystemProperties();
+      if (options.getRandomSeed() < 0) {
+         options.setRandomSeed(seed);
+      }
+
+      final JigsawPuzzle[] built = new JigsawPuzzle[1];
+      SwingUtilities.invokeAndWait(new Runnable() {
+         public void run() {
+            if (headless) {
+               built[0] = new JigsawPuzzle(HEADLESS_BOARD, pieceCount, options);
+            } else {
+               JFrame frame = new JFrame("Soak test");
+               frame.setLayout(null);
+               built[0] = new JigsawPuzzle(frame, pieceCount, options);
+               frame.add(built[0]);
+               frame.setSize(built[0].getWidth(), built[0].getHeight());
+               frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+               frame.setVisible(true);
+            }
+         }
+      });
+
+      SoakTest test = new SoakTest(built[0], seed, steps, paint, headless);
+      test.watchGarbageCollection();
+      long start = System.nanoTime();
+      for (int session = 0; session < sessions; session++) {
+         test.runSession(session);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      test.printReport(pieceCount, sessions, seed, headless, seconds);
+      System.exit(0);
+   }
+
+  /**
+   * Subscribes to every collector's GC notifications, and resets the heap pools' high-water marks so only
+   * this run is measured.
+   */
+   private void watchGarbageCollection() {
+      NotificationListener listener = new NotificationListener() {
+         public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+               return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+            long millis = info.getGcInfo().getDuration();
+            gcCount.incrementAndGet();
+            gcTotalMillis.addAndGet(millis);
+            long max = gcMaxMillis.get();
+            while (millis > max && !gcMaxMillis.compareAndSet(max, millis)) {
+               max = gcMaxMillis.get();
+            }
+         }
+      };
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+         if (collector instanceof NotificationEmitter) {
+            ((NotificationEmitter)collector).addNotificationListener(listener, null, null);
+         }
+      }
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+         if (pool.getType() == MemoryType.HEAP) {
+            pool.resetPeakUsage();
+         }
+      }
+   }
+
+  /**
+   * Runs an action on the event thread and records how long it took, including any time it spent waiting
+   * in the event queue.
+   * @param name the kind of action, for the report
+   * @param action the action
+   * @throws Exception if the action throws
+   */
+   private void timed(String name, Runnable action) throws Exception {
+      long start = System.nanoTime();
+      SwingUtilities.invokeAndWait(action);
+      long elapsed = System.nanoTime() - start;
+      LatencyLog log = latencies.get(name);
+      if (log == null) {
+         log = new LatencyLog();
+         latencies.put(name, log);
+      }
+      log.add(elapsed);
+   }
+
+  /**
+   * Paints one frame and records how long it took. Headless, the whole board is painted offscreen; in a
+   * window, this waits for Swing to work through the repaints already queued.
+   * @throws Exception if painting throws
+   */
+   private void frame() throws Exception {
+      if (!paintFrames) {
+         return;
+      }
+      timed("frame", new Runnable() {
+         public void run() {
+            if (offscreen != null) {
+               Graphics g = offscreen.getGraphics();
+               board.paint(g);
+               g.dispose();
+            }
+         }
+      });
+   }
+
+  /**
+   * Deals a fresh puzzle and solves it. The first session uses the board as built; later ones start over
+   * with a new layout of the same image, dealt from the library's cache.
+   * @param session the number of the session, from 0
+   * @throws Exception if generating the pieces or any action fails
+   */
+   private void runSession(int session) throws Exception {
+      if (session > 0) {
+         timed("deal", new Runnable() {
+            public void run() {
+               board.switchPuzzle(board.getPuzzleImage());
+            }
+         });
+      } else {
+         // Generate on this thread so the board is dealt in one go, like a cached puzzle
+         long start = System.nanoTime();
+         board.getLibrary().get(board.getPuzzleImage(), board.getGeometry(), board.getOptions().getPieceStorage(), null);
+         System.out.printf("Generated %d pieces in %.0f ms%n", board.getGeometry().getPieceCount(), (System.nanoTime() - start) / 1e6);
+         timed("deal", new Runnable() {
+            public void run() {
+               board.startLoading();
+            }
+         });
+      }
+      final int pieceCount = board.getGeometry().getPieceCount();
+      final boolean[] solved = new boolean[1];
+      while (true) {
+         SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+               solved[0] = board.getClusters().clusterSize(0) == pieceCount;
+            }
+         });
+         if (solved[0]) {
+            return;
+         }
+         fitOnePair();
+      }
+   }
+
+  /**
+   * Picks two neighbouring pieces that aren't fused yet and drags one onto the other: sometimes the smaller
+   * cluster, sometimes the larger, so big clusters get dragged too. The dragged cluster is turned to match
+   * first if needed, and is dropped a little off target so snapping does the last few pixels.
+   * @throws Exception if any action fails
+   */
+   private void fitOnePair() throws Exception {
+      final int[] plan = new int[4];
+      final int start = script.nextInt(board.getGeometry().getPieceCount());
+      final int sideOffset = script.nextInt(4);
+      final boolean dragFirst = script.nextBoolean();
+      SwingUtilities.invokeAndWait(new Runnable() {
+         public void run() {
+            PuzzleGeometry geometry = board.getGeometry();
+            SnapIndex snapIndex = board.getSnapIndex();
+            for (int i = 0; i < geometry.getPieceCount(); i++) {
+               int piece = (start + i) % geometry.getPieceCount();
+               for (int j = 0; j < 4; j++) {
+                  int side = (sideOffset + j) % 4;
+                  if (snapIndex.isOpen(piece, side)) {
+                     int neighbour = geometry.neighbour(piece, side);
+                     // plan: the piece to drag, the piece it goes next to, and the anchor's side facing it
+                     plan[0] = dragFirst ? piece : neighbour;
+                     plan[1] = dragFirst ? neighbour : piece;
+                     plan[2] = dragFirst ? EdgeIndex.opposite(side) : side;
+                     return;
+                  }
+               }
+            }
+         }
+      });
+      final Piece grabbed = board.getPieceByID(plan[0]);
+      final Piece anchor = board.getPieceByID(plan[1]);
+      final int anchorSide = plan[2];
+
+      final boolean[] lined = new boolean[1];
+      while (true) {
+         SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+               lined[0] = grabbed.getOrientation() == anchor.getOrientation()
+                  || board.getClusters().connected(grabbed.getPieceID(), anchor.getPieceID());
+            }
+         });
+         if (lined[0]) {
+            break;
+         }
+         timed("rotate", new Runnable() {
+            public void run() {
+               grabbed.turnCluster();
+            }
+         });
+         frame();
+      }
+
+      final int cellSize = board.getGeometry().getCellSize();
+      final int jitterX = script.nextInt(cellSize / 3 + 1) - cellSize / 6;
+      final int jitterY = script.nextInt(cellSize / 3 + 1) - cellSize / 6;
+      SwingUtilities.invokeAndWait(new Runnable() {
+         public void run() {
+            int facing = (anchorSide + anchor.getOrientation()) % 4;
+            plan[0] = anchor.getCellX() + PuzzleGeometry.SIDE_DX[facing] * cellSize - grabbed.getCellX() + jitterX;
+            plan[1] = anchor.getCellY() + PuzzleGeometry.SIDE_DY[facing] * cellSize - grabbed.getCellY() + jitterY;
+            plan[3] = board.getClusters().clusterSize(grabbed.getPieceID());
+         }
+      });
+      final int dx = plan[0];
+      final int dy = plan[1];
+      String dragName = plan[3] == 1 ? "drag single" : "drag cluster";
+
+      timed("press", new Runnable() {
+         public void run() {
+            grabbed.beginDrag(0, 0);
+         }
+      });
+      for (int step = 1; step <= dragSteps; step++) {
+         // Wobble on the way like a hand would, but land exactly on the last step
+         final int wobble = step == dragSteps ? 0 : script.nextInt(cellSize + 1) - cellSize / 2;
+         final int x = dx * step / dragSteps + wobble;
+         final int y = dy * step / dragSteps - wobble;
+         timed(dragName, new Runnable() {
+            public void run() {
+               grabbed.dragTo(x, y);
+            }
+         });
+         frame();
+      }
+      timed("drop", new Runnable() {
+         public void run() {
+            grabbed.endDrag();
+            if (!board.getClusters().connected(grabbed.getPieceID(), anchor.getPieceID())) {
+               missedDrops++;
+            }
+         }
+      });
+      frame();
+   }
+
+  /**
+   * Returns a checksum of where every piece ended up and how it is turned. Identical between runs with the
+   * same arguments.
+   * @return the checksum
+   * @throws Exception if the board can't be read
+   */
+   private int layoutChecksum() throws Exception {
+      final int[] checksum = new int[1];
+      SwingUtilities.invokeAndWait(new Runnable() {
+         public void run() {
+            int hash = 17;
+            for (Piece piece : board.getPieceArray()) {
+               hash = hash * 31 + piece.getX();
+               hash = hash * 31 + piece.getY();
+               hash = hash * 31 + piece.getOrientation();
+            }
+            checksum[0] = hash;
+         }
+      });
+      return checksum[0];
+   }
+
+  /**
+   * Prints the report: the run's settings, what the robot did, the latency percentiles of every kind of
+   * action, GC pauses and the heap's high-water mark.
+   * @param pieceCount the requested piece count
+   * @param sessions how many puzzles were solved
+   * @param seed the robot's seed
+   * @param headless whether frames were painted offscreen
+   * @param seconds how long the run took
+   * @throws Exception if the board can't be read
+   */
+   private void printReport(int pieceCount, int sessions, long seed, boolean headless, double seconds) throws Exception {
+      PuzzleGeometry geometry = board.getGeometry();
+      PuzzleOptions options = board.getOptions();
+      long heapPeak = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+         if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+            heapPeak += pool.getPeakUsage().getUsed();
+         }
+      }
+
+      System.out.println();
+      System.out.println("Soak test");
+      System.out.println("Board:      " + board.getWidth() + "x" + board.getHeight() + (headless ? " (headless)" : " (window)"));
+      System.out.println("Puzzle:     " + board.getPuzzleImage().getName() + ", " + pieceCount + " requested, "
+                         + geometry.getRows() + "x" + geometry.getCols() + " = " + geometry.getPieceCount() + " pieces at "
+                         + geometry.getCellSize() + " px");
+      String[] storageNames = {"compact", "heap", "direct", "mapped"};
+      System.out.println("Options:    storage=" + storageNames[options.getPieceStorage()] + " rotate=" + options.isRotatePieces()
+                         + " layoutSeed=" + options.getRandomSeed() + " scriptSeed=" + seed + " dragSteps=" + dragSteps
+                         + " paint=" + paintFrames);
+      System.out.println("Sessions:   " + sessions + " solved, " + missedDrops + " missed drops");
+      System.out.printf("Checksum:   %08x%n", layoutChecksum());
+      System.out.printf("Wall time:  %.2f s%n", seconds);
+      System.out.println();
+      System.out.printf("%-14s %8s %9s %9s %9s %9s %9s%n", "latency ms", "count", "p50", "p90", "p99", "p99.9", "max");
+      for (Map.Entry<String, LatencyLog> entry : latencies.entrySet()) {
+         System.out.println(entry.getValue().report(entry.getKey()));
+      }
+      System.out.println();
+      System.out.printf("GC pauses:  %d, %d ms total, %d ms longest%n", gcCount.get(), gcTotalMillis.get(), gcMaxMillis.get());
+      System.out.printf("Heap peak:  %.1f MB (sum of heap pool peaks), %.1f MB max%n", heapPeak / 1048576.0,
+                        Runtime.getRuntime().maxMemory() / 1048576.0);
+      System.gc();
+      Runtime runtime = Runtime.getRuntime();
+      System.out.printf("Heap live:  %.1f MB after a full GC%n", (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0);
+      for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+         System.out.printf("Off-heap:   %.1f MB in %d %s buffers%n", pool.getMemoryUsed() / 1048576.0, pool.getCount(), pool.getName());
+      }
+   }
+}
@@ -0,0 +1,227 @@
+import java.awt.*;
+import java.util.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+* A bounded cache of full-colour piece sprites for pieces that only store an {@link AlphaMask} or keep their
+* image in an {@link OffHeapPieceStore}, and of the turned sprites of rotated pieces. Sprites are kept per
+* piece, orientation and display scale, built the first time a piece is painted that way, and the least
+* recently painted ones are thrown away once the cache goes over its byte budget, so only the pieces that are
+* actually being drawn cost a full 4 bytes per pixel on the heap, and neither turning a piece nor drawing it on
+* a HiDPI screen ever resamples an image while painting. Sprites for a scaled screen are cut from a
+* {@link PieceSet} made at that scale, and are kept alongside the ones for other scales so moving the board
+* back to a screen it has already been on reuses them. Only used from the event thread.
+* @author Noah Brown
+*/
+public class SpriteCache {
+  /**
+   * The cached sprites, least recently used first, keyed by {@link SpriteCache#key}.
+   */
+   private LinkedHashMap<Long, BufferedImage> sprites;
+  /**
+   * The most bytes the cached sprites may take up.
+   */
+   private long maxBytes;
+  /**
+   * How many bytes the cached sprites currently take up.
+   */
+   private long currentBytes;
+  /**
+   * How many sprites had to be built because they weren't in the cache.
+   */
+   private long misses;
+  /**
+   * How many sprites were found in the cache.
+   */
+   private long hits;
+
+  /**
+   * Creates an empty cache.
+   * @param budget the most bytes the cached sprites may take up
+   */
+   public SpriteCache(long budget) {
+      this.sprites = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true);
+      this.maxBytes = budget;
+      this.currentBytes = 0;
+   }
+
+  /**
+   * Returns the sprite for the given piece in its current orientation. If it isn't cached, it is built from
+   * the piece's alpha mask, its off-heap store or its own image, and turned with {@link SpriteCache#rotate}.
+   * @param piece the piece to get the sprite for
+   * @return the piece's full-colour sprite, turned to {@link Piece#getOrientation}
+   */
+   public BufferedImage get(Piece piece) {
+      return get(piece, null);
+   }
+
+  /**
+   * Returns the sprite for the given piece in its current orientation at a display scale. If it isn't cached,
+   * it is cut from the piece set made at that scale and turned with {@link SpriteCache#rotate}.
+   * @param piece the piece to get the sprite for
+   * @param scaled the piece set made at the display's scale, or null for a scale of 1
+   * @return the piece's full-colour sprite, turned to {@link Piece#getOrientation}, with one pixel per device pixel
+   */
+   public BufferedImage get(Piece piece, PieceSet scaled) {
+      int id = piece.getPieceID();
+      int orientation = piece.getOrientation();
+      Long key = key(id, orientation, scaled == null ? 1 : scaled.getScale());
+      BufferedImage sprite = sprites.get(key);
+      if (sprite != null) {
+         hits++;
+         return sprite;
+      }
+      misses++;
+      if (scaled != null) {
+         Rectangle cutout = scaled.getCutout(id);
+         sprite = scaled.getMask(id).composite(scaled.getSource(), cutout.x, cutout.y);
+      } else if (piece.getAlphaMask() != null) {
+         sprite = piece.getAlphaMask().composite(piece.getSourceImage(), piece.getSourceX(), piece.getSourceY());
+      } else if (piece.getPixelStore() != null) {
+         sprite = piece.getPixelStore().read(id);
+      } else {
+         sprite = piece.getUprightImage();
+      }
+      sprite = rotate(sprite, orientation);
+      sprites.put(key, sprite);
+      currentBytes += spriteBytes(sprite);
+      evict();
+      return sprite;
+   }
+
+  /**
+   * Returns the key a sprite is cached under: the scale in hundredths in the high 32 bits, and
+   * {@code pieceID * 4 + orientation} in the low 32 bits.
+   * @param id the piece's ID
+   * @param orientation how many quarter turns clockwise the piece is turned
+   * @param scale the display scale the sprite is drawn at
+   * @return the cache key
+   */
+   private static Long key(int id, int orientation, double scale) {
+      return (Math.round(scale * 100) << 32) | (id * 4 + orientation);
+   }
+
+  /**
+   * Removes every sprite of the given piece, at every scale, for when its image changes.
+   * @param piece the piece to forget
+   */
+   public void invalidate(Piece piece) {
+      int id = piece.getPieceID();
+      Iterator<Map.Entry<Long, BufferedImage>> iterator = sprites.entrySet().iterator();
+      while (iterator.hasNext()) {
+         Map.Entry<Long, BufferedImage> entry = iterator.next();
+         if ((int)(long)entry.getKey() / 4 == id) {
+            currentBytes -= spriteBytes(entry.getValue());
+            iterator.remove();
+         }
+      }
+   }
+
+  /**
+   * Turns an image clockwise by whole quarter turns, copying pixels instead of drawing through an
+   * AffineTransform.
+   * @param image the image to turn
+   * @param quarterTurns how many quarter turns clockwise, 0 to 3
+   * @return a new turned image, or the same image if quarterTurns is 0
+   */
+   public static BufferedImage rotate(BufferedImage image, int quarterTurns) {
+      if (quarterTurns == 0) {
+         return image;
+      }
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int[] in = image.getRGB(0, 0, width, height, null, 0, width);
+      int[] out = new int[in.length];
+      int outWidth = quarterTurns == 2 ? width : height;
+      int outHeight = quarterTurns == 2 ? height : width;
+      for (int y = 0; y < height; y++) {
+         for (int x = 0; x < width; x++) {
+            int target;
+            if (quarterTurns == 1) {
+               target = x * outWidth + (height - 1 - y);
+            } else if (quarterTurns == 2) {
+               target = (height - 1 - y) * outWidth + (width - 1 - x);
+            } else {
+               target = (width - 1 - x) * outWidth + y;
+            }
+            out[target] = in[y * width + x];
+         }
+      }
+      BufferedImage rotated = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_ARGB);
+      rotated.setRGB(0, 0, outWidth, outHeight, out, 0, outWidth);
+      return rotated;
+   }
+
+  /**
+   * Draws a sprite made at the display's scale one pixel per device pixel, instead of letting Java2D resample
+   * it. Its top-left corner goes on the device pixel nearest to the given point, moved up and left by the given
+   * number of device pixels.
+   * @param g the graphics to draw with, which must only be scaled and moved
+   * @param sprite the sprite to draw
+   * @param x the x-coordinate of the point, in the graphics' own coordinates
+   * @param y the y-coordinate of the point, in the graphics' own coordinates
+   * @param inset how many device pixels up and left of the point the sprite's corner goes
+   */
+   public static void drawUnscaled(Graphics2D g, BufferedImage sprite, double x, double y, int inset) {
+      AffineTransform transform = g.getTransform();
+      int deviceX = (int)Math.round(transform.getTranslateX() + x * transform.getScaleX()) - inset;
+      int deviceY = (int)Math.round(transform.getTranslateY() + y * transform.getScaleY()) - inset;
+      g.setTransform(new AffineTransform());
+      g.drawImage(sprite, deviceX, deviceY, null);
+      g.setTransform(transform);
+   }
+
+  /**
+   * Throws away the least recently used sprites until the cache is back under budget.
+   * Always keeps at least one sprite so the piece being painted doesn't get evicted straight away.
+   */
+   private void evict() {
+      Iterator<BufferedImage> iterator = sprites.values().iterator();
+      while (currentBytes > maxBytes && sprites.size() > 1) {
+         currentBytes -= spriteBytes(iterator.next());
+         iterator.remove();
+      }
+   }
+
+  /**
+   * Returns how many bytes of pixel data a sprite takes up.
+   * @param sprite the sprite
+   * @return 4 bytes per pixel
+   */
+   public static long spriteBytes(BufferedImage sprite) {
+      return 4L * sprite.getWidth() * sprite.getHeight();
+   }
+
+  /**
+   * Returns how many bytes the cached sprites currently take up.
+   * @return {@link SpriteCache#currentBytes}
+   */
+   public long getCurrentBytes() {
+      return currentBytes;
+   }
+
+  /**
+   * Returns how many sprites are currently cached.
+   * @return the number of cached sprites
+   */
+   public int size() {
+      return sprites.size();
+   }
+
+  /**
+   * Returns how many sprites were found in the cache.
+   * @return {@link SpriteCache#hits}
+   */
+   public long getHits() {
+      return hits;
+   }
+
+  /**
+   * Returns how many sprites had to be built.
+   * @return {@link SpriteCache#misses}
+   */
+   public long getMisses() {
+      return misses;
+   }
+}
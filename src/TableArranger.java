@@ -0,0 +1,469 @@
+import java.util.*;
+import java.awt.event.*;
+import javax.swing.Timer;
+
+/**
+* Tidies up the table: spreads loose pieces and clusters out so none of them overlap, moving as few of them as
+* little as possible. The board is divided into a grid of slots one piece apart, laid out like the slots of
+* {@link PuzzleGeometry#scatterSlots}. Clusters are looked at biggest first, so the one being assembled stays
+* put; anything on the board that doesn't overlap what has already been kept stays where it is, checked only
+* against the kept pieces in the grid cells it covers. Everything else goes to the nearest run of free slots,
+* searched for in growing rings around where it lies, out to {@link TableArranger#SEARCH_RINGS} rings; if the
+* table is too crowded for that, it goes to the first free run in reading order, found from a cursor that only
+* ever moves forward, since slots are never freed while planning. Each piece touches a handful of grid cells
+* and searches a bounded number of slots, so a tidy of loose pieces takes linear time in the number of pieces
+* and slots; only clusters too big for one slot can scan further for a run that fits.
+* Sorting by colour works the same way for clusters, but then deals every loose piece into the free slots in
+* reading order, sorted by {@link ColourIndex#sortByColour}, like laying pieces out in a tray.
+* The moves are recorded as one undoable gesture and then animated: every frame moves all the moving clusters
+* in one timer event, so Swing paints the board once per frame rather than once per piece.
+* @author Noah Brown
+*/
+public class TableArranger {
+  /**
+   * How long the pieces take to slide to their new places, in milliseconds.
+   */
+   private static final int ANIMATION_MS = 240;
+  /**
+   * How often the animation moves the pieces, in milliseconds.
+   */
+   private static final int FRAME_MS = 15;
+  /**
+   * How many rings of slots around a cluster are searched for a free run before it is put in the first free
+   * run on the table instead.
+   */
+   private static final int SEARCH_RINGS = 6;
+
+  /**
+   * The board being tidied.
+   */
+   private JigsawPuzzle board;
+  /**
+   * Moves the pieces while they are sliding, or null if they aren't.
+   */
+   private Timer animation;
+  /**
+   * When the current animation started, from {@link System#nanoTime}.
+   */
+   private long animationStart;
+  /**
+   * The root of each cluster being moved by the last tidy.
+   */
+   private int[] moving;
+  /**
+   * How far each cluster in {@link TableArranger#moving} goes left or right, in total.
+   */
+   private int[] targetDx;
+  /**
+   * How far each cluster in {@link TableArranger#moving} goes up or down, in total.
+   */
+   private int[] targetDy;
+  /**
+   * How far each cluster in {@link TableArranger#moving} has been moved left or right so far.
+   */
+   private int[] movedDx;
+  /**
+   * How far each cluster in {@link TableArranger#moving} has been moved up or down so far.
+   */
+   private int[] movedDy;
+  /**
+   * How many entries of {@link TableArranger#moving} belong to the last tidy.
+   */
+   private int movingCount;
+
+  /**
+   * Creates an arranger for the given board. Nothing moves until {@link TableArranger#tidy} is called.
+   * @param puzzle the board to tidy
+   */
+   public TableArranger(JigsawPuzzle puzzle) {
+      this.board = puzzle;
+      moving = new int[0];
+   }
+
+  /**
+   * Works out where everything should go, records the moves in the board's history and starts sliding the
+   * pieces there. A tidy that moves more clusters than the history can hold can't be undone, and the history
+   * before it is forgotten too, as {@link CommandLog} does with any gesture too big for it. Must be called on
+   * the event thread.
+   * @return how many clusters are being moved
+   */
+   public int tidy() {
+      return arrange(false);
+   }
+
+  /**
+   * Tidies the table like {@link TableArranger#tidy}, but lays every loose piece out in the free slots like a
+   * tray, row by row from the top left, sorted by colour with {@link ColourIndex#sortByColour}. Clusters are
+   * tidied as usual and the loose pieces fill in around them. Must be called on the event thread.
+   * @return how many clusters and loose pieces are being moved
+   */
+   public int sortByColour() {
+      return arrange(true);
+   }
+
+  /**
+   * Plans a tidy, records it and starts the animation.
+   * @param byColour whether loose pieces are laid out sorted by colour
+   * @return how many clusters are being moved
+   */
+   private int arrange(boolean byColour) {
+      finish();
+      int count = plan(byColour);
+      if (count == 0) {
+         return 0;
+      }
+      CommandLog history = board.getHistory();
+      history.beginGroup();
+      for (int i = 0; i < count; i++) {
+         history.recordMove(moving[i], targetDx[i], targetDy[i]);
+      }
+      animationStart = System.nanoTime();
+      animation = new Timer(FRAME_MS, new ActionListener() {
+         public void actionPerformed(ActionEvent e) {
+            double progress = (System.nanoTime() - animationStart) / 1e6 / ANIMATION_MS;
+            if (progress >= 1) {
+               finish();
+            } else {
+               step(progress);
+            }
+         }
+      });
+      animation.start();
+      return count;
+   }
+
+  /**
+   * Works out which clusters have to move and where to, without moving anything. The results are left in
+   * {@link TableArranger#moving}, {@link TableArranger#targetDx} and {@link TableArranger#targetDy}.
+   * Hidden pieces, which haven't been generated yet, are left alone.
+   * @param byColour whether loose pieces are laid out in the free slots sorted by colour rather than kept
+   * where they are or moved as little as possible
+   * @return how many clusters have to move
+   */
+   public int plan(boolean byColour) {
+      Piece[] pieces = board.getPieceArray();
+      PieceClusters clusters = board.getClusters();
+      PuzzleGeometry geometry = board.getGeometry();
+      int margin = board.getEffectMargin();
+      int width = board.getWidth();
+      int height = board.getHeight();
+      int pitch = geometry.getCellSize() + 2 * geometry.getTabSize();
+      int border = 2 * geometry.getTabSize();
+      int cols = Math.max(1, (width - border) / pitch);
+      int rows = Math.max(1, (height - border) / pitch);
+
+      // Every cluster's root, size and the box around its members' images
+      int[] roots = new int[pieces.length];
+      int[] left = new int[pieces.length];
+      int[] top = new int[pieces.length];
+      int[] right = new int[pieces.length];
+      int[] bottom = new int[pieces.length];
+      long[] order = new long[pieces.length];
+      int[] itemOf = new int[pieces.length];
+      int itemCount = 0;
+      for (int id = 0; id < pieces.length; id++) {
+         if (!pieces[id].isVisible() || clusters.find(id) != id) {
+            continue;
+         }
+         int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+         int size = 0;
+         int member = id;
+         do {
+            Piece piece = pieces[member];
+            x0 = Math.min(x0, piece.getX() + margin);
+            y0 = Math.min(y0, piece.getY() + margin);
+            x1 = Math.max(x1, piece.getX() + piece.getWidth() - margin);
+            y1 = Math.max(y1, piece.getY() + piece.getHeight() - margin);
+            size++;
+            member = clusters.next(member);
+         } while (member != id);
+         roots[itemCount] = id;
+         itemOf[id] = itemCount;
+         left[itemCount] = x0;
+         top[itemCount] = y0;
+         right[itemCount] = x1;
+         bottom[itemCount] = y1;
+         // Biggest clusters first, then by ID, packed so they sort as primitives
+         order[itemCount] = (long)(pieces.length - size) << 32 | itemCount;
+         itemCount++;
+      }
+      Arrays.sort(order, 0, itemCount);
+
+      // Keep whatever is on the board and clear of everything kept before it
+      int[] bucketHead = new int[cols * rows];
+      Arrays.fill(bucketHead, -1);
+      int[] entryItem = new int[itemCount * 4 + 16];
+      int[] entryNext = new int[entryItem.length];
+      int entryCount = 0;
+      boolean[] occupied = new boolean[cols * rows];
+      int[] pending = new int[itemCount];
+      int pendingCount = 0;
+      int[] loose = new int[itemCount];
+      int looseCount = 0;
+      for (int i = 0; i < itemCount; i++) {
+         int item = (int)order[i];
+         if (byColour && clusters.next(roots[item]) == roots[item]) {
+            // Loose pieces are laid out once the clusters have their places
+            loose[looseCount++] = roots[item];
+            continue;
+         }
+         int sx0 = slot(left[item], border, pitch, cols);
+         int sx1 = slot(right[item] - 1, border, pitch, cols);
+         int sy0 = slot(top[item], border, pitch, rows);
+         int sy1 = slot(bottom[item] - 1, border, pitch, rows);
+         boolean clear = left[item] >= 0 && top[item] >= 0 && right[item] <= width && bottom[item] <= height;
+         for (int sy = sy0; sy <= sy1 && clear; sy++) {
+            for (int sx = sx0; sx <= sx1 && clear; sx++) {
+               for (int entry = bucketHead[sy * cols + sx]; entry >= 0 && clear; entry = entryNext[entry]) {
+                  int other = entryItem[entry];
+                  clear = left[item] >= right[other] || right[item] <= left[other]
+                     || top[item] >= bottom[other] || bottom[item] <= top[other];
+               }
+            }
+         }
+         if (!clear) {
+            pending[pendingCount++] = item;
+            continue;
+         }
+         for (int sy = sy0; sy <= sy1; sy++) {
+            for (int sx = sx0; sx <= sx1; sx++) {
+               if (entryCount == entryItem.length) {
+                  entryItem = Arrays.copyOf(entryItem, entryCount * 2);
+                  entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+               }
+               entryItem[entryCount] = item;
+               entryNext[entryCount] = bucketHead[sy * cols + sx];
+               bucketHead[sy * cols + sx] = entryCount++;
+               occupied[sy * cols + sx] = true;
+            }
+         }
+      }
+
+      // Move everything else to the nearest free slots
+      if (moving.length < pendingCount + looseCount) {
+         moving = new int[pendingCount + looseCount];
+         targetDx = new int[moving.length];
+         targetDy = new int[moving.length];
+         movedDx = new int[moving.length];
+         movedDy = new int[moving.length];
+      }
+      movingCount = 0;
+      // Every slot before this one is taken
+      int firstFree = 0;
+      for (int i = 0; i < pendingCount; i++) {
+         int item = pending[i];
+         int itemWidth = right[item] - left[item];
+         int itemHeight = bottom[item] - top[item];
+         int spanX = (itemWidth + pitch - 1) / pitch;
+         int spanY = (itemHeight + pitch - 1) / pitch;
+         int[] found = null;
+         if (spanX <= cols && spanY <= rows) {
+            found = nearestFree(occupied, cols, rows, spanX, spanY, left[item] - (spanX * pitch - itemWidth) / 2,
+                                top[item] - (spanY * pitch - itemHeight) / 2, border, pitch);
+            if (found == null) {
+               while (firstFree < occupied.length && occupied[firstFree]) {
+                  firstFree++;
+               }
+               found = firstFree(occupied, cols, rows, spanX, spanY, firstFree);
+            }
+         }
+         if (found == null) {
+            // Nowhere to put it, so it stays where it is and nothing else is put on top of it
+            for (int sy = slot(top[item], border, pitch, rows); sy <= slot(bottom[item] - 1, border, pitch, rows); sy++) {
+               for (int sx = slot(left[item], border, pitch, cols); sx <= slot(right[item] - 1, border, pitch, cols); sx++) {
+                  occupied[sy * cols + sx] = true;
+               }
+            }
+            continue;
+         }
+         for (int sy = found[1]; sy < found[1] + spanY; sy++) {
+            for (int sx = found[0]; sx < found[0] + spanX; sx++) {
+               occupied[sy * cols + sx] = true;
+            }
+         }
+         addMove(roots[item], border + found[0] * pitch + (spanX * pitch - itemWidth) / 2 - left[item],
+                 border + found[1] * pitch + (spanY * pitch - itemHeight) / 2 - top[item]);
+      }
+
+      // Lay the loose pieces out in colour order, each in the next free slot in reading order
+      ColourIndex colours = board.getColourIndex();
+      int[] sorted = colours != null ? colours.sortByColour(Arrays.copyOf(loose, looseCount)) : Arrays.copyOf(loose, looseCount);
+      int next = 0;
+      for (int id : sorted) {
+         int item = itemOf[id];
+         next = Math.max(next, firstFree);
+         while (next < occupied.length && occupied[next]) {
+            next++;
+         }
+         if (next == occupied.length) {
+            // The table is full, so the rest stay where they are
+            break;
+         }
+         occupied[next] = true;
+         addMove(id, border + next % cols * pitch + (pitch - (right[item] - left[item])) / 2 - left[item],
+                 border + next / cols * pitch + (pitch - (bottom[item] - top[item])) / 2 - top[item]);
+      }
+      return movingCount;
+   }
+
+  /**
+   * Adds a cluster to the ones being moved, unless it is already where it should be.
+   * @param root the cluster's root
+   * @param dx how far it has to go left or right
+   * @param dy how far it has to go up or down
+   */
+   private void addMove(int root, int dx, int dy) {
+      if (dx == 0 && dy == 0) {
+         return;
+      }
+      moving[movingCount] = root;
+      targetDx[movingCount] = dx;
+      targetDy[movingCount] = dy;
+      movedDx[movingCount] = 0;
+      movedDy[movingCount] = 0;
+      movingCount++;
+   }
+
+  /**
+   * Returns the slot a coordinate falls in along one axis, clamped to the grid.
+   * @param coordinate the x- or y-coordinate on the board
+   * @param border where the first slot starts
+   * @param pitch how far apart the slots are
+   * @param count how many slots there are along the axis
+   * @return the slot, from 0 to count - 1
+   */
+   private static int slot(int coordinate, int border, int pitch, int count) {
+      return Math.max(0, Math.min(count - 1, Math.floorDiv(coordinate - border, pitch)));
+   }
+
+  /**
+   * Finds the free run of slots closest to where a cluster lies, searching outwards one ring of slots at a
+   * time, at most {@link TableArranger#SEARCH_RINGS} rings. Once a ring has a free run, the next ring is
+   * searched too, since its corners can be further away than some of its sides.
+   * @param occupied which slots are taken, row by row
+   * @param cols how many slots there are across
+   * @param rows how many slots there are down
+   * @param spanX how many slots across the cluster needs
+   * @param spanY how many slots down the cluster needs
+   * @param x where the top-left corner of the cluster's run of slots would be if it didn't move
+   * @param y the same, down
+   * @param border where the first slot starts
+   * @param pitch how far apart the slots are
+   * @return the column and row of the closest free run's top-left slot, or null if there isn't one nearby
+   */
+   private static int[] nearestFree(boolean[] occupied, int cols, int rows, int spanX, int spanY, int x, int y,
+                                    int border, int pitch) {
+      int maxX = cols - spanX;
+      int maxY = rows - spanY;
+      int centreX = Math.max(0, Math.min(maxX, Math.round((float)(x - border) / pitch)));
+      int centreY = Math.max(0, Math.min(maxY, Math.round((float)(y - border) / pitch)));
+      int[] best = null;
+      long bestDistance = Long.MAX_VALUE;
+      int lastRing = Math.min(SEARCH_RINGS, Math.max(maxX, maxY));
+      for (int ring = 0; ring <= lastRing; ring++) {
+         for (int dy = -ring; dy <= ring; dy++) {
+            int sy = centreY + dy;
+            if (sy < 0 || sy > maxY) {
+               continue;
+            }
+            // Only the first and last rows of a ring are walked across; the rest just have their two ends
+            int step = dy == -ring || dy == ring ? 1 : Math.max(1, 2 * ring);
+            for (int dx = -ring; dx <= ring; dx += step) {
+               int sx = centreX + dx;
+               if (sx < 0 || sx > maxX || !isFree(occupied, cols, sx, sy, spanX, spanY)) {
+                  continue;
+               }
+               long distX = border + (long)sx * pitch - x;
+               long distY = border + (long)sy * pitch - y;
+               long distance = distX * distX + distY * distY;
+               if (distance < bestDistance) {
+                  bestDistance = distance;
+                  best = new int[] {sx, sy};
+               }
+            }
+         }
+         if (best != null && lastRing > ring + 1) {
+            lastRing = ring + 1;
+         }
+      }
+      return best;
+   }
+
+  /**
+   * Finds the first free run of slots in reading order, for a cluster with nowhere free near it.
+   * @param occupied which slots are taken, row by row
+   * @param cols how many slots there are across
+   * @param rows how many slots there are down
+   * @param spanX how many slots across the cluster needs
+   * @param spanY how many slots down the cluster needs
+   * @param start the first slot that isn't taken, row by row
+   * @return the column and row of the run's top-left slot, or null if there isn't one
+   */
+   private static int[] firstFree(boolean[] occupied, int cols, int rows, int spanX, int spanY, int start) {
+      for (int slot = start; slot < cols * (rows - spanY + 1); slot++) {
+         int sx = slot % cols;
+         if (sx <= cols - spanX && !occupied[slot] && isFree(occupied, cols, sx, slot / cols, spanX, spanY)) {
+            return new int[] {sx, slot / cols};
+         }
+      }
+      return null;
+   }
+
+  /**
+   * Returns whether every slot in a run is free.
+   * @param occupied which slots are taken, row by row
+   * @param cols how many slots there are across
+   * @param sx the column of the run's top-left slot
+   * @param sy the row of the run's top-left slot
+   * @param spanX how many slots across the run is
+   * @param spanY how many slots down the run is
+   * @return true if none of them are taken
+   */
+   private static boolean isFree(boolean[] occupied, int cols, int sx, int sy, int spanX, int spanY) {
+      for (int row = sy; row < sy + spanY; row++) {
+         for (int col = sx; col < sx + spanX; col++) {
+            if (occupied[row * cols + col]) {
+               return false;
+            }
+         }
+      }
+      return true;
+   }
+
+  /**
+   * Moves every cluster of the last tidy part of the way to its new place, eased in and out.
+   * @param progress how far through the animation it is, from 0 to 1
+   */
+   private void step(double progress) {
+      double eased = progress * progress * (3 - 2 * progress);
+      for (int i = 0; i < movingCount; i++) {
+         int dx = (int)Math.round(targetDx[i] * eased);
+         int dy = (int)Math.round(targetDy[i] * eased);
+         board.moveCluster(moving[i], dx - movedDx[i], dy - movedDy[i]);
+         movedDx[i] = dx;
+         movedDy[i] = dy;
+      }
+   }
+
+  /**
+   * Stops any animation and puts every moving cluster straight in its new place, so the board matches its
+   * history again, or its empty history if the tidy was too big to record. Called before anything else moves
+   * pieces: a drag, an undo or another tidy.
+   */
+   public void finish() {
+      if (animation == null) {
+         return;
+      }
+      animation.stop();
+      animation = null;
+      step(1);
+   }
+
+  /**
+   * Returns whether pieces are still sliding to their new places.
+   * @return true if a tidy is being animated
+   */
+   public boolean isArranging() {
+      return animation != null;
+   }
+}
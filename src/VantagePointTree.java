@@ -0,0 +1,228 @@
+import java.util.*;
+
+/**
+* A vantage-point tree over fixed-length float vectors, for finding the nearest neighbours of a query vector
+* without comparing it against every point. Each node picks one point and splits the rest into the half
+* closer to it than the median distance and the half further away; a search only descends into a half if
+* it could still hold something closer than what has been found so far.
+* The tree is built once and never changes. Nodes are stored in parallel arrays rather than as objects.
+* @author Noah Brown
+*/
+public class VantagePointTree {
+  /**
+   * Decides whether a point may be returned by a search.
+   */
+   public interface Filter {
+     /**
+      * @param id the ID of the point
+      * @return true if the point may be returned
+      */
+      boolean accept(int id);
+   }
+
+  /**
+   * The points, one after another, {@link VantagePointTree#dimensions} floats each.
+   */
+   private float[] points;
+  /**
+   * The length of every vector.
+   */
+   private int dimensions;
+  /**
+   * The caller's ID for each point.
+   */
+   private int[] ids;
+  /**
+   * The point used as the vantage point by each node.
+   */
+   private int[] nodePoint;
+  /**
+   * The median distance from each node's vantage point, splitting its inside and outside children.
+   */
+   private float[] nodeRadius;
+  /**
+   * The child of each node holding the points closer than {@link VantagePointTree#nodeRadius}, or -1.
+   */
+   private int[] inside;
+  /**
+   * The child of each node holding the points at least {@link VantagePointTree#nodeRadius} away, or -1.
+   */
+   private int[] outside;
+  /**
+   * The number of nodes built so far.
+   */
+   private int nodeCount;
+  /**
+   * The root node, or -1 if the tree is empty.
+   */
+   private int root;
+
+  /**
+   * Builds a tree over the given points.
+   * @param vectors the points, one after another, dims floats each. Not copied.
+   * @param dims the length of every vector
+   * @param pointIDs the caller's ID for each point, returned by searches
+   */
+   public VantagePointTree(float[] vectors, int dims, int[] pointIDs) {
+      this.points = vectors;
+      this.dimensions = dims;
+      this.ids = pointIDs;
+      int count = pointIDs.length;
+      nodePoint = new int[count];
+      nodeRadius = new float[count];
+      inside = new int[count];
+      outside = new int[count];
+      Integer[] order = new Integer[count];
+      for (int i = 0; i < count; i++) {
+         order[i] = i;
+      }
+      root = build(order, 0, count, new float[count]);
+   }
+
+  /**
+   * Builds the subtree for the given range of points.
+   * @param order the points being built, rearranged as the tree is built
+   * @param from the first point of the range
+   * @param to one past the last point of the range
+   * @param distances scratch space for distances to the vantage point, indexed by point
+   * @return the node at the top of the subtree, or -1 if the range is empty
+   */
+   private int build(Integer[] order, int from, int to, final float[] distances) {
+      if (from >= to) {
+         return -1;
+      }
+      int node = nodeCount++;
+      final int vantage = order[from];
+      nodePoint[node] = vantage;
+      inside[node] = -1;
+      outside[node] = -1;
+      if (to - from == 1) {
+         return node;
+      }
+      for (int i = from + 1; i < to; i++) {
+         distances[order[i]] = distance(vantage, order[i]);
+      }
+      Arrays.sort(order, from + 1, to, new Comparator<Integer>() {
+         public int compare(Integer a, Integer b) {
+            return Float.compare(distances[a], distances[b]);
+         }
+      });
+      int median = (from + 1 + to) / 2;
+      nodeRadius[node] = distances[order[median]];
+      inside[node] = build(order, from + 1, median, distances);
+      outside[node] = build(order, median, to, distances);
+      return node;
+   }
+
+  /**
+   * Returns the Euclidean distance between two stored points.
+   * @param a the index of one point
+   * @param b the index of the other point
+   * @return the distance between them
+   */
+   private float distance(int a, int b) {
+      float sum = 0;
+      int offsetA = a * dimensions;
+      int offsetB = b * dimensions;
+      for (int i = 0; i < dimensions; i++) {
+         float difference = points[offsetA + i] - points[offsetB + i];
+         sum += difference * difference;
+      }
+      return (float)Math.sqrt(sum);
+   }
+
+  /**
+   * Returns the Euclidean distance between a stored point and a query vector.
+   * @param point the index of the stored point
+   * @param query the query vector
+   * @param queryOffset where the query vector starts in its array
+   * @return the distance between them
+   */
+   private float distance(int point, float[] query, int queryOffset) {
+      float sum = 0;
+      int offset = point * dimensions;
+      for (int i = 0; i < dimensions; i++) {
+         float difference = points[offset + i] - query[queryOffset + i];
+         sum += difference * difference;
+      }
+      return (float)Math.sqrt(sum);
+   }
+
+  /**
+   * Finds the points nearest to the query vector that the filter accepts.
+   * @param query the query vector
+   * @param queryOffset where the query vector starts in its array
+   * @param k the most points to return
+   * @param filter decides which points may be returned, or null to accept every point
+   * @return the IDs of up to k accepted points, nearest first
+   */
+   public int[] nearest(float[] query, int queryOffset, int k, Filter filter) {
+      int[] foundPoints = new int[k];
+      float[] foundDistances = new float[k];
+      int found = search(root, query, queryOffset, k, filter, foundPoints, foundDistances, 0);
+      int[] result = new int[found];
+      for (int i = 0; i < found; i++) {
+         result[i] = ids[foundPoints[i]];
+      }
+      return result;
+   }
+
+  /**
+   * Searches a subtree, keeping the best points found so far sorted nearest first.
+   * @param node the top of the subtree
+   * @param query the query vector
+   * @param queryOffset where the query vector starts in its array
+   * @param k the most points to keep
+   * @param filter decides which points may be kept, or null
+   * @param foundPoints the best points found so far
+   * @param foundDistances the distances of the best points found so far
+   * @param found how many points have been found so far
+   * @return how many points have been found after searching the subtree
+   */
+   private int search(int node, float[] query, int queryOffset, int k, Filter filter,
+                      int[] foundPoints, float[] foundDistances, int found) {
+      if (node < 0) {
+         return found;
+      }
+      int point = nodePoint[node];
+      float d = distance(point, query, queryOffset);
+      if ((found < k || d < foundDistances[found - 1]) && (filter == null || filter.accept(ids[point]))) {
+         int slot = Math.min(found, k - 1);
+         while (slot > 0 && foundDistances[slot - 1] > d) {
+            foundPoints[slot] = foundPoints[slot - 1];
+            foundDistances[slot] = foundDistances[slot - 1];
+            slot--;
+         }
+         foundPoints[slot] = point;
+         foundDistances[slot] = d;
+         found = Math.min(found + 1, k);
+      }
+
+      float radius = nodeRadius[node];
+      int first = d < radius ? inside[node] : outside[node];
+      int second = d < radius ? outside[node] : inside[node];
+      found = search(first, query, queryOffset, k, filter, foundPoints, foundDistances, found);
+      // The other half can only hold something closer if the search ball crosses the median
+      float worst = found < k ? Float.MAX_VALUE : foundDistances[found - 1];
+      if (Math.abs(d - radius) < worst) {
+         found = search(second, query, queryOffset, k, filter, foundPoints, foundDistances, found);
+      }
+      return found;
+   }
+
+  /**
+   * Returns the number of points in the tree.
+   * @return the number of points
+   */
+   public int size() {
+      return ids.length;
+   }
+
+  /**
+   * Returns roughly how many bytes the tree takes up: its points and its node arrays.
+   * @return the size of the tree's arrays in bytes
+   */
+   public long getByteSize() {
+      return 4L * points.length + 4L * 5 * ids.length;
+   }
+}